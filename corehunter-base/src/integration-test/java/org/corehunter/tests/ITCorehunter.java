@@ -46,6 +46,7 @@ import org.corehunter.objectives.AverageAccessionToNearestEntry;
 import org.corehunter.objectives.AverageEntryToEntry;
 import org.corehunter.objectives.HeterozygousLoci;
 import org.corehunter.objectives.distance.measures.GowerDistance;
+import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
 import org.corehunter.objectives.distance.measures.PrecomputedDistance;
 
 import org.jamesframework.core.problems.objectives.Objective;
@@ -112,6 +113,34 @@ public class ITCorehunter {
 
     }
     
+    /**
+     * Test execution with genotypes, precomputing all distances.
+     */
+    @Test
+    public void testExecutePrecomputedDistances() {
+
+        CoreHunterData data = GENOTYPES_DATA;
+        
+        int size = 2;
+        int time = 2;
+        Objective<SubsetSolution, CoreHunterData> obj = new AverageEntryToEntry(new ModifiedRogersDistance());
+
+        // run Core Hunter
+        CoreHunterArguments arguments = 
+                new CoreHunterArguments(data, size, 
+                        CoreHunterObjectiveType.AV_ENTRY_TO_ENTRY, 
+                        CoreHunterMeasure.MODIFIED_ROGERS);
+        CoreHunter corehunter = new CoreHunter();
+        corehunter.setTimeLimit(time);
+        corehunter.setPrecomputeDistances(true);
+        corehunter.setListener(new SimpleCoreHunterListener());
+        SubsetSolution result = corehunter.execute(arguments);
+
+        // compare with optimal solution
+        assertEquals(getOptimalSolution(data, obj, size), result);
+
+    }
+    
     @Test
     public void testMultiObjectiveConfiguration(){
 
@@ -20,6 +20,7 @@
 package org.corehunter;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,9 +31,11 @@ import org.corehunter.data.CoreHunterData;
 import org.corehunter.data.DistanceMatrixData;
 import org.corehunter.data.GenotypeData;
 import org.corehunter.data.GenotypeDataFormat;
+import org.corehunter.data.simple.MappedDistanceMatrixData;
 import org.corehunter.data.simple.SimpleBiAllelicGenotypeData;
 import org.corehunter.data.simple.SimpleDistanceMatrixData;
 import org.corehunter.data.simple.SimpleGenotypeData;
+import org.corehunter.data.simple.SparseGenotypeData;
 import org.corehunter.listener.SimpleCoreHunterListener;
 import org.jamesframework.core.subset.SubsetSolution;
 import uno.informatics.data.Data;
@@ -117,7 +120,16 @@ public class API {
     /* -------------------- */
 
     public static DistanceMatrixData readDistanceMatrixData(String file) throws IOException {
-        return SimpleDistanceMatrixData.readData(Paths.get(file), inferFileType(file));
+        Path path = Paths.get(file);
+        if(path.toFile().exists() && SimpleDistanceMatrixData.isBinaryData(path)){
+            // map binary file
+            return SimpleDistanceMatrixData.openBinaryData(path);
+        }
+        return SimpleDistanceMatrixData.readData(path, inferFileType(file));
+    }
+    
+    public static void writeBinaryDistanceMatrixData(DistanceMatrixData data, String file) throws IOException {
+        MappedDistanceMatrixData.writeBinaryFile(Paths.get(file), data);
     }
 
     public static DistanceMatrixData createDistanceMatrixData(double[][] distances, String[] ids, String[] names){
@@ -297,6 +309,18 @@ public class API {
         return new SimpleGenotypeData(createHeaders(ids, names), markerNames, convAlleles, convFreqs);
     }
     
+    /**
+     * Convert genotype data to the sparse form if most allele frequencies are zero, as for highly multi-allelic
+     * markers (see {@link SparseGenotypeData#compress(GenotypeData)}). Genotype data is only converted when
+     * explicitly requested with this method.
+     * 
+     * @param data genotype data
+     * @return sparse copy of the given data if it is sufficiently sparse, else the given data itself
+     */
+    public static GenotypeData compressGenotypeData(GenotypeData data){
+        return SparseGenotypeData.compress(data);
+    }
+    
     public static String[][] getAlleles(GenotypeData data){
         int numMarkers = data.getNumberOfMarkers();
         String[][] alleles = new String[numMarkers][];
@@ -321,16 +345,14 @@ public class API {
     
     public static double[][] getAlleleFrequencies(GenotypeData data){
         int n = data.getSize();
-        int m = data.getNumberOfMarkers();
         int numAlleles = data.getTotalNumberOfAlleles();
         double[][] freqs = new double[n][numAlleles];
         for(int i = 0; i < n; i++){
-            int a = 0;
-            for(int j = 0; j < m; j++){
-                for(int k = 0; k < data.getNumberOfAlleles(j); k++){
-                    Double freq = data.getAlleleFrequency(i, j, k);
-                    // convert missing values
-                    freqs[i][a++] = (freq == null ? NA : freq);
+            data.copyAlleleFrequencies(i, freqs[i]);
+            for(int a = 0; a < numAlleles; a++){
+                // convert missing values
+                if(Double.isNaN(freqs[i][a])){
+                    freqs[i][a] = NA;
                 }
             }
         }
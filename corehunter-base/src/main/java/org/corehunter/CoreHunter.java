@@ -24,10 +24,13 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.corehunter.data.BiAllelicGenotypeData;
 import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.DistancePrecision;
 import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.objectives.AverageAccessionToNearestEntry;
 import org.corehunter.objectives.AverageEntryToEntry;
@@ -36,10 +39,14 @@ import org.corehunter.objectives.Coverage;
 import org.corehunter.objectives.HeterozygousLoci;
 import org.corehunter.objectives.Shannon;
 import org.corehunter.objectives.distance.DistanceMeasure;
+import org.corehunter.objectives.distance.cache.DistanceCacheRegistry;
+import org.corehunter.objectives.distance.measures.AbstractDistanceMeasure;
 import org.corehunter.objectives.distance.measures.CavalliSforzaEdwardsDistance;
 import org.corehunter.objectives.distance.measures.GowerDistance;
 import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
 import org.corehunter.objectives.distance.measures.PrecomputedDistance;
+import org.corehunter.objectives.distance.measures.biallelic.CavalliSforzaEdwardsDistanceBiAllelic;
+import org.corehunter.objectives.distance.measures.biallelic.ModifiedRogersDistanceBiAllelic;
 import org.jamesframework.core.problems.objectives.Objective;
 import org.jamesframework.core.search.Search;
 import org.jamesframework.core.search.algo.ParallelTempering;
@@ -71,6 +78,11 @@ public class CoreHunter {
     private long timeLimit = -1;
     private long maxTimeWithoutImprovement = -1;
     private CoreHunterExecutionMode mode;
+    private boolean precomputeDistances = false;
+    private long maxDistanceCacheSize = -1;
+    private boolean reuseDistanceCaches = false;
+    // distance caches retained across executions (if enabled)
+    private DistanceCacheRegistry distanceCaches;
 
     public CoreHunter() {
         this(CoreHunterExecutionMode.DEFAULT);
@@ -94,6 +106,12 @@ public class CoreHunter {
      * well as the main multi-objective search. Normalization searches are executed in parallel
      * which means that in case of a limited number of objectives the total execution time should
      * usually not exceed twice the imposed search time limit.
+     * <p>
+     * By default, distances are computed on demand during search. Alternatively, all pairwise
+     * distances required by the objectives can be computed in parallel prior to execution,
+     * see {@link #setPrecomputeDistances(boolean)}. Computed distances are shared by all objectives that
+     * apply the same distance measure, as well as by the normalization searches. They can also be retained
+     * across executions, see {@link #setReuseDistanceCaches(boolean)}.
      * 
      * @param mode execution mode
      */
@@ -117,6 +135,10 @@ public class CoreHunter {
      *                                  single-objective configuration.
      */
     public List<Range<Double>> normalize(CoreHunterArguments arguments){
+        return normalize(arguments, getDistanceCacheRegistry());
+    }
+    
+    private List<Range<Double>> normalize(CoreHunterArguments arguments, DistanceCacheRegistry registry){
         
         // check arguments
         if(arguments == null){
@@ -137,13 +159,14 @@ public class CoreHunter {
             throw new IllegalArgumentException("At least two objectives required for Pareto normalization.");
         }
         
-        // set size and neighbourhood
+        // set size, neighbourhood and precision of distances
         int size = arguments.getSubsetSize();
         Neighbourhood<SubsetSolution> neigh = new SingleSwapNeighbourhood();
+        DistancePrecision precision = arguments.getDistancePrecision();
         
         // optimize each objective separately (in parallel)
         List<SubsetSolution> bestSolutions = objectives.parallelStream().map(obj -> {
-            Objective<SubsetSolution, CoreHunterData> jamesObj = createObjective(data, obj);
+            Objective<SubsetSolution, CoreHunterData> jamesObj = createObjective(data, obj, precision, registry);
             // create normalization problem and search
             SubsetProblem<CoreHunterData> problem = new SubsetProblem<>(data, jamesObj, size);
             RandomDescent<SubsetSolution> normSearch = new RandomDescent<>(problem, neigh);
@@ -165,7 +188,9 @@ public class CoreHunter {
         // determine normalization ranges (based on Pareto maxima/minima)
         List<Range<Double>> ranges = new ArrayList<>();
         for(int o = 0; o < objectives.size(); o++){
-            Objective<SubsetSolution, CoreHunterData> obj = createObjective(data, objectives.get(o));
+            Objective<SubsetSolution, CoreHunterData> obj = createObjective(
+                    data, objectives.get(o), precision, registry
+            );
             // evaluate all optimal solutions with this objective
             List<Double> allValues = bestSolutions.stream().map(
                 sol -> obj.evaluate(sol, data).getValue()
@@ -234,6 +259,7 @@ public class CoreHunter {
     
     /**
      * Evaluate the given solution with the specified objective. The weight of the objective is ignored.
+     * Distances are computed in double precision, the default of {@link CoreHunterArguments}.
      * 
      * @param sol subset solution
      * @param data Core Hunter data
@@ -241,7 +267,27 @@ public class CoreHunter {
      * @return value of the subset according to the specified objective
      */
     public double evaluate(SubsetSolution sol, CoreHunterData data, CoreHunterObjective objective){
-        Objective<SubsetSolution, CoreHunterData> obj = createObjective(data, objective);
+        return evaluate(sol, data, objective, DistancePrecision.DOUBLE);
+    }
+    
+    /**
+     * Evaluate the given solution with the specified objective, using the given precision for distances.
+     * Pass the precision of the arguments with which the solution was sampled (see
+     * {@link CoreHunterArguments#getDistancePrecision()}) to obtain the value used by the search. If
+     * distance caches are reused, the distances cached during that search are then reused as well.
+     * The weight of the objective is ignored.
+     * 
+     * @param sol subset solution
+     * @param data Core Hunter data
+     * @param objective objective used to evaluate the subset (weight is ignored)
+     * @param precision precision with which distances are computed and cached
+     * @return value of the subset according to the specified objective
+     */
+    public double evaluate(SubsetSolution sol, CoreHunterData data,
+                           CoreHunterObjective objective, DistancePrecision precision){
+        Objective<SubsetSolution, CoreHunterData> obj = createObjective(
+                data, objective, precision, getDistanceCacheRegistry()
+        );
         return obj.evaluate(sol, data).getValue();
     }
 
@@ -283,6 +329,110 @@ public class CoreHunter {
         maxTimeWithoutImprovement = ms;
     }
     
+    /**
+     * Check whether all pairwise distances are precomputed prior to execution.
+     * 
+     * @return <code>true</code> if distances are precomputed
+     */
+    public boolean isPrecomputeDistances(){
+        return precomputeDistances;
+    }
+    
+    /**
+     * Enable or disable precomputation of distances. If enabled, all pairwise distances required
+     * by the objectives are computed prior to execution of the search, in parallel using all
+     * available processors. Else, distances are computed on demand during search (default).
+     * Distances taken from a precomputed distance matrix are never affected.
+     * 
+     * @param precompute <code>true</code> if distances should be precomputed
+     */
+    public void setPrecomputeDistances(boolean precompute){
+        precomputeDistances = precompute;
+    }
+    
+    /**
+     * Get the maximum size of the cache of each distance measure, in bytes.
+     * 
+     * @return maximum size of a distance cache; negative if not limited
+     */
+    public long getMaxDistanceCacheSize(){
+        return maxDistanceCacheSize;
+    }
+    
+    /**
+     * Sets the maximum size of the cache of each distance measure, in bytes. If this limit does not
+     * allow to cache all pairwise distances, a bounded cache is used that retains the distances of
+     * frequently involved items, such as the selected items, and other distances are recomputed when
+     * needed. Distances are then not precomputed, even if requested. A negative value means that
+     * the cache size is not limited (default), except for data sets that are too large to cache
+     * all distances.
+     * 
+     * @param bytes maximum size of a distance cache in bytes; negative if not limited
+     */
+    public void setMaxDistanceCacheSize(long bytes){
+        maxDistanceCacheSize = bytes;
+    }
+    
+    /**
+     * Check whether computed distances are retained across executions.
+     * 
+     * @return <code>true</code> if distance caches are reused
+     */
+    public boolean isReuseDistanceCaches(){
+        return reuseDistanceCaches;
+    }
+    
+    /**
+     * Enable or disable reuse of computed distances across executions. Within a single execution, distances
+     * are always shared by all objectives that apply the same distance measure and by the normalization
+     * searches. If enabled, computed distances are also retained after execution and reused by subsequent
+     * executions, normalizations and evaluations for the same data set (compared by identity), with the same
+     * distance measure, missing values policy and precision. Retained distances are kept in memory until
+     * reuse is disabled or {@link #clearDistanceCaches()} is called. Disabled by default.
+     * 
+     * @param reuse <code>true</code> if distance caches should be retained across executions
+     */
+    public void setReuseDistanceCaches(boolean reuse){
+        reuseDistanceCaches = reuse;
+        if(!reuse){
+            distanceCaches = null;
+        }
+    }
+    
+    /**
+     * Discard all distances that have been retained across executions.
+     */
+    public void clearDistanceCaches(){
+        if(distanceCaches != null){
+            distanceCaches.clear();
+        }
+    }
+    
+    /**
+     * Get the registry of distance caches retained across executions, if any.
+     * 
+     * @return registry of retained distance caches; <code>null</code> if distance caches
+     *         are not reused or if no distances have been retained yet
+     */
+    public DistanceCacheRegistry getDistanceCaches(){
+        return distanceCaches;
+    }
+    
+    /**
+     * Set the registry of distance caches retained across executions, e.g. with distances that have been
+     * computed before and loaded from disk. This automatically enables reuse of distance caches.
+     * 
+     * @param registry registry of distance caches to be reused
+     * @throws IllegalArgumentException if <code>registry</code> is <code>null</code>
+     */
+    public synchronized void setDistanceCaches(DistanceCacheRegistry registry){
+        if(registry == null){
+            throw new IllegalArgumentException("Registry not defined.");
+        }
+        reuseDistanceCaches = true;
+        distanceCaches = registry;
+    }
+    
     public CoreHunterListener getListener(){
         return listener;
     }
@@ -295,7 +445,7 @@ public class CoreHunter {
 
         int size = arguments.getSubsetSize();
 
-        Objective<SubsetSolution, CoreHunterData> objective = createObjective(arguments);
+        Objective<SubsetSolution, CoreHunterData> objective = createObjective(arguments, getDistanceCacheRegistry());
 
         SubsetProblem<CoreHunterData> problem = new SubsetProblem<>(arguments.getData(), objective, size);
         Neighbourhood<SubsetSolution> neigh = new SingleSwapNeighbourhood();
@@ -318,75 +468,64 @@ public class CoreHunter {
         }
     }
 
-    private Objective<SubsetSolution, CoreHunterData> createObjective(CoreHunterArguments arguments) {
+    private Objective<SubsetSolution, CoreHunterData> createObjective(CoreHunterArguments arguments,
+                                                                      DistanceCacheRegistry registry) {
         // extract data and objectives
         CoreHunterData data = arguments.getData();
         List<CoreHunterObjective> objectives = arguments.getObjectives();
-        // compose objective
+        // check objectives
         if (objectives == null || objectives.isEmpty()) {
             throw new CoreHunterException("No objective(s) given.");
+        }
+        // create all objectives
+        List<Objective<SubsetSolution, CoreHunterData>> jamesObjectives = new ArrayList<>();
+        List<DistanceMeasure> distanceMeasures = new ArrayList<>();
+        for(CoreHunterObjective obj : objectives){
+            DistanceMeasure distanceMeasure = createDistanceMeasure(
+                    data, obj, arguments.getDistancePrecision(), registry
+            );
+            jamesObjectives.add(createObjective(data, obj, distanceMeasure));
+            if(distanceMeasure != null){
+                distanceMeasures.add(distanceMeasure);
+            }
+        }
+        // precompute distances if requested
+        if(precomputeDistances){
+            precomputeDistances(data, distanceMeasures);
+        }
+        // compose objective
+        if (objectives.size() == 1) {
+            // single objective
+            return jamesObjectives.get(0);
         } else {
-            if (objectives.size() == 1) {
-                // single objective
-                return createObjective(data, objectives.get(0));
-            } else {
-                // multiple objectives (weighted index)
-                WeightedIndex<SubsetSolution, CoreHunterData> weightedIndex =  new WeightedIndex<>();
-                // create all objectives
-                List<Objective<SubsetSolution, CoreHunterData>> jamesObjectives = objectives.stream()
-                        .map(obj -> createObjective(data, obj))
-                        .collect(Collectors.toList());
-                // normalize if requested
-                if(arguments.isNormalized()){
-                    jamesObjectives = normalizeObjectives(arguments, jamesObjectives);
-                }
-                // combine in weighted index
-                for(int o = 0; o < objectives.size(); o++) {
-                    weightedIndex.addObjective(jamesObjectives.get(o), objectives.get(o).getWeight());
-                }
-                return weightedIndex;
+            // multiple objectives (weighted index)
+            WeightedIndex<SubsetSolution, CoreHunterData> weightedIndex =  new WeightedIndex<>();
+            // normalize if requested
+            if(arguments.isNormalized()){
+                jamesObjectives = normalizeObjectives(arguments, jamesObjectives, registry);
             }
+            // combine in weighted index
+            for(int o = 0; o < objectives.size(); o++) {
+                weightedIndex.addObjective(jamesObjectives.get(o), objectives.get(o).getWeight());
+            }
+            return weightedIndex;
         }
     }
 
     private Objective<SubsetSolution, CoreHunterData> createObjective(CoreHunterData data,
-                                                                      CoreHunterObjective coreHunterObjective) {
+                                                                      CoreHunterObjective coreHunterObjective,
+                                                                      DistancePrecision precision,
+                                                                      DistanceCacheRegistry registry) {
+        return createObjective(
+                data, coreHunterObjective, createDistanceMeasure(data, coreHunterObjective, precision, registry)
+        );
+    }
+    
+    private Objective<SubsetSolution, CoreHunterData> createObjective(CoreHunterData data,
+                                                                      CoreHunterObjective coreHunterObjective,
+                                                                      DistanceMeasure distanceMeasure) {
 
         Objective<SubsetSolution, CoreHunterData> objective = null;
-        DistanceMeasure distanceMeasure = null;
-
-        if (coreHunterObjective.getMeasure() != null) {
-            switch (coreHunterObjective.getMeasure()) {
-                case MODIFIED_ROGERS:
-                    if (!data.hasGenotypes()) {
-                        throw new CoreHunterException("Genotypes are required for Modified Rogers distance.");
-                    }
-                    distanceMeasure = new ModifiedRogersDistance();
-                    break;
-                case CAVALLI_SFORZA_EDWARDS:
-                    if (!data.hasGenotypes()) {
-                        throw new CoreHunterException(
-                                "Genotypes are required for Cavalli-Sforza and Edwards distance."
-                        );
-                    }
-                    distanceMeasure = new CavalliSforzaEdwardsDistance();
-                    break;
-                case GOWERS:
-                    if (!data.hasPhenotypes()) {
-                        throw new CoreHunterException("Phenotypes are required for Gower distance.");
-                    }
-                    distanceMeasure = new GowerDistance();
-                    break;
-                case PRECOMPUTED_DISTANCE:
-                    if (!data.hasDistances()) {
-                        throw new CoreHunterException("No precomputed distance matrix has been defined.");
-                    }
-                    distanceMeasure = new PrecomputedDistance();
-                    break;
-                default:
-                    // do nothing (not all objectives require a distance measure)
-            }
-        }
 
         switch (coreHunterObjective.getObjectiveType()) {
             case AV_ACCESSION_TO_NEAREST_ENTRY:
@@ -441,9 +580,71 @@ public class CoreHunter {
         return objective;
     }
     
+    private DistanceMeasure createDistanceMeasure(CoreHunterData data,
+                                                  CoreHunterObjective coreHunterObjective,
+                                                  DistancePrecision precision,
+                                                  DistanceCacheRegistry registry) {
+
+        DistanceMeasure distanceMeasure = null;
+
+        if (coreHunterObjective.getMeasure() != null) {
+            switch (coreHunterObjective.getMeasure()) {
+                case MODIFIED_ROGERS:
+                    if (!data.hasGenotypes()) {
+                        throw new CoreHunterException("Genotypes are required for Modified Rogers distance.");
+                    }
+                    if (data.getGenotypicData() instanceof BiAllelicGenotypeData) {
+                        // fast implementation based on bit-packed allele scores
+                        distanceMeasure = new ModifiedRogersDistanceBiAllelic();
+                    } else {
+                        distanceMeasure = new ModifiedRogersDistance();
+                    }
+                    break;
+                case CAVALLI_SFORZA_EDWARDS:
+                    if (!data.hasGenotypes()) {
+                        throw new CoreHunterException(
+                                "Genotypes are required for Cavalli-Sforza and Edwards distance."
+                        );
+                    }
+                    if (data.getGenotypicData() instanceof BiAllelicGenotypeData) {
+                        // fast implementation based on bit-packed allele scores
+                        distanceMeasure = new CavalliSforzaEdwardsDistanceBiAllelic();
+                    } else {
+                        distanceMeasure = new CavalliSforzaEdwardsDistance();
+                    }
+                    break;
+                case GOWERS:
+                    if (!data.hasPhenotypes()) {
+                        throw new CoreHunterException("Phenotypes are required for Gower distance.");
+                    }
+                    distanceMeasure = new GowerDistance();
+                    break;
+                case PRECOMPUTED_DISTANCE:
+                    if (!data.hasDistances()) {
+                        throw new CoreHunterException("No precomputed distance matrix has been defined.");
+                    }
+                    distanceMeasure = new PrecomputedDistance();
+                    break;
+                default:
+                    // do nothing (not all objectives require a distance measure)
+            }
+        }
+        
+        // set precision, maximum size and shared registry of cached distances
+        if (distanceMeasure instanceof AbstractDistanceMeasure) {
+            AbstractDistanceMeasure cachedMeasure = (AbstractDistanceMeasure) distanceMeasure;
+            cachedMeasure.setPrecision(precision);
+            cachedMeasure.setMaxCacheSize(maxDistanceCacheSize);
+            cachedMeasure.setCacheRegistry(registry);
+        }
+        
+        return distanceMeasure;
+    }
+    
     private List<Objective<SubsetSolution, CoreHunterData>> normalizeObjectives(
             CoreHunterArguments arguments,
-            List<Objective<SubsetSolution, CoreHunterData>> objectives
+            List<Objective<SubsetSolution, CoreHunterData>> objectives,
+            DistanceCacheRegistry registry
     ){
         
         if(listener != null){
@@ -457,7 +658,7 @@ public class CoreHunter {
                        .map(CoreHunterObjective::getNormalizationRange)
                        .anyMatch(Objects::isNull)){
             // one or more objective do not have an explicit normalization range set: determine ranges
-            ranges = normalize(arguments);
+            ranges = normalize(arguments, registry);
             // overwrite with explicit ranges where specified
             for(int o = 0; o < chObjectives.size(); o++){
                 Range<Double> range = chObjectives.get(o).getNormalizationRange();
@@ -491,4 +692,62 @@ public class CoreHunter {
         
     }
     
+    /**
+     * Get the registry of distance caches to be shared by all distance measures of an execution,
+     * normalization or evaluation. If distance caches are reused, the same registry is returned
+     * on every call, else a new registry is created.
+     * 
+     * @return distance cache registry
+     */
+    private synchronized DistanceCacheRegistry getDistanceCacheRegistry(){
+        if(!reuseDistanceCaches){
+            return new DistanceCacheRegistry();
+        }
+        if(distanceCaches == null){
+            distanceCaches = new DistanceCacheRegistry();
+        }
+        return distanceCaches;
+    }
+    
+    private void precomputeDistances(CoreHunterData data, List<DistanceMeasure> distanceMeasures){
+        
+        // only consider measures that cache computed distances
+        List<AbstractDistanceMeasure> cachedMeasures = distanceMeasures.stream()
+                .filter(m -> m instanceof AbstractDistanceMeasure)
+                .map(m -> (AbstractDistanceMeasure) m)
+                .collect(Collectors.toList());
+        if(cachedMeasures.isEmpty()){
+            return;
+        }
+        
+        if(listener != null){
+            listener.preprocessingStarted("Precomputing distances.");
+        }
+        
+        // compute all distances in parallel
+        StringBuilder message = new StringBuilder();
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for(AbstractDistanceMeasure measure : cachedMeasures){
+                long start = System.currentTimeMillis();
+                if(measure.precompute(data, pool)){
+                    long time = System.currentTimeMillis() - start;
+                    message.append(String.format(Locale.ROOT, "%s: %d ms%n", measure, time));
+                } else {
+                    message.append(String.format(
+                            Locale.ROOT, "%s: skipped (not all distances fit in the cache)%n", measure
+                    ));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        
+        message.append("Finished precomputing distances.");
+        if(listener != null){
+            listener.preprocessingStopped(message.toString());
+        }
+        
+    }
+    
 }
@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.List;
 
 import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.DistancePrecision;
 
 public class CoreHunterArguments {
 
@@ -31,6 +32,7 @@ public class CoreHunterArguments {
     private CoreHunterData data;
     private List<CoreHunterObjective> objectives;
     private boolean normalize;
+    private DistancePrecision distancePrecision = DistancePrecision.DOUBLE;
     
     /**
      * Creates arguments with no objectives (private constructor).
@@ -126,6 +128,30 @@ public class CoreHunterArguments {
         this.objectives = Collections.unmodifiableList(new ArrayList<>(objectives));
         this.normalize = objectives.size() > 1 && normalize;
     }
+    
+    /**
+     * Creates a multiple objective configuration with the given distance precision.
+     * If <code>normalize</code> is <code>true</code> automatic normalization is enabled but
+     * only if more than one objective is included. In case of a single objective this argument
+     * is ignored. Computed distances are stored with the given precision. Using
+     * {@link DistancePrecision#FLOAT} halves the memory required to cache distances, which
+     * are then rounded to approximately seven significant digits.
+     * 
+     * @param data the data for the run
+     * @param subsetSize the desired subset size
+     * @param objectives the objectives for the run
+     * @param normalize indicates whether objectives should be normalized prior to execution
+     * @param distancePrecision precision with which computed distances are stored
+     */
+    public CoreHunterArguments(CoreHunterData data, int subsetSize,
+                               List<CoreHunterObjective> objectives,
+                               boolean normalize, DistancePrecision distancePrecision) {
+        this(data, subsetSize, objectives, normalize);
+        if (distancePrecision == null) {
+            throw new IllegalArgumentException("Distance precision not defined.");
+        }
+        this.distancePrecision = distancePrecision;
+    }
 
     public final CoreHunterData getData() {
         return data;
@@ -143,4 +169,8 @@ public class CoreHunterArguments {
         return normalize;
     }
     
+    public final DistancePrecision getDistancePrecision(){
+        return distancePrecision;
+    }
+    
 }
@@ -30,14 +30,16 @@ import org.jamesframework.core.subset.SubsetSolution;
 public interface CoreHunterListener extends SearchListener<SubsetSolution> {
 
     /**
-     * Fired when the pre-processing has started. Called only once prior to the search run.
+     * Fired when the pre-processing has started. Called once prior to the search run for each pre-processing step
+     * (e.g. normalization of objectives or precomputation of distances).
      *
      * @param message the message to be sent to the listener
      */
     default public void preprocessingStarted(String message) {}
 
     /**
-     * Fired when the pre-processing has stopped. Called only once prior to the search run.
+     * Fired when the pre-processing has stopped. Called once prior to the search run for each pre-processing step
+     * (e.g. normalization of objectives or precomputation of distances).
      *
      * @param message the message to be sent to the listener
      */
@@ -0,0 +1,39 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.data;
+
+/**
+ * Receives the frequencies of alleles of an entry in genotype data, identified by their
+ * global index (see {@link GenotypeData#getAlleleOffset(int)}).
+ * 
+ * @author Herman De Beukelaer
+ */
+@FunctionalInterface
+public interface AlleleFrequencyConsumer {
+    
+    /**
+     * Receive the frequency of an allele.
+     * 
+     * @param allele global allele index
+     * @param frequency relative frequency of the allele
+     */
+    public void accept(int allele, double frequency);
+    
+}
@@ -0,0 +1,52 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.data;
+
+/**
+ * Floating point precision with which distances are stored.
+ * 
+ * @author Herman De Beukelaer
+ */
+public enum DistancePrecision {
+    /**
+     * Single precision (32-bit) floating point values.
+     */
+    FLOAT(Float.BYTES),
+    /**
+     * Double precision (64-bit) floating point values.
+     */
+    DOUBLE(Double.BYTES);
+    
+    private final int numBytes;
+
+    private DistancePrecision(int numBytes) {
+        this.numBytes = numBytes;
+    }
+
+    /**
+     * Get the number of bytes used to store a single value.
+     * 
+     * @return number of bytes per value
+     */
+    public int getNumBytes() {
+        return numBytes;
+    }
+    
+}
@@ -19,6 +19,8 @@
 
 package org.corehunter.data;
 
+import java.util.Arrays;
+
 import uno.informatics.data.Data;
 
 /**
@@ -87,6 +89,108 @@ public interface GenotypeData extends Data {
      */
     public Double getAlleleFrequency(int id, int markerIndex, int alleleIndex);
     
+    /**
+     * Get the relative frequency of an allele for the given entry (sample/accession) as a primitive value.
+     * Missing values are indicated with {@link Double#NaN}. The default implementation unboxes the value
+     * returned by {@link #getAlleleFrequency(int, int, int)}. Implementations may override this method to
+     * avoid boxing.
+     *
+     * @param id    the id of the entry, must be one of the IDs returned by {@link #getIDs()}
+     * @param markerIndex the index of the marker within the range 0 to n-1, where n is the total number of markers as
+     *                    returned by {@link #getNumberOfMarkers()}
+     * @param alleleIndex allele index within the range 0 to a-1, where a is the number of alleles for the given marker
+     *                    as returned by {@link #getNumberOfAlleles(int)}
+     * @return the relative allele frequency, {@link Double#NaN} if missing
+     */
+    public default double getAlleleFrequencyValue(int id, int markerIndex, int alleleIndex) {
+        Double freq = getAlleleFrequency(id, markerIndex, alleleIndex);
+        return freq == null ? Double.NaN : freq;
+    }
+    
+    /**
+     * Get the global index of the first allele of the given marker, within the range 0 to t-1, where t
+     * is the total number of alleles as returned by {@link #getTotalNumberOfAlleles()}. The alleles of
+     * each marker occupy a consecutive range of global indices, in order of the markers.
+     * 
+     * @param markerIndex the index of the marker within the range 0 to n-1, where n is the total number of
+     *                    markers as returned by {@link #getNumberOfMarkers()}; n is also accepted, in which
+     *                    case the total number of alleles is returned
+     * @return global index of the first allele of the marker
+     */
+    public default int getAlleleOffset(int markerIndex) {
+        if(markerIndex < 0 || markerIndex > getNumberOfMarkers()){
+            throw new ArrayIndexOutOfBoundsException(markerIndex);
+        }
+        int offset = 0;
+        for(int m = 0; m < markerIndex; m++){
+            offset += getNumberOfAlleles(m);
+        }
+        return offset;
+    }
+    
+    /**
+     * Copy the relative frequencies of all alleles for the given entry (sample/accession) into the given
+     * array, at the global allele indices (see {@link #getAlleleOffset(int)}). Missing values are indicated
+     * with {@link Double#NaN}.
+     * 
+     * @param id    the id of the entry, must be one of the IDs returned by {@link #getIDs()}
+     * @param frequencies array in which the frequencies are stored, of length at least equal to the
+     *                    total number of alleles as returned by {@link #getTotalNumberOfAlleles()}
+     */
+    public default void copyAlleleFrequencies(int id, double[] frequencies) {
+        int numMarkers = getNumberOfMarkers();
+        int i = 0;
+        for(int m = 0; m < numMarkers; m++){
+            int numAlleles = getNumberOfAlleles(m);
+            for(int a = 0; a < numAlleles; a++){
+                frequencies[i++] = getAlleleFrequencyValue(id, m, a);
+            }
+        }
+    }
+    
+    /**
+     * Pass the global index and relative frequency of all alleles with a non-zero frequency for the given
+     * entry (sample/accession) to the given consumer, in ascending order of the global allele indices (see
+     * {@link #getAlleleOffset(int)}). Missing values are skipped. The default implementation checks the
+     * frequency of each allele. Implementations that store frequencies sparsely may override this method
+     * so that only the stored frequencies are visited.
+     * 
+     * @param id    the id of the entry, must be one of the IDs returned by {@link #getIDs()}
+     * @param action consumer that receives the non-zero frequencies
+     */
+    public default void forEachNonZeroAlleleFrequency(int id, AlleleFrequencyConsumer action) {
+        int numMarkers = getNumberOfMarkers();
+        int i = 0;
+        for(int m = 0; m < numMarkers; m++){
+            int numAlleles = getNumberOfAlleles(m);
+            for(int a = 0; a < numAlleles; a++){
+                double freq = getAlleleFrequencyValue(id, m, a);
+                if(freq != 0.0 && !Double.isNaN(freq)){
+                    action.accept(i, freq);
+                }
+                i++;
+            }
+        }
+    }
+    
+    /**
+     * Sum the relative frequencies of all alleles across the given entries (samples/accessions), and store
+     * the sums in the given array at the global allele indices (see {@link #getAlleleOffset(int)}). Missing values
+     * are treated as zero. The default implementation adds the non-zero frequencies of each entry, as visited by
+     * {@link #forEachNonZeroAlleleFrequency(int, AlleleFrequencyConsumer)}, so that the work is proportional to
+     * the number of non-zero frequencies if these are stored sparsely.
+     * 
+     * @param ids ids of the entries, each of which must be one of the IDs returned by {@link #getIDs()}
+     * @param sums array in which the sums are stored, of length at least equal to the total
+     *             number of alleles as returned by {@link #getTotalNumberOfAlleles()}
+     */
+    public default void sumAlleleFrequencies(int[] ids, double[] sums) {
+        Arrays.fill(sums, 0, getTotalNumberOfAlleles(), 0.0);
+        for(int id : ids){
+            forEachNonZeroAlleleFrequency(id, (a, freq) -> sums[a] += freq);
+        }
+    }
+    
     /**
      * Indicates whether there are missing values (frequencies)
      * for the given entry (sample/accession) at the given marker.
@@ -97,5 +201,32 @@ public interface GenotypeData extends Data {
      * @return <code>true</code> if some or all values are missing for the given marker in the given entry
      */
     public boolean hasMissingValues(int id, int markerIndex);
+    
+    /**
+     * Get a bit mask indicating the markers with missing values for the given entry (sample/accession),
+     * within a block of 64 consecutive markers. Bit <code>k</code> (counted from the least significant bit)
+     * is set if values are missing for marker <code>64*block + k</code>, as indicated by
+     * {@link #hasMissingValues(int, int)}. Bits beyond the last marker are not set. This allows to check
+     * whether values are missing for a block of markers, or for any of two entries, in a single operation.
+     * <p>
+     * The default implementation checks each marker in the block. Implementations may override this
+     * method to return precomputed masks.
+     * 
+     * @param id the id of the entry, must be one of the IDs returned by {@link #getIDs()}
+     * @param block index of the block within the range 0 to b-1, where b is the number of markers
+     *              divided by 64 (rounded up)
+     * @return bit mask of markers with missing values in the given block
+     */
+    public default long getMissingValuesMask(int id, int block) {
+        int first = block << 6;
+        int end = Math.min(first + 64, getNumberOfMarkers());
+        long mask = 0L;
+        for(int m = first; m < end; m++){
+            if(hasMissingValues(id, m)){
+                mask |= 1L << (m - first);
+            }
+        }
+        return mask;
+    }
 
 }
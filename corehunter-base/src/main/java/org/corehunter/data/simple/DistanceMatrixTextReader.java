@@ -0,0 +1,561 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.data.simple;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.corehunter.data.DistancePrecision;
+import org.corehunter.util.StringUtils;
+
+import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.io.FileType;
+import uno.informatics.data.pojo.SimpleEntityPojo;
+
+/**
+ * Reads a distance matrix from a text file, in the format described at
+ * {@link SimpleDistanceMatrixData#readData(Path, FileType)}. The file is first scanned once to locate
+ * all rows. The matrix entries are then parsed directly from the bytes of each row into the lower triangular
+ * storage of the data, without creating intermediate strings or a full square matrix, and validated while
+ * parsing. Ranges of rows are parsed in parallel. Values in the upper triangular part are only parsed afterwards,
+ * if present, to verify that the matrix is symmetric.
+ * <p>
+ * Rows are split and cells are trimmed in the same way as by the row readers used for other data files:
+ * lines starting with <code>#</code> are skipped as comments and blank cells are treated as missing values.
+ * Values with at most 15 significant digits in plain decimal notation are converted without creating a
+ * string (yielding the same result as {@link Double#parseDouble(String)}); other values are delegated
+ * to {@link Double#parseDouble(String)}.
+ * 
+ * @author Herman De Beukelaer
+ */
+final class DistanceMatrixTextReader {
+    
+    // size of buffer used to locate rows
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+    // maximum number of values parsed by a single task
+    private static final long THRESHOLD = 1 << 16;
+    
+    private static final byte COMMENT = '#';
+    
+    // maximum number of significant digits converted without rounding errors (10^15 < 2^53)
+    private static final int MAX_EXACT_DIGITS = 15;
+    // exactly representable powers of ten
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    private final Path file;
+    private final byte delimiter;
+    private final DistancePrecision precision;
+    
+    // start and end position of each row (excluding comments and line terminators)
+    private long[] rowStarts;
+    private long[] rowEnds;
+    private int numRows;
+    
+    private DistanceMatrixTextReader(Path file, FileType type, DistancePrecision precision) {
+        this.file = file;
+        this.delimiter = (byte) (type == FileType.CSV ? ',' : '\t');
+        this.precision = precision;
+    }
+    
+    /**
+     * Read distance matrix data from the given file, using the common fork-join pool to parse rows in parallel.
+     * Arguments are assumed to have been validated.
+     * 
+     * @param file path to file that contains the data
+     * @param type {@link FileType#TXT} or {@link FileType#CSV}
+     * @param precision precision with which distances are stored
+     * @return distance matrix data
+     * @throws IOException if the file can not be read or is not correctly formatted
+     */
+    static SimpleDistanceMatrixData read(Path file, FileType type, DistancePrecision precision) throws IOException {
+        return new DistanceMatrixTextReader(file, type, precision).read(ForkJoinPool.commonPool());
+    }
+    
+    private SimpleDistanceMatrixData read(ForkJoinPool pool) throws IOException {
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            
+            if(channel.size() == 0){
+                throw new IOException("Can not create reader for file " + file + ". File may be empty.");
+            }
+            
+            locateRows(channel);
+            
+            if(numRows == 0){
+                throw new IOException("File is empty.");
+            }
+            
+            // infer dataset size
+            int n = numRows-1;
+            if (n <= 0) {
+                throw new IOException("No data.");
+            }
+            
+            // parse header row
+            byte[] bytes = new byte[rowLength(0)];
+            readRow(channel, 0, bytes);
+            String[] firstRow = splitRow(bytes, bytes.length);
+            
+            // check presence of ID column
+            if(!Objects.equals(SimpleDistanceMatrixData.IDENTIFIERS_HEADER, firstRow[0])){
+                throw new IOException("Missing ID column.");
+            }
+            
+            // check for presence of item names
+            int numHeaderCols = 1;
+            boolean withNames = false;
+            if(firstRow.length > 1 && Objects.equals(SimpleDistanceMatrixData.NAMES_HEADER, firstRow[1])){
+                withNames = true;
+                numHeaderCols++;
+            }
+            
+            // parse ids, names and lower triangular part (including diagonal)
+            Rows rows = new Rows(channel, n, numHeaderCols, withNames);
+            rows.parse(pool, false);
+            
+            // verify ids on header row, if provided
+            if(firstRow.length > numHeaderCols){
+                for(int i = 0; i < n; i++){
+                    if(numHeaderCols + i >= firstRow.length
+                            || !Objects.equals(rows.ids[i], StringUtils.unquote(firstRow[numHeaderCols+i]))){
+                        throw new IOException("Row and column identifiers differ.");
+                    }
+                }
+            }
+            
+            // verify upper triangular part, if provided
+            rows.parse(pool, true);
+            
+            // combine names and identifiers in headers
+            SimpleEntity[] headers = new SimpleEntity[n];
+            for(int i = 0; i < n; i++){
+                if (rows.names[i] != null) {
+                    headers[i] = new SimpleEntityPojo(rows.ids[i], rows.names[i]);
+                } else {
+                    headers[i] = new SimpleEntityPojo(rows.ids[i]);
+                }
+            }
+            
+            return new SimpleDistanceMatrixData(
+                    file.getFileName().toString(), headers, rows.distances, rows.floatDistances
+            );
+        }
+    }
+    
+    /**
+     * Scan the file to locate all rows. Lines are terminated by a line feed, a carriage return or both
+     * (in this order). Comment lines are skipped.
+     */
+    private void locateRows(FileChannel channel) throws IOException {
+        rowStarts = new long[1024];
+        rowEnds = new long[1024];
+        numRows = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        long position = 0;
+        long lineStart = 0;
+        // first non-whitespace character of the current line (-1 if none)
+        int first = -1;
+        boolean afterCarriageReturn = false;
+        int read;
+        while((read = channel.read(buffer, position)) >= 0){
+            for(int k = 0; k < read; k++){
+                byte b = bytes[k];
+                if(b == '\n' || b == '\r'){
+                    if(b == '\n' && afterCarriageReturn){
+                        // second part of line terminator
+                        lineStart++;
+                    } else {
+                        addLine(lineStart, position + k, first);
+                        lineStart = position + k + 1;
+                        first = -1;
+                    }
+                    afterCarriageReturn = b == '\r';
+                } else {
+                    afterCarriageReturn = false;
+                    if(first < 0 && !isWhitespace(b)){
+                        first = b;
+                    }
+                }
+            }
+            position += read;
+            buffer.clear();
+        }
+        if(lineStart < position){
+            // last line not terminated
+            addLine(lineStart, position, first);
+        }
+    }
+    
+    private void addLine(long start, long end, int first) throws IOException {
+        if(first == COMMENT){
+            return;
+        }
+        if(end - start > Integer.MAX_VALUE - 8){
+            throw new IOException("Row " + numRows + " is too long.");
+        }
+        if(numRows == rowStarts.length){
+            rowStarts = Arrays.copyOf(rowStarts, 2 * numRows);
+            rowEnds = Arrays.copyOf(rowEnds, 2 * numRows);
+        }
+        rowStarts[numRows] = start;
+        rowEnds[numRows] = end;
+        numRows++;
+    }
+    
+    private int rowLength(int row){
+        return (int) (rowEnds[row] - rowStarts[row]);
+    }
+    
+    private void readRow(FileChannel channel, int row, byte[] bytes) throws IOException {
+        readBytes(channel, rowStarts[row], bytes, rowLength(row));
+    }
+    
+    private static void readBytes(FileChannel channel, long position, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0){
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+    }
+    
+    /**
+     * Split a row into trimmed cells. Blank cells are <code>null</code>.
+     */
+    private String[] splitRow(byte[] bytes, int length){
+        int numCells = 1;
+        for(int k = 0; k < length; k++){
+            if(bytes[k] == delimiter){
+                numCells++;
+            }
+        }
+        String[] cells = new String[numCells];
+        int from = 0;
+        for(int c = 0; c < numCells; c++){
+            int to = nextDelimiter(bytes, from, length);
+            cells[c] = cell(bytes, from, to);
+            from = to + 1;
+        }
+        return cells;
+    }
+    
+    private int nextDelimiter(byte[] bytes, int from, int length){
+        int k = from;
+        while(k < length && bytes[k] != delimiter){
+            k++;
+        }
+        return k;
+    }
+    
+    private static String cell(byte[] bytes, int from, int to){
+        String str = new String(bytes, from, to - from, StandardCharsets.UTF_8).trim();
+        return str.isEmpty() ? null : str;
+    }
+    
+    private static boolean isWhitespace(byte b){
+        // same as String#trim (bytes of multi-byte characters are negative)
+        return b >= 0 && b <= ' ';
+    }
+    
+    /**
+     * Parse a number from the given range of bytes, without leading or trailing whitespace.
+     */
+    private static double parseDouble(byte[] bytes, int from, int to){
+        int k = from;
+        boolean negative = false;
+        if(k < to && (bytes[k] == '-' || bytes[k] == '+')){
+            negative = bytes[k] == '-';
+            k++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = -1;
+        boolean digits = false;
+        for(; k < to; k++){
+            byte b = bytes[k];
+            if(b >= '0' && b <= '9'){
+                digits = true;
+                if(mantissa != 0 || b != '0'){
+                    significantDigits++;
+                }
+                if(significantDigits > MAX_EXACT_DIGITS){
+                    break;
+                }
+                mantissa = 10 * mantissa + (b - '0');
+                if(fractionDigits >= 0){
+                    fractionDigits++;
+                }
+            } else if(b == '.' && fractionDigits < 0){
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if(k < to || !digits || fractionDigits >= POWERS_OF_TEN.length){
+            // not in plain decimal notation or not exactly convertible
+            return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+        }
+        // both the mantissa and the power of ten are exact, so that the quotient is correctly rounded
+        double value = mantissa;
+        if(fractionDigits > 0){
+            value /= POWERS_OF_TEN[fractionDigits];
+        }
+        return negative ? -value : value;
+    }
+    
+    /**
+     * Parsed rows, stored as the lower triangular part of the distance matrix.
+     */
+    private class Rows {
+        
+        private final FileChannel channel;
+        private final int n;
+        private final int numHeaderCols;
+        private final boolean withNames;
+        
+        private final String[] ids;
+        private final String[] names;
+        // lower triangular part of distance matrix (one of both, depending on the precision)
+        private final double[][] distances;
+        private final float[][] floatDistances;
+        // position of the first value after the diagonal in each row (-1 if none)
+        private final long[] upperStarts;
+        
+        // first error encountered while parsing
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+
+        private Rows(FileChannel channel, int n, int numHeaderCols, boolean withNames) {
+            this.channel = channel;
+            this.n = n;
+            this.numHeaderCols = numHeaderCols;
+            this.withNames = withNames;
+            ids = new String[n];
+            names = new String[n];
+            if(precision == DistancePrecision.FLOAT){
+                distances = null;
+                floatDistances = new float[n][];
+            } else {
+                distances = new double[n][];
+                floatDistances = null;
+            }
+            upperStarts = new long[n];
+        }
+        
+        /**
+         * Parse the lower (and diagonal) or upper triangular part of all rows in parallel.
+         */
+        private void parse(ForkJoinPool pool, boolean upper) throws IOException {
+            pool.invoke(new ParseTask(upper, 0, n));
+            Exception ex = error.get();
+            if(ex instanceof UncheckedIOException){
+                throw ((UncheckedIOException) ex).getCause();
+            }
+            if(ex != null){
+                throw (RuntimeException) ex;
+            }
+        }
+        
+        /**
+         * Parse ids, names and values up to the diagonal of the i-th data row.
+         */
+        private void parseLower(int i, byte[] bytes, int length) throws IOException {
+            if(distances != null){
+                distances[i] = new double[i];
+            } else {
+                floatDistances[i] = new float[i];
+            }
+            // check number of values
+            int numValues = 1 - numHeaderCols;
+            for(int k = 0; k < length; k++){
+                if(bytes[k] == delimiter){
+                    numValues++;
+                }
+            }
+            if(numValues < i){
+                throw new IOException("Too few values at row " + (i+1) + ".");
+            }
+            if(numValues > n){
+                throw new IOException("Too many values at row " + (i+1) + ".");
+            }
+            // id and name
+            int to = nextDelimiter(bytes, 0, length);
+            ids[i] = StringUtils.unquote(cell(bytes, 0, to));
+            int from = to + 1;
+            if(withNames){
+                to = nextDelimiter(bytes, from, length);
+                names[i] = StringUtils.unquote(cell(bytes, from, to));
+                from = to + 1;
+            } else {
+                names[i] = ids[i];
+            }
+            // values up to the diagonal (rows may be truncated at the diagonal)
+            for(int j = 0; j < Math.min(numValues, i+1); j++){
+                to = nextDelimiter(bytes, from, length);
+                int start = trimStart(bytes, from, to);
+                int end = trimEnd(bytes, start, to);
+                if(start == end){
+                    if(j < i){
+                        throw new IOException(String.format(
+                                "Missing value at row %d, col %d.", i + 1, numHeaderCols + j
+                        ));
+                    }
+                } else {
+                    double d = parseDouble(bytes, start, end);
+                    checkPositive(d);
+                    if(j < i){
+                        if(distances != null){
+                            distances[i][j] = d;
+                        } else {
+                            floatDistances[i][j] = (float) d;
+                        }
+                    } else if(d > SimpleDistanceMatrixData.DELTA){
+                        throw new IOException("Non-zero diagonal value at row " + (i+1) + ".");
+                    }
+                }
+                from = to + 1;
+            }
+            // values after the diagonal are verified afterwards
+            upperStarts[i] = numValues > i+1 ? rowStarts[i+1] + from : -1;
+        }
+        
+        /**
+         * Parse the values after the diagonal of the i-th data row, given from the first such value onwards,
+         * and verify that they match the corresponding values of the lower triangular part.
+         */
+        private void parseUpper(int i, byte[] bytes, int length) throws IOException {
+            int from = 0;
+            for(int j = i+1; from <= length; j++){
+                int to = nextDelimiter(bytes, from, length);
+                int start = trimStart(bytes, from, to);
+                int end = trimEnd(bytes, start, to);
+                if(start < end){
+                    double d = parseDouble(bytes, start, end);
+                    checkPositive(d);
+                    double lower;
+                    double tolerance = SimpleDistanceMatrixData.DELTA;
+                    if(distances != null){
+                        lower = distances[j][i];
+                    } else {
+                        // account for rounding of stored value
+                        lower = floatDistances[j][i];
+                        tolerance += Math.ulp(floatDistances[j][i]);
+                    }
+                    if(Math.abs(d - lower) > tolerance){
+                        throw new IOException("Matrix is not symmetric.");
+                    }
+                }
+                from = to + 1;
+            }
+        }
+        
+        private void checkPositive(double d){
+            if(d < 0.0){
+                throw new IllegalArgumentException("All distances should be positive.");
+            }
+        }
+        
+        private int trimStart(byte[] bytes, int from, int to){
+            while(from < to && isWhitespace(bytes[from])){
+                from++;
+            }
+            return from;
+        }
+        
+        private int trimEnd(byte[] bytes, int from, int to){
+            while(to > from && isWhitespace(bytes[to-1])){
+                to--;
+            }
+            return to;
+        }
+        
+        /**
+         * Parses a range of data rows. Ranges are split so that both halves contain
+         * approximately the same number of values in the lower triangular part.
+         */
+        private class ParseTask extends RecursiveAction {
+            
+            private static final long serialVersionUID = 1L;
+            
+            private final boolean upper;
+            private final int from;
+            private final int to;
+
+            private ParseTask(boolean upper, int from, int to) {
+                this.upper = upper;
+                this.from = from;
+                this.to = to;
+            }
+            
+            @Override
+            protected void compute() {
+                long numValues = ((long) to * (to + 1) - (long) from * (from + 1)) / 2;
+                int mid = (int) Math.sqrt(((double) from * from + (double) to * to) / 2);
+                if(numValues <= THRESHOLD || mid <= from || mid >= to){
+                    parseRows();
+                } else {
+                    invokeAll(new ParseTask(upper, from, mid), new ParseTask(upper, mid, to));
+                }
+            }
+            
+            private void parseRows() {
+                byte[] bytes = new byte[0];
+                try {
+                    for(int i = from; i < to && error.get() == null; i++){
+                        // data rows follow the header row
+                        long start = upper ? upperStarts[i] : rowStarts[i+1];
+                        if(start >= 0){
+                            int length = (int) (rowEnds[i+1] - start);
+                            if(bytes.length < length){
+                                bytes = new byte[Math.max(length, 2 * bytes.length)];
+                            }
+                            readBytes(channel, start, bytes, length);
+                            if(upper){
+                                parseUpper(i, bytes, length);
+                            } else {
+                                parseLower(i, bytes, length);
+                            }
+                        }
+                    }
+                } catch (IOException ex) {
+                    error.compareAndSet(null, new UncheckedIOException(ex));
+                } catch (RuntimeException ex) {
+                    error.compareAndSet(null, ex);
+                }
+            }
+            
+        }
+        
+    }
+    
+}
@@ -0,0 +1,442 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.data.simple;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.corehunter.data.DistanceMatrixData;
+import org.corehunter.data.DistancePrecision;
+
+import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.pojo.DataPojo;
+import uno.informatics.data.pojo.SimpleEntityPojo;
+
+/**
+ * Distance matrix stored in a file that is mapped into memory. The data is kept off heap and the operating
+ * system loads the required parts of the file on demand, so that very large matrices can be used without
+ * reading the file or allocating heap space for all distances.
+ * <p>
+ * The file contains the lower triangular part of the (symmetric) distance matrix, excluding the diagonal,
+ * stored row by row: the distance between items <code>i</code> and <code>j &lt; i</code> is the value at
+ * position <code>i(i-1)/2 + j</code>. Values are stored in little-endian byte order with the precision
+ * specified when creating the data (32-bit or 64-bit floating point values).
+ * <p>
+ * Distances can also be stored in a self-contained binary file that starts with a header containing the
+ * dataset name, precision and item headers (see {@link #writeBinaryFile(Path, DistanceMatrixData, DistancePrecision)}).
+ * Such files are reopened with {@link #openBinaryFile(Path)}, which only reads the header and maps the distances.
+ * 
+ * @author Herman De Beukelaer
+ */
+public class MappedDistanceMatrixData extends DataPojo implements DistanceMatrixData {
+
+    // number of values per mapped segment (a single mapping is limited to 2GB)
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    
+    // size of buffer used to write distances
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    
+    // binary file format: magic number ("CHDM"), version, and alignment of the distances
+    private static final int BINARY_FILE_MAGIC = 0x4348444D;
+    private static final int BINARY_FILE_VERSION = 1;
+    private static final int BINARY_FILE_ALIGNMENT = 8;
+    // size of the fixed part of the header: magic number, version and offset of the distances
+    private static final int BINARY_FILE_PREFIX_SIZE = 16;
+    
+    private final Path file;
+    private final DistancePrecision precision;
+    private final ByteBuffer[] segments;
+    
+    /**
+     * Map distances stored in the given file, starting at the beginning of the file.
+     * The file is not validated: all distances are assumed to be positive.
+     * 
+     * @param name dataset name
+     * @param headers item headers; each item should at least have a unique identifier
+     *                (names are optional)
+     * @param file file containing the lower triangular part of the distance matrix
+     * @param precision precision with which values are stored in the file
+     * @throws IOException if the file can not be mapped or is too small to contain all distances
+     */
+    public MappedDistanceMatrixData(String name, SimpleEntity[] headers,
+                                    Path file, DistancePrecision precision) throws IOException {
+        this(name, headers, file, 0, precision);
+    }
+    
+    /**
+     * Map distances stored in the given file, starting at the given offset.
+     * The file is not validated: all distances are assumed to be positive.
+     * 
+     * @param name dataset name
+     * @param headers item headers; each item should at least have a unique identifier
+     *                (names are optional)
+     * @param file file containing the lower triangular part of the distance matrix
+     * @param offset position of the first distance in the file (in bytes)
+     * @param precision precision with which values are stored in the file
+     * @throws IOException if the file can not be mapped or is too small to contain all distances
+     */
+    public MappedDistanceMatrixData(String name, SimpleEntity[] headers,
+                                    Path file, long offset, DistancePrecision precision) throws IOException {
+        
+        // pass dataset name, size and item headers to parent
+        super(name, headers);
+        
+        if(file == null){
+            throw new IllegalArgumentException("File path not defined.");
+        }
+        if(precision == null){
+            throw new IllegalArgumentException("Precision not defined.");
+        }
+        if(offset < 0){
+            throw new IllegalArgumentException("Offset should be positive.");
+        }
+        
+        this.file = file;
+        this.precision = precision;
+        
+        // map file
+        long numValues = numDistances(getSize());
+        int numBytes = precision.getNumBytes();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() < offset + numValues * numBytes){
+                throw new IOException(String.format(
+                        "File %s is too small to contain %d distances.", file, numValues
+                ));
+            }
+            int numSegments = (int) ((numValues + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new ByteBuffer[numSegments];
+            for(int s = 0; s < numSegments; s++){
+                long first = (long) s << SEGMENT_SHIFT;
+                long count = Math.min(1L << SEGMENT_SHIFT, numValues - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * numBytes, count * numBytes)
+                                     .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        
+    }
+    
+    /**
+     * Write the lower triangular part of the given distance matrix to a new file and map it into memory.
+     * Item headers and dataset name are copied from the given data. If single precision is used, distances
+     * are rounded to the nearest float.
+     * 
+     * @param file path to file, should not yet exist
+     * @param distances distance matrix data
+     * @param precision precision with which values are stored in the file
+     * @return distance matrix data mapped from the created file
+     * @throws IOException if the file already exists or can not be written
+     */
+    public static MappedDistanceMatrixData create(Path file, DistanceMatrixData distances,
+                                                  DistancePrecision precision) throws IOException {
+        
+        if(file == null){
+            throw new IllegalArgumentException("File path not defined.");
+        }
+        if(file.toFile().exists()){
+            throw new IOException("File already exists : " + file + ".");
+        }
+        if(precision == null){
+            throw new IllegalArgumentException("Precision not defined.");
+        }
+        
+        Path parent = file.toAbsolutePath().getParent();
+        if(parent != null){
+            Files.createDirectories(parent);
+        }
+        
+        // write distances
+        try(FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE
+        )){
+            writeDistances(channel, distances, precision);
+        }
+        
+        // copy headers
+        int n = distances.getSize();
+        SimpleEntity[] headers = new SimpleEntity[n];
+        for(int i = 0; i < n; i++){
+            headers[i] = distances.getHeader(i);
+        }
+        
+        return new MappedDistanceMatrixData(distances.getName(), headers, file, precision);
+        
+    }
+    
+    /**
+     * Write the given distance matrix data to a new binary file, with the precision in which the distances
+     * are stored by the given data (double precision if unknown). The file format is described at
+     * {@link #writeBinaryFile(Path, DistanceMatrixData, DistancePrecision)}.
+     * 
+     * @param file path to file, should not yet exist
+     * @param distances distance matrix data
+     * @throws IOException if the file already exists or can not be written
+     */
+    public static void writeBinaryFile(Path file, DistanceMatrixData distances) throws IOException {
+        DistancePrecision precision = DistancePrecision.DOUBLE;
+        if(distances instanceof SimpleDistanceMatrixData){
+            precision = ((SimpleDistanceMatrixData) distances).getPrecision();
+        } else if(distances instanceof MappedDistanceMatrixData){
+            precision = ((MappedDistanceMatrixData) distances).getPrecision();
+        }
+        writeBinaryFile(file, distances, precision);
+    }
+    
+    /**
+     * Write the given distance matrix data to a new binary file. The file starts with a header containing
+     * a magic number, a format version, the position of the first distance, the precision, the dataset name
+     * and the identifier and name of each item. The header is followed by the lower triangular part of
+     * the distance matrix, in the format expected when mapping the distances, aligned at 8 bytes.
+     * If single precision is used, distances are rounded to the nearest float.
+     * 
+     * @param file path to file, should not yet exist
+     * @param distances distance matrix data
+     * @param precision precision with which values are stored in the file
+     * @throws IOException if the file already exists or can not be written
+     */
+    public static void writeBinaryFile(Path file, DistanceMatrixData distances,
+                                       DistancePrecision precision) throws IOException {
+        
+        if(file == null){
+            throw new IllegalArgumentException("File path not defined.");
+        }
+        if(file.toFile().exists()){
+            throw new IOException("File already exists : " + file + ".");
+        }
+        if(precision == null){
+            throw new IllegalArgumentException("Precision not defined.");
+        }
+        
+        Path parent = file.toAbsolutePath().getParent();
+        if(parent != null){
+            Files.createDirectories(parent);
+        }
+        
+        // encode variable part of header
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream header = new DataOutputStream(bytes)){
+            header.writeUTF(precision.name());
+            writeString(header, distances.getName());
+            int n = distances.getSize();
+            header.writeInt(n);
+            for(int i = 0; i < n; i++){
+                SimpleEntity item = distances.getHeader(i);
+                header.writeUTF(item.getUniqueIdentifier());
+                writeString(header, item.getName());
+            }
+        }
+        int headerSize = BINARY_FILE_PREFIX_SIZE + bytes.size();
+        long offset = (headerSize + BINARY_FILE_ALIGNMENT - 1) / BINARY_FILE_ALIGNMENT * BINARY_FILE_ALIGNMENT;
+        
+        // write header and distances
+        try(FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE
+        )){
+            ByteBuffer buffer = ByteBuffer.allocate((int) offset);
+            buffer.putInt(BINARY_FILE_MAGIC)
+                  .putInt(BINARY_FILE_VERSION)
+                  .putLong(offset)
+                  .put(bytes.toByteArray());
+            buffer.position((int) offset);
+            flush(channel, buffer);
+            writeDistances(channel, distances, precision);
+        }
+        
+    }
+    
+    /**
+     * Open distance matrix data stored in a binary file written with
+     * {@link #writeBinaryFile(Path, DistanceMatrixData, DistancePrecision)}. Only the header is read;
+     * the distances are mapped into memory.
+     * 
+     * @param file path to binary file
+     * @return distance matrix data mapped from the given file
+     * @throws IOException if the file can not be read or is not a valid binary distance matrix file
+     */
+    public static MappedDistanceMatrixData openBinaryFile(Path file) throws IOException {
+        
+        if(file == null){
+            throw new IllegalArgumentException("File path not defined.");
+        }
+        if(!file.toFile().exists()){
+            throw new IOException("File does not exist : " + file + ".");
+        }
+        
+        String name;
+        SimpleEntity[] headers;
+        DistancePrecision precision;
+        long offset;
+        try(DataInputStream header = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+            if(header.readInt() != BINARY_FILE_MAGIC){
+                throw new IOException("File " + file + " is not a binary distance matrix file.");
+            }
+            int version = header.readInt();
+            if(version != BINARY_FILE_VERSION){
+                throw new IOException("Unsupported binary distance matrix file version: " + version + ".");
+            }
+            offset = header.readLong();
+            try {
+                precision = DistancePrecision.valueOf(header.readUTF());
+            } catch (IllegalArgumentException ex){
+                throw new IOException("Unknown precision in file " + file + ".", ex);
+            }
+            name = readString(header);
+            int n = header.readInt();
+            if(n < 0){
+                throw new IOException("Invalid number of items in file " + file + ".");
+            }
+            headers = new SimpleEntity[n];
+            for(int i = 0; i < n; i++){
+                String id = header.readUTF();
+                String itemName = readString(header);
+                headers[i] = itemName != null ? new SimpleEntityPojo(id, itemName) : new SimpleEntityPojo(id);
+            }
+        }
+        
+        return new MappedDistanceMatrixData(name, headers, file, offset, precision);
+        
+    }
+    
+    /**
+     * Check whether the given file is a binary distance matrix file, based on its first bytes.
+     * 
+     * @param file path to file
+     * @return <code>true</code> if the file starts with the magic number of the binary format
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isBinaryFile(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while(magic.hasRemaining()){
+                if(channel.read(magic) < 0){
+                    return false;
+                }
+            }
+            return magic.getInt(0) == BINARY_FILE_MAGIC;
+        }
+    }
+    
+    // strings that may be undefined are preceded by a flag
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if(str != null){
+            out.writeUTF(str);
+        }
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    /**
+     * Write the lower triangular part of the given distance matrix to the given channel,
+     * in the format expected when mapping the distances.
+     * 
+     * @param channel channel to which the distances are written
+     * @param distances distance matrix data
+     * @param precision precision with which values are written
+     * @throws IOException if the distances can not be written
+     */
+    static void writeDistances(WritableByteChannel channel,
+                               DistanceMatrixData distances,
+                               DistancePrecision precision) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int n = distances.getSize();
+        for(int i = 1; i < n; i++){
+            for(int j = 0; j < i; j++){
+                if(buffer.remaining() < precision.getNumBytes()){
+                    flush(channel, buffer);
+                }
+                double d = distances.getDistance(i, j);
+                if(precision == DistancePrecision.FLOAT){
+                    buffer.putFloat((float) d);
+                } else {
+                    buffer.putDouble(d);
+                }
+            }
+        }
+        flush(channel, buffer);
+    }
+    
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Get the number of distances stored for a matrix with the given number of items.
+     * 
+     * @param n number of items
+     * @return number of stored distances, i.e. <code>n(n-1)/2</code>
+     */
+    public static long numDistances(int n) {
+        return (long) n * (n - 1) / 2;
+    }
+    
+    @Override
+    public double getDistance(int idX, int idY) {
+        if(idX == idY){
+            return 0.0;
+        }
+        int i = Math.max(idX, idY);
+        int j = Math.min(idX, idY);
+        long k = (long) i * (i - 1) / 2 + j;
+        ByteBuffer segment = segments[(int) (k >>> SEGMENT_SHIFT)];
+        int pos = (int) (k & SEGMENT_MASK);
+        if(precision == DistancePrecision.FLOAT){
+            return segment.getFloat(pos * Float.BYTES);
+        } else {
+            return segment.getDouble(pos * Double.BYTES);
+        }
+    }
+    
+    /**
+     * Get the file from which the distances are mapped.
+     * 
+     * @return path to mapped file
+     */
+    public Path getFile() {
+        return file;
+    }
+    
+    /**
+     * Get the precision with which distances are stored.
+     * 
+     * @return precision
+     */
+    public DistancePrecision getPrecision() {
+        return precision;
+    }
+    
+}
@@ -22,35 +22,32 @@ package org.corehunter.data.simple;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
 
 import org.corehunter.data.DistanceMatrixData;
-import org.corehunter.util.StringUtils;
+import org.corehunter.data.DistancePrecision;
 
 import uno.informatics.data.io.FileType;
 import uno.informatics.common.io.IOUtilities;
-import uno.informatics.common.io.RowReader;
 import uno.informatics.common.io.RowWriter;
 import uno.informatics.common.io.text.TextFileRowReader;
 import uno.informatics.data.SimpleEntity;
 import uno.informatics.data.pojo.DataPojo;
-import uno.informatics.data.pojo.SimpleEntityPojo;
 
 /**
- * Simple implementation of a distance matrix that stores all values in a two-dimensional double array.
+ * Simple implementation of a distance matrix that stores all values in memory. As the matrix is symmetric
+ * with a zero diagonal, only the lower triangular part is stored, in double or single precision.
  * 
  * @author Guy Davenport, Herman De Beukelaer
  */
 public class SimpleDistanceMatrixData extends DataPojo implements DistanceMatrixData {
 
-    private static final double DELTA = 1e-10;
-    private static final String IDENTIFIERS_HEADER = "ID";
-    private static final String NAMES_HEADER = "NAME";
+    static final double DELTA = 1e-10;
+    static final String IDENTIFIERS_HEADER = "ID";
+    static final String NAMES_HEADER = "NAME";
     
-    // distance matrix
+    // lower triangular part of distance matrix (one of both, depending on the precision)
     private final double[][] distances;
+    private final float[][] floatDistances;
     
     /**
      * Create distance matrix data given the item headers and distances.
@@ -99,13 +96,53 @@ public class SimpleDistanceMatrixData extends DataPojo implements DistanceMatrix
      *                                  or more headers
      */
     public SimpleDistanceMatrixData(String name, SimpleEntity[] headers, double[][] distances) {
+        this(name, headers, distances, DistancePrecision.DOUBLE);
+    }
+    
+    /**
+     * Create distance matrix data given the dataset name, item headers, distances and the precision
+     * with which distances are stored. Item headers and distances are copied to internal data structures.
+     * Storing distances in single precision halves the required memory, at the cost of rounding all
+     * values to approximately seven significant digits.
+     * <p>
+     * All values should be positive and the diagonal values equal to zero.
+     * The distance matrix should be symmetric with all rows of equal length.
+     * Violating any of these requirements will produce an exception.
+     * <p>
+     * Item headers are required. Each item should at least have a unique identifier
+     * (names are optional).
+     * 
+     * @param name dataset name
+     * @param headers item headers; its length should be the same as the dimension
+     *                of the given distance matrix and each item should at least have a
+     *                unique identifier (names are optional)
+     * @param distances distance matrix (symmetric)
+     * @param precision precision with which distances are stored
+     * @throws IllegalArgumentException if an illegal distance matrix is given,
+     *                                  if the number of headers does not match
+     *                                  the dimension of the distance matrix, or
+     *                                  if unique identifiers are missing in one
+     *                                  or more headers
+     */
+    public SimpleDistanceMatrixData(String name, SimpleEntity[] headers,
+                                    double[][] distances, DistancePrecision precision) {
         
         // pass dataset name, size and item headers to parent
         super(name, headers);
         
-        // validate distances and copy to internal array
+        if(precision == null){
+            throw new IllegalArgumentException("Precision not defined.");
+        }
+        
+        // validate distances and copy lower triangular part to internal array
         int n = distances.length;
-        this.distances = new double[n][n];
+        if(precision == DistancePrecision.FLOAT){
+            this.distances = null;
+            floatDistances = new float[n][];
+        } else {
+            this.distances = new double[n][];
+            floatDistances = null;
+        }
 
         for (int r = 0; r < n; r++) {
             // check row length
@@ -114,6 +151,11 @@ public class SimpleDistanceMatrixData extends DataPojo implements DistanceMatrix
                         String.format("Number of distances in row %d does not match number of rows.", r)
                 );
             }
+            if(this.distances != null){
+                this.distances[r] = new double[r];
+            } else {
+                floatDistances[r] = new float[r];
+            }
             // validate and copy row values
             for(int c = 0; c < n; c++){
                 // check positive
@@ -128,16 +170,51 @@ public class SimpleDistanceMatrixData extends DataPojo implements DistanceMatrix
                 if(r == c && distances[r][c] > DELTA){
                     throw new IllegalArgumentException("Diagonal values should be zero.");
                 }
-                // copy
-                this.distances[r][c] = distances[r][c];
+                // copy (lower triangular part only)
+                if(c < r){
+                    if(this.distances != null){
+                        this.distances[r][c] = distances[r][c];
+                    } else {
+                        floatDistances[r][c] = (float) distances[r][c];
+                    }
+                }
             }
         }
         
     }
 
+    /**
+     * Create distance matrix data from the given lower triangular part, stored in double or single precision.
+     * Exactly one of both arrays should be defined. The distances are not validated nor copied.
+     * 
+     * @param name dataset name
+     * @param headers item headers
+     * @param distances lower triangular part in double precision, or <code>null</code>
+     * @param floatDistances lower triangular part in single precision, or <code>null</code>
+     */
+    SimpleDistanceMatrixData(String name, SimpleEntity[] headers, double[][] distances, float[][] floatDistances) {
+        super(name, headers);
+        this.distances = distances;
+        this.floatDistances = floatDistances;
+    }
+
     @Override
     public double getDistance(int idX, int idY) {
-        return distances[idX][idY];
+        if(idX == idY){
+            return 0.0;
+        }
+        int i = Math.max(idX, idY);
+        int j = Math.min(idX, idY);
+        return distances != null ? distances[i][j] : floatDistances[i][j];
+    }
+    
+    /**
+     * Get the precision with which distances are stored.
+     * 
+     * @return precision
+     */
+    public DistancePrecision getPrecision() {
+        return distances != null ? DistancePrecision.DOUBLE : DistancePrecision.FLOAT;
     }
 
     /**
@@ -166,6 +243,22 @@ public class SimpleDistanceMatrixData extends DataPojo implements DistanceMatrix
      * @throws IOException if the file can not be read or is not correctly formatted
      */
     public static SimpleDistanceMatrixData readData(Path filePath, FileType type) throws IOException {
+        return readData(filePath, type, DistancePrecision.DOUBLE);
+    }
+    
+    /**
+     * Read distance matrix data from file and store the distances with the given precision.
+     * The file format is described at {@link #readData(Path, FileType)}. Only the lower triangular
+     * part is parsed into memory; ranges of rows are parsed in parallel in the common fork-join pool.
+     * 
+     * @param filePath path to file that contains the data
+     * @param type {@link FileType#TXT} or {@link FileType#CSV}
+     * @param precision precision with which distances are stored
+     * @return distance matrix data
+     * @throws IOException if the file can not be read or is not correctly formatted
+     */
+    public static SimpleDistanceMatrixData readData(Path filePath, FileType type,
+                                                    DistancePrecision precision) throws IOException {
         
         // validate arguments
         
@@ -186,141 +279,48 @@ public class SimpleDistanceMatrixData extends DataPojo implements DistanceMatrix
                     String.format("Only file types TXT and CSV are supported. Got: %s.", type)
             );
         }
+        
+        if(precision == null){
+            throw new IllegalArgumentException("Precision not defined.");
+        }
 
         // read data from file
-        try (RowReader reader = IOUtilities.createRowReader(
-                filePath, type, TextFileRowReader.REMOVE_WHITE_SPACE
-        )) {
-            
-            if (reader == null || !reader.ready()) {
-                throw new IOException("Can not create reader for file " + filePath + ". File may be empty.");
-            }
-            
-            if(!reader.hasNextRow()){
-                throw new IOException("File is empty.");
-            }
-            
-            // read all lines
-            List<String[]> rows = new ArrayList<>();
-            while (reader.nextRow()) {
-                rows.add(reader.getRowCellsAsStringArray());
-            }
-            
-            // infer dataset size
-            int n = rows.size()-1;
-            if (n <= 0) {
-                throw new IOException("No data.");
-            }
-            
-            // check presence of ID column
-            String[] firstRow = rows.get(0);
-            if(firstRow.length == 0 || !Objects.equals(IDENTIFIERS_HEADER, firstRow[0])){
-                throw new IOException("Missing ID column.");
-            }
-            
-            // check for presence of item names
-            int numHeaderCols = 1;
-            boolean withNames = false;
-            if(firstRow.length > 1 && Objects.equals(NAMES_HEADER, firstRow[1])){
-                withNames = true;
-                numHeaderCols++;
-            }
-            
-            // extract ids and names
-            String[] ids = new String[n];
-            String[] names = new String[n];
-            for(int i = 0; i < n; i++){
-                ids[i] = StringUtils.unquote(rows.get(i+1)[0]);
-                names[i] = withNames ? StringUtils.unquote(rows.get(i+1)[1]) : ids[i];
-            }
-            
-            // verify ids on header row, if provided
-            if(firstRow.length > numHeaderCols){
-                for(int i = 0; i < n; i++){
-                    if(numHeaderCols + i >= firstRow.length
-                            || !Objects.equals(ids[i], StringUtils.unquote(firstRow[numHeaderCols+i]))){
-                        throw new IOException("Row and column identifiers differ.");
-                    }
-                }
-            }
-            
-            // read matrix entries
-            Double[][] dist = new Double[n][n];
-            for(int i = 0; i < n; i++){
-                String[] row = rows.get(i+1);
-                if(row.length-numHeaderCols < i){
-                    throw new IOException("Too few values at row " + (i+1) + ".");
-                }
-                if(row.length-numHeaderCols > n){
-                    throw new IOException("Too many values at row " + (i+1) + ".");
-                }
-                for(int j = 0; j < row.length-numHeaderCols; j++){
-                    String entry = row[numHeaderCols + j];
-                    Double d = entry == null ? null : Double.parseDouble(entry);
-                    dist[i][j] = d;
-                }
-            }
-            
-            // check and complete matrix
-            for(int i = 0; i < n; i++){
-                for(int j = 0; j < n; j++){
-                    Double d = dist[i][j];
-                    if(i > j){
-                        // lower triangular
-                        if(d == null){
-                            throw new IOException(String.format(
-                                    "Missing value at row %d, col %d.",
-                                    i + 1, numHeaderCols + j
-                            ));
-                        }
-                    } else if (i == j){
-                        // diagonal
-                        if(d != null){
-                            if(d > DELTA){
-                                throw new IOException("Non-zero diagonal value at row " + (i+1) + ".");
-                            }
-                        } else {
-                            dist[i][j] = 0.0;                            
-                        }
-                    } else {
-                        // upper triangular
-                        if(dist[j][i] == null){
-                            throw new IOException(String.format(
-                                    "Missing value at row %d, col %d.",
-                                    j + 1, numHeaderCols + i
-                            ));
-                        }
-                        if(d != null){
-                            if(Math.abs(d - dist[j][i]) > DELTA){
-                                throw new IOException("Matrix is not symmetric.");
-                            }
-                        } else {
-                            dist[i][j] = dist[j][i];
-                        }
-                    }
-                }
-            }
-            
-            // unbox matrix
-            double[][] distances = new double[n][n];
-            for(int i = 0; i < n; i++){
-                for(int j = 0; j < n; j++){
-                    distances[i][j] = dist[i][j];
-                }
-            }
-            
-            // combine names and identifiers in headers
-            SimpleEntity[] headers = new SimpleEntity[n];
-            for(int i = 0; i < n; i++){
-                if (names[i] != null) {
-                    headers[i] = new SimpleEntityPojo(ids[i], names[i]);
-                } else {
-                    headers[i] = new SimpleEntityPojo(ids[i]);
-                }             
-            }
-            
-            return new SimpleDistanceMatrixData(filePath.getFileName().toString(), headers, distances);
-        }
+        return DistanceMatrixTextReader.read(filePath, type, precision);
+    }
+    
+    /**
+     * Open distance matrix data stored in a binary file, as written by {@link #writeBinaryData(Path)}.
+     * The distances are mapped into memory without being parsed or copied to the heap.
+     * 
+     * @param filePath path to binary file
+     * @return distance matrix data mapped from the given file
+     * @throws IOException if the file can not be read or is not a valid binary distance matrix file
+     */
+    public static MappedDistanceMatrixData openBinaryData(Path filePath) throws IOException {
+        return MappedDistanceMatrixData.openBinaryFile(filePath);
+    }
+    
+    /**
+     * Check whether the given file contains distance matrix data in binary format.
+     * 
+     * @param filePath path to file
+     * @return <code>true</code> if the file is a binary distance matrix file
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isBinaryData(Path filePath) throws IOException {
+        return MappedDistanceMatrixData.isBinaryFile(filePath);
+    }
+    
+    /**
+     * Write distance matrix to a binary file, with the precision in which distances are stored.
+     * The file contains the dataset name, item headers and the lower triangular part of the
+     * distance matrix, and can be reopened instantly with {@link #openBinaryData(Path)}.
+     * 
+     * @param filePath path to file, should not yet exist
+     * @throws IOException if the file already exists or can not be written
+     */
+    public void writeBinaryData(Path filePath) throws IOException {
+        MappedDistanceMatrixData.writeBinaryFile(filePath, this, getPrecision());
     }
     
     /**
@@ -379,7 +379,7 @@ public class SimpleDistanceMatrixData extends DataPojo implements DistanceMatrix
                 // write matrix entries
                 for(int j = 0; j < getSize(); j++){
                     writer.newColumn();
-                    writer.writeCell(distances[i][j]);
+                    writer.writeCell(getDistance(i, j));
                 }
             }
             
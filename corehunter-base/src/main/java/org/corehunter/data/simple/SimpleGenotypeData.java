@@ -33,6 +33,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Stream;
 
+import org.corehunter.data.AlleleFrequencyConsumer;
 import org.corehunter.data.GenotypeDataFormat;
 import org.corehunter.util.StringUtils;
 
@@ -47,6 +48,14 @@ import uno.informatics.data.pojo.SimpleEntityPojo;
 import org.corehunter.data.GenotypeData;
 
 /**
+ * Genotype data that stores the allele frequencies of each item in a flat array of all alleles. If all frequencies are
+ * multiples of 1/d for a small denominator d, as for data in the default format where d follows from the ploidy
+ * (e.g. frequencies 0, 0.5 and 1 for diploid data), frequencies are stored as one byte per allele (the dosage
+ * k for frequency k/d) and decoded with a small lookup table. This is detected upon creation of the data.
+ * A frequency is only considered to be a multiple of 1/d if it is exactly equal to the double precision value
+ * of k/d, so that all frequencies are returned exactly as given. Other data, e.g. frequencies with more than a
+ * few significant decimals or frequencies that have been rounded, is stored as is.
+ * 
  * @author Guy Davenport, Herman De Beukelaer
  */
 public class SimpleGenotypeData extends DataPojo implements GenotypeData {
@@ -55,10 +64,25 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
     private static final String NAMES_HEADER = "NAME";
     private static final String ALLELE_NAMES_HEADER = "ALLELE";
     private static final String IDENTIFIERS_HEADER = "ID";
+    // largest denominator inferred for a single frequency and largest common denominator for stored dosages
+    private static final int MAX_FREQUENCY_DENOMINATOR = 16;
+    private static final int MAX_DOSAGE_DENOMINATOR = 254;
+    // dosage stored for missing values (as unsigned byte)
+    private static final int MISSING_DOSAGE = 255;
     
-    private final Double[][][] alleleFrequencies;   // null element means missing value
+    // one row of all alleles per item (NaN means missing value); null if dosages are stored
+    private final double[][] alleleFrequencies;
+    // one row of all alleles per item (MISSING_DOSAGE means missing value); null if frequencies are stored
+    private final byte[][] alleleDosages;
+    private final int dosageDenominator;            // frequency of dosage k is k/dosageDenominator
+    private final double[] dosageFrequencies;       // frequency per dosage (NaN for missing value)
+    private final long[][] missingValues;           // markers with missing values (64 markers per word)
     private final int numberOfMarkers;
     private final int[] numberOfAllelesForMarker;
+    private final int[] alleleOffsets;              // index of first allele per marker within a row (+ row length)
+    // one row of all items per allele, zero if missing (only created on request, see setMarkerMajorLayout)
+    private volatile double[][] markerMajorFrequencies;
+    private volatile byte[][] markerMajorDosages;
     private final int totalNumberAlleles;
     private final String[] markerNames;             // null element means no marker name assigned
     private final String[][] alleleNames;           // null element means no allele name assigned
@@ -172,9 +196,12 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
                     if(1.0 - sum > SUM_TO_ONE_PRECISION){
                         throw new IllegalArgumentException("Allele frequencies for marker should sum to one.");
                     }
-                    // normalize to avoid numerical imprecisions
-                    for(int k = 0; k  < alleleFreqs.length; k++){
-                        alleleFreqs[k] /= sum;
+                    // normalize to avoid numerical imprecisions (unless the sum only differs from one by
+                    // rounding errors, so that exact dosage steps such as 1/3 and 2/3 are kept as given)
+                    if(Math.abs(1.0 - sum) > alleleFreqs.length * Math.ulp(1.0)){
+                        for(int k = 0; k  < alleleFreqs.length; k++){
+                            alleleFreqs[k] /= sum;
+                        }
                     }
                 }
             }
@@ -182,16 +209,46 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
         numberOfMarkers = m;
         numberOfAllelesForMarker = a;
         
-        // set total number of alleles
-        totalNumberAlleles = Arrays.stream(numberOfAllelesForMarker).sum();
+        // set allele offsets and total number of alleles
+        alleleOffsets = new int[m + 1];
+        for (int j = 0; j < m; j++) {
+            alleleOffsets[j + 1] = alleleOffsets[j] + numberOfAllelesForMarker[j];
+        }
+        totalNumberAlleles = alleleOffsets[m];
         
-        // copy allele frequencies
-        this.alleleFrequencies = new Double[n][m][];
+        // copy allele frequencies into flat row per item (stored as dosages if possible)
+        // and index markers with missing values
+        dosageDenominator = inferDosageDenominator(alleleFrequencies);
+        if (dosageDenominator > 0) {
+            this.alleleFrequencies = null;
+            alleleDosages = new byte[n][totalNumberAlleles];
+            dosageFrequencies = new double[MISSING_DOSAGE + 1];
+            Arrays.fill(dosageFrequencies, Double.NaN);
+            for (int k = 0; k <= dosageDenominator; k++) {
+                dosageFrequencies[k] = (double) k / dosageDenominator;
+            }
+        } else {
+            this.alleleFrequencies = new double[n][totalNumberAlleles];
+            alleleDosages = null;
+            dosageFrequencies = null;
+        }
+        missingValues = new long[n][(m + 63) >>> 6];
         for (int i = 0; i < n; i++) {
             for (int j = 0; j < m; j++) {
-                this.alleleFrequencies[i][j] = Arrays.copyOf(
-                        alleleFrequencies[i][j], numberOfAllelesForMarker[j]
-                );
+                Double[] alleleFreqs = alleleFrequencies[i][j];
+                for (int k = 0; k < alleleFreqs.length; k++) {
+                    int index = alleleOffsets[j] + k;
+                    if (alleleFreqs[k] == null) {
+                        missingValues[i][j >>> 6] |= 1L << j;
+                    }
+                    if (alleleDosages != null) {
+                        alleleDosages[i][index] = (byte) (alleleFreqs[k] == null
+                                                          ? MISSING_DOSAGE
+                                                          : Math.round(alleleFreqs[k] * dosageDenominator));
+                    } else {
+                        this.alleleFrequencies[i][index] = alleleFreqs[k] == null ? Double.NaN : alleleFreqs[k];
+                    }
+                }
             }
         }
         
@@ -264,12 +321,279 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
 
     @Override
     public Double getAlleleFrequency(int id, int markerIndex, int alleleIndex) {
-        return alleleFrequencies[id][markerIndex][alleleIndex];
+        double freq = getAlleleFrequencyValue(id, markerIndex, alleleIndex);
+        return Double.isNaN(freq) ? null : freq;
+    }
+    
+    @Override
+    public double getAlleleFrequencyValue(int id, int markerIndex, int alleleIndex) {
+        if(id < 0 || id >= getSize()){
+            throw new ArrayIndexOutOfBoundsException(id);
+        }
+        if(alleleIndex < 0 || alleleIndex >= numberOfAllelesForMarker[markerIndex]){
+            throw new ArrayIndexOutOfBoundsException(alleleIndex);
+        }
+        int index = alleleOffsets[markerIndex] + alleleIndex;
+        if (alleleDosages == null) {
+            return alleleFrequencies[id][index];
+        }
+        return dosageFrequencies[alleleDosages[id][index] & 0xFF];
+    }
+    
+    @Override
+    public int getAlleleOffset(int markerIndex) {
+        return alleleOffsets[markerIndex];
+    }
+    
+    @Override
+    public void copyAlleleFrequencies(int id, double[] frequencies) {
+        if(id < 0 || id >= getSize()){
+            throw new ArrayIndexOutOfBoundsException(id);
+        }
+        if (alleleDosages == null) {
+            System.arraycopy(alleleFrequencies[id], 0, frequencies, 0, totalNumberAlleles);
+        } else {
+            byte[] row = alleleDosages[id];
+            for (int a = 0; a < totalNumberAlleles; a++) {
+                frequencies[a] = dosageFrequencies[row[a] & 0xFF];
+            }
+        }
+    }
+    
+    @Override
+    public void forEachNonZeroAlleleFrequency(int id, AlleleFrequencyConsumer action) {
+        if(id < 0 || id >= getSize()){
+            throw new ArrayIndexOutOfBoundsException(id);
+        }
+        if (alleleDosages == null) {
+            double[] row = alleleFrequencies[id];
+            for (int a = 0; a < totalNumberAlleles; a++) {
+                double f = row[a];
+                if (f != 0.0 && !Double.isNaN(f)) {
+                    action.accept(a, f);
+                }
+            }
+        } else {
+            byte[] row = alleleDosages[id];
+            for (int a = 0; a < totalNumberAlleles; a++) {
+                int d = row[a] & 0xFF;
+                if (d != 0 && d != MISSING_DOSAGE) {
+                    action.accept(a, dosageFrequencies[d]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Sums are computed from the rows of the given items, in which all frequencies of an item are stored
+     * contiguously. If frequencies are stored as dosages, the dosages are summed and each sum is divided
+     * by the common denominator afterwards. If a marker-major layout has been enabled (see
+     * {@link #setMarkerMajorLayout(boolean)}), sums are computed from this layout instead.
+     * 
+     * @param ids item ids
+     * @param sums array in which the sums are stored
+     */
+    @Override
+    public void sumAlleleFrequencies(int[] ids, double[] sums) {
+        byte[][] dosagesPerAllele = markerMajorDosages;
+        if(dosagesPerAllele != null){
+            for(int a = 0; a < totalNumberAlleles; a++){
+                sums[a] = (double) sumDosages(dosagesPerAllele[a], ids) / dosageDenominator;
+            }
+            return;
+        }
+        double[][] freqsPerAllele = markerMajorFrequencies;
+        if(freqsPerAllele != null){
+            for(int a = 0; a < totalNumberAlleles; a++){
+                sums[a] = sumFrequencies(freqsPerAllele[a], ids);
+            }
+            return;
+        }
+        Arrays.fill(sums, 0, totalNumberAlleles, 0.0);
+        if(alleleDosages != null){
+            for(int id : ids){
+                byte[] row = alleleDosages[id];
+                for(int a = 0; a < totalNumberAlleles; a++){
+                    // dosages are unsigned bytes
+                    int d = row[a] & 0xFF;
+                    if(d != MISSING_DOSAGE){
+                        sums[a] += d;
+                    }
+                }
+            }
+            for(int a = 0; a < totalNumberAlleles; a++){
+                sums[a] /= dosageDenominator;
+            }
+        } else {
+            for(int id : ids){
+                double[] row = alleleFrequencies[id];
+                for(int a = 0; a < totalNumberAlleles; a++){
+                    double f = row[a];
+                    if(!Double.isNaN(f)){
+                        sums[a] += f;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Enable or disable the marker-major layout of the allele frequencies, in which the frequencies of all
+     * items are stored contiguously per allele, to compute allele frequency sums in
+     * {@link #sumAlleleFrequencies(int[], double[])}. The layout is a copy of all frequencies (or dosages),
+     * which doubles the memory taken by the data. It is therefore disabled by default, and disabling it
+     * releases the copy.
+     * 
+     * @param enabled <code>true</code> if the marker-major layout is created (if not yet present),
+     *                <code>false</code> if it is released
+     */
+    public void setMarkerMajorLayout(boolean enabled) {
+        synchronized(this){
+            if(!enabled){
+                markerMajorFrequencies = null;
+                markerMajorDosages = null;
+            } else if(alleleDosages != null){
+                if(markerMajorDosages == null){
+                    markerMajorDosages = transposeDosages();
+                }
+            } else if(markerMajorFrequencies == null){
+                markerMajorFrequencies = transposeFrequencies();
+            }
+        }
+    }
+    
+    /**
+     * Indicates whether the marker-major layout of the allele frequencies is enabled,
+     * see {@link #setMarkerMajorLayout(boolean)}.
+     * 
+     * @return <code>true</code> if the marker-major layout is present
+     */
+    public boolean isMarkerMajorLayout() {
+        return markerMajorFrequencies != null || markerMajorDosages != null;
+    }
+    
+    // sum of the dosages of an allele (one row of the marker-major layout) across the given items
+    private static long sumDosages(byte[] dosages, int[] ids) {
+        long total = 0;
+        for(int id : ids){
+            // dosages are unsigned bytes
+            total += dosages[id] & 0xFF;
+        }
+        return total;
+    }
+    
+    // sum of the frequencies of an allele (one row of the marker-major layout) across the given items
+    private static double sumFrequencies(double[] freqs, int[] ids) {
+        double sum = 0.0;
+        for(int id : ids){
+            sum += freqs[id];
+        }
+        return sum;
+    }
+    
+    private double[][] transposeFrequencies() {
+        // transpose in blocks of items to limit cache misses
+        int n = getSize();
+        double[][] freqs = new double[totalNumberAlleles][n];
+        final int blockSize = 64;
+        for(int i0 = 0; i0 < n; i0 += blockSize){
+            int i1 = Math.min(i0 + blockSize, n);
+            for(int a = 0; a < totalNumberAlleles; a++){
+                for(int i = i0; i < i1; i++){
+                    double f = alleleFrequencies[i][a];
+                    freqs[a][i] = Double.isNaN(f) ? 0.0 : f;
+                }
+            }
+        }
+        return freqs;
+    }
+    
+    private byte[][] transposeDosages() {
+        // transpose in blocks of items to limit cache misses
+        int n = getSize();
+        byte[][] dosages = new byte[totalNumberAlleles][n];
+        final int blockSize = 64;
+        for(int i0 = 0; i0 < n; i0 += blockSize){
+            int i1 = Math.min(i0 + blockSize, n);
+            for(int a = 0; a < totalNumberAlleles; a++){
+                for(int i = i0; i < i1; i++){
+                    byte d = alleleDosages[i][a];
+                    dosages[a][i] = (d & 0xFF) == MISSING_DOSAGE ? 0 : d;
+                }
+            }
+        }
+        return dosages;
+    }
+    
+    /**
+     * Get the common denominator of all allele frequencies, if they are stored as dosages.
+     * The frequency of an allele with dosage k is then equal to k divided by this denominator.
+     * 
+     * @return common denominator of the stored dosages, zero if frequencies are stored as
+     *         double precision values instead
+     */
+    public int getDosageDenominator() {
+        return dosageDenominator;
+    }
+    
+    /**
+     * Infer the least common denominator d of all given frequencies, so that each frequency equals
+     * k/d for an integer dosage k. Frequencies can only be stored as dosages if each of them has a small
+     * denominator of at most {@link #MAX_FREQUENCY_DENOMINATOR} and the common denominator does not
+     * exceed {@link #MAX_DOSAGE_DENOMINATOR}.
+     * 
+     * @param alleleFrequencies allele frequencies, can contain <code>null</code> values (missing)
+     * @return common denominator, zero if frequencies can not be stored as dosages
+     */
+    private static int inferDosageDenominator(Double[][][] alleleFrequencies) {
+        int d = 1;
+        for (Double[][] indFreqs : alleleFrequencies) {
+            for (Double[] alleleFreqs : indFreqs) {
+                for (Double f : alleleFreqs) {
+                    if (f != null && !isMultiple(f, d)) {
+                        // find smallest denominator of this frequency and update common denominator
+                        int fd = 2;
+                        while (fd <= MAX_FREQUENCY_DENOMINATOR && !isMultiple(f, fd)) {
+                            fd++;
+                        }
+                        if (fd > MAX_FREQUENCY_DENOMINATOR) {
+                            return 0;
+                        }
+                        d = d / gcd(d, fd) * fd;
+                        if (d > MAX_DOSAGE_DENOMINATOR) {
+                            return 0;
+                        }
+                    }
+                }
+            }
+        }
+        return d;
+    }
+    
+    private static boolean isMultiple(double f, int d) {
+        return Math.rint(f * d) / d == f;
+    }
+    
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
     }
     
     @Override
     public boolean hasMissingValues(int id, int markerIndex) {
-        return Arrays.stream(alleleFrequencies[id][markerIndex]).anyMatch(Objects::isNull);
+        if(markerIndex < 0 || markerIndex >= numberOfMarkers){
+            throw new ArrayIndexOutOfBoundsException(markerIndex);
+        }
+        return (missingValues[id][markerIndex >>> 6] & (1L << markerIndex)) != 0;
+    }
+    
+    @Override
+    public long getMissingValuesMask(int id, int block) {
+        return missingValues[id][block];
     }
     
     /**
@@ -833,6 +1157,24 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
      */
     public void writeData(Path filePath, FileType fileType, GenotypeDataFormat format) throws IOException {
         
+        if(format != GenotypeDataFormat.FREQUENCY){
+            throw new IllegalArgumentException("Unsupported output format: " + format);
+        }
+        
+        writeFrequencyData(this, filePath, fileType);
+        
+    }
+    
+    /**
+     * Write the given genotype data to file in frequency format, as in {@link #writeData(Path, FileType)}.
+     * 
+     * @param data genotype data
+     * @param filePath path to file where the data will be written
+     * @param fileType the type of data file
+     * @throws IOException if the file can not be written
+     */
+    static void writeFrequencyData(GenotypeData data, Path filePath, FileType fileType) throws IOException {
+        
         // validate arguments
         if (filePath == null) {
             throw new IllegalArgumentException("File path not defined.");
@@ -850,10 +1192,6 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
             throw new IllegalArgumentException(
                     String.format("Only file types TXT and CSV are supported. Got: %s.", fileType));
         }
-        
-        if(format != GenotypeDataFormat.FREQUENCY){
-            throw new IllegalArgumentException("Unsupported output format: " + format);
-        }
 
         Files.createDirectories(filePath.getParent());
 
@@ -871,10 +1209,10 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
 
             writer.writeCell(NAMES_HEADER);
             
-            for (int i = 0 ; i < alleleNames.length ; ++i) {
-                for (int j = 0 ; j < alleleNames[i].length ; ++j) {
+            for (int i = 0 ; i < data.getNumberOfMarkers() ; ++i) {
+                for (int j = 0 ; j < data.getNumberOfAlleles(i) ; ++j) {
                     writer.newColumn() ;
-                    writer.writeCell(markerNames[i]);  
+                    writer.writeCell(data.getMarkerName(i));  
                 }
             }
             
@@ -883,28 +1221,36 @@ public class SimpleGenotypeData extends DataPojo implements GenotypeData {
             writer.writeCell(ALLELE_NAMES_HEADER);
             
             writer.newColumn();
-            for (int i = 0 ; i < alleleNames.length ; ++i) {
+            for (int i = 0 ; i < data.getNumberOfMarkers() ; ++i) {
+                String[] alleleNames = new String[data.getNumberOfAlleles(i)];
+                for (int j = 0 ; j < alleleNames.length ; ++j) {
+                    alleleNames[j] = data.getAlleleName(i, j);
+                }
                 writer.newColumn() ;
-                writer.writeRowCellsAsArray(alleleNames[i]);  
+                writer.writeRowCellsAsArray(alleleNames);  
             }
 
             SimpleEntity header;
 
-            for (int i = 0; i < alleleFrequencies.length; ++i) {
+            for (int i = 0; i < data.getSize(); ++i) {
 
                 writer.newRow();
                 
-                header = getHeader(i);
+                header = data.getHeader(i);
                 writer.writeCell(header.getUniqueIdentifier());
                 
                 writer.newColumn() ;
                 
                 writer.writeCell(header.getName());
 
-                for (int j = 0; j < alleleFrequencies[i].length; ++j) {
+                for (int j = 0; j < data.getNumberOfMarkers(); ++j) {
                     writer.newColumn() ;
                     
-                    writer.writeRowCellsAsArray(alleleFrequencies[i][j]);
+                    Double[] alleleFreqs = new Double[data.getNumberOfAlleles(j)];
+                    for (int k = 0; k < alleleFreqs.length; ++k) {
+                        alleleFreqs[k] = data.getAlleleFrequency(i, j, k);
+                    }
+                    writer.writeRowCellsAsArray(alleleFreqs);
                 }
             }
 
@@ -0,0 +1,277 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.data.simple;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.corehunter.data.AlleleFrequencyConsumer;
+import org.corehunter.data.GenotypeData;
+
+import uno.informatics.data.io.FileType;
+import uno.informatics.data.pojo.DataPojo;
+
+/**
+ * Genotype data that only stores the non-zero allele frequencies of each item, in compressed sparse row format.
+ * For each item, the global indices (see {@link #getAlleleOffset(int)}) and frequencies of all alleles with a
+ * non-zero or missing frequency are stored consecutively, in ascending order of the allele indices. This is
+ * suited for highly multi-allelic markers (e.g. SSR or haplotype data) where each item only carries a few of the
+ * many alleles of every marker. Memory usage, as well as the work done by distance measures and allelic diversity
+ * evaluations, is then proportional to the number of non-zero frequencies rather than the total number of alleles.
+ * <p>
+ * Sparse data is created from any other genotype data, e.g. as read with
+ * {@link SimpleGenotypeData#readData(Path, FileType)}. Use {@link #compress(GenotypeData)} to only switch to
+ * the sparse form if the data is sufficiently sparse. Sparse data is written in the same frequency format as
+ * {@link SimpleGenotypeData}, see {@link #writeData(Path, FileType)}.
+ * 
+ * @author Herman De Beukelaer
+ */
+public class SparseGenotypeData extends DataPojo implements GenotypeData {
+    
+    /**
+     * Maximum fraction of non-zero (or missing) allele frequencies for which genotype data is converted to
+     * the sparse form by {@link #compress(GenotypeData)}. Above this density, storing the global allele index
+     * together with each frequency no longer saves memory or work compared to a dense representation.
+     */
+    public static final double MAX_DENSITY = 0.25;
+    
+    private final int numberOfMarkers;
+    private final int[] alleleOffsets;              // index of first allele per marker (+ total number of alleles)
+    private final String[] markerNames;             // null element means no marker name assigned
+    private final String[][] alleleNames;           // null element means no allele name assigned
+    // start of the stored frequencies of each item (+ total number of stored frequencies)
+    private final int[] rowStarts;
+    // global allele index and frequency of each stored frequency (NaN means missing value)
+    private final int[] storedAlleles;
+    private final double[] storedFrequencies;
+    private final long[][] missingValues;           // markers with missing values (64 markers per word)
+
+    /**
+     * Create sparse genotype data with the same name, items, markers, alleles and frequencies as the given data.
+     * 
+     * @param data genotype data
+     */
+    public SparseGenotypeData(GenotypeData data) {
+        
+        super(data);
+        
+        int n = data.getSize();
+        numberOfMarkers = data.getNumberOfMarkers();
+        
+        // copy marker and allele names
+        alleleOffsets = new int[numberOfMarkers + 1];
+        markerNames = new String[numberOfMarkers];
+        alleleNames = new String[numberOfMarkers][];
+        for (int m = 0; m < numberOfMarkers; m++) {
+            int numAlleles = data.getNumberOfAlleles(m);
+            alleleOffsets[m + 1] = alleleOffsets[m] + numAlleles;
+            markerNames[m] = data.getMarkerName(m);
+            alleleNames[m] = new String[numAlleles];
+            for (int a = 0; a < numAlleles; a++) {
+                alleleNames[m][a] = data.getAlleleName(m, a);
+            }
+        }
+        int totalNumberOfAlleles = alleleOffsets[numberOfMarkers];
+        
+        // count non-zero and missing frequencies
+        double[] freqs = new double[totalNumberOfAlleles];
+        rowStarts = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            data.copyAlleleFrequencies(i, freqs);
+            long count = rowStarts[i];
+            for (double f : freqs) {
+                if (f != 0.0) {
+                    count++;
+                }
+            }
+            if (count > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Too many non-zero allele frequencies.");
+            }
+            rowStarts[i + 1] = (int) count;
+        }
+        
+        // store non-zero and missing frequencies and index markers with missing values
+        storedAlleles = new int[rowStarts[n]];
+        storedFrequencies = new double[rowStarts[n]];
+        missingValues = new long[n][(numberOfMarkers + 63) >>> 6];
+        for (int i = 0; i < n; i++) {
+            data.copyAlleleFrequencies(i, freqs);
+            int k = rowStarts[i];
+            for (int m = 0; m < numberOfMarkers; m++) {
+                for (int a = alleleOffsets[m]; a < alleleOffsets[m + 1]; a++) {
+                    if (freqs[a] != 0.0) {
+                        storedAlleles[k] = a;
+                        storedFrequencies[k] = freqs[a];
+                        k++;
+                        if (Double.isNaN(freqs[a])) {
+                            missingValues[i][m >>> 6] |= 1L << m;
+                        }
+                    }
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Get the fraction of non-zero (or missing) allele frequencies in the given genotype data,
+     * across all items and alleles.
+     * 
+     * @param data genotype data
+     * @return density of the allele frequencies, between zero and one
+     */
+    public static double getDensity(GenotypeData data) {
+        if (data instanceof SparseGenotypeData) {
+            SparseGenotypeData sparse = (SparseGenotypeData) data;
+            long total = (long) sparse.getSize() * sparse.getTotalNumberOfAlleles();
+            return total > 0 ? (double) sparse.getNumberOfStoredFrequencies() / total : 0.0;
+        }
+        int n = data.getSize();
+        double[] freqs = new double[data.getTotalNumberOfAlleles()];
+        long count = 0;
+        for (int i = 0; i < n; i++) {
+            data.copyAlleleFrequencies(i, freqs);
+            for (double f : freqs) {
+                if (f != 0.0) {
+                    count++;
+                }
+            }
+        }
+        long total = (long) n * freqs.length;
+        return total > 0 ? (double) count / total : 0.0;
+    }
+    
+    /**
+     * Convert genotype data to the sparse form if at most a fraction {@link #MAX_DENSITY} of its allele
+     * frequencies is non-zero (or missing), see {@link #getDensity(GenotypeData)}. Otherwise, or if the
+     * data is already sparse, the given data is returned.
+     * 
+     * @param data genotype data
+     * @return sparse copy of the given data if it is sufficiently sparse, else the given data itself
+     */
+    public static GenotypeData compress(GenotypeData data) {
+        if (data instanceof SparseGenotypeData || getDensity(data) > MAX_DENSITY) {
+            return data;
+        }
+        return new SparseGenotypeData(data);
+    }
+    
+    @Override
+    public int getNumberOfMarkers() {
+        return numberOfMarkers;
+    }
+    
+    @Override
+    public String getMarkerName(int markerIndex) {
+        return markerNames[markerIndex];
+    }
+    
+    @Override
+    public int getNumberOfAlleles(int markerIndex) {
+        return alleleNames[markerIndex].length;
+    }
+    
+    @Override
+    public int getTotalNumberOfAlleles() {
+        return alleleOffsets[numberOfMarkers];
+    }
+    
+    @Override
+    public String getAlleleName(int markerIndex, int alleleIndex) {
+        return alleleNames[markerIndex][alleleIndex];
+    }
+    
+    @Override
+    public int getAlleleOffset(int markerIndex) {
+        return alleleOffsets[markerIndex];
+    }
+    
+    /**
+     * Get the number of stored (non-zero or missing) allele frequencies.
+     * 
+     * @return number of stored frequencies
+     */
+    public int getNumberOfStoredFrequencies() {
+        return storedAlleles.length;
+    }
+    
+    @Override
+    public Double getAlleleFrequency(int id, int markerIndex, int alleleIndex) {
+        double freq = getAlleleFrequencyValue(id, markerIndex, alleleIndex);
+        return Double.isNaN(freq) ? null : freq;
+    }
+    
+    @Override
+    public double getAlleleFrequencyValue(int id, int markerIndex, int alleleIndex) {
+        if (alleleIndex < 0 || alleleIndex >= getNumberOfAlleles(markerIndex)) {
+            throw new ArrayIndexOutOfBoundsException(alleleIndex);
+        }
+        int k = Arrays.binarySearch(storedAlleles, rowStarts[id], rowStarts[id + 1],
+                                    alleleOffsets[markerIndex] + alleleIndex);
+        return k >= 0 ? storedFrequencies[k] : 0.0;
+    }
+    
+    @Override
+    public void copyAlleleFrequencies(int id, double[] frequencies) {
+        Arrays.fill(frequencies, 0, getTotalNumberOfAlleles(), 0.0);
+        for (int k = rowStarts[id]; k < rowStarts[id + 1]; k++) {
+            frequencies[storedAlleles[k]] = storedFrequencies[k];
+        }
+    }
+    
+    @Override
+    public void forEachNonZeroAlleleFrequency(int id, AlleleFrequencyConsumer action) {
+        for (int k = rowStarts[id]; k < rowStarts[id + 1]; k++) {
+            double f = storedFrequencies[k];
+            if (!Double.isNaN(f)) {
+                action.accept(storedAlleles[k], f);
+            }
+        }
+    }
+    
+    @Override
+    public boolean hasMissingValues(int id, int markerIndex) {
+        if (markerIndex < 0 || markerIndex >= numberOfMarkers) {
+            throw new ArrayIndexOutOfBoundsException(markerIndex);
+        }
+        return (missingValues[id][markerIndex >>> 6] & (1L << markerIndex)) != 0;
+    }
+    
+    @Override
+    public long getMissingValuesMask(int id, int block) {
+        return missingValues[id][block];
+    }
+    
+    /**
+     * Write genotype data to file in frequency format, in the same way as
+     * {@link SimpleGenotypeData#writeData(Path, FileType)}, so that it can be read back with
+     * {@link SimpleGenotypeData#readData(Path, FileType)}.
+     * Only file types {@link FileType#TXT} and {@link FileType#CSV} are allowed.
+     * 
+     * @param filePath path to file where the data will be written
+     * @param fileType the type of data file
+     * @throws IOException if the file can not be written
+     */
+    public void writeData(Path filePath, FileType fileType) throws IOException {
+        SimpleGenotypeData.writeFrequencyData(this, filePath, fileType);
+    }
+    
+}
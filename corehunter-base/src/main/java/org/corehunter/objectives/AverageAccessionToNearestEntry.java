@@ -20,15 +20,13 @@
 package org.corehunter.objectives;
 
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 import java.util.Set;
 import org.corehunter.data.CoreHunterData;
 import org.corehunter.objectives.distance.DistanceMeasure;
-import org.corehunter.objectives.distance.eval.NearestEntry;
 import org.corehunter.objectives.distance.eval.NearestEntryEvaluation;
 import org.corehunter.objectives.distance.measures.MissingValuesPolicy;
+import org.corehunter.objectives.eval.InPlaceEvaluation;
 import org.jamesframework.core.exceptions.IncompatibleDeltaEvaluationException;
 
 import org.jamesframework.core.problems.objectives.Objective;
@@ -55,25 +53,15 @@ public class AverageAccessionToNearestEntry implements Objective<SubsetSolution,
     }
     
     @Override
-    public NearestEntryEvaluation evaluate(SubsetSolution solution, CoreHunterData data) {
-        // initialize evaluation object (evaluate to infinity if no items are selected)
-        NearestEntryEvaluation eval = new NearestEntryEvaluation(Double.POSITIVE_INFINITY);
-        // find closest selected item for each accession
-        Set<Integer> selected = solution.getSelectedIDs();
-        Set<Integer> all = solution.getAllIDs();
-        for(int item : all){
-            // find and register closest selected item (if any)
-            NearestEntry closest = findClosest(item, selected, data);
-            if(closest != null){
-                eval.add(item, closest);
-            }
-        }
-        return eval;
+    public Evaluation evaluate(SubsetSolution solution, CoreHunterData data) {
+        return new InPlaceEvaluation<>(
+                new AccessionToNearestEntryEvaluation(solution.getSelectedIDs(), solution.getAllIDs(), data)
+        );
     }
     
     @Override
-    public NearestEntryEvaluation evaluate(Move move, SubsetSolution curSolution,
-                                           Evaluation curEvaluation, CoreHunterData data){
+    public Evaluation evaluate(Move move, SubsetSolution curSolution,
+                               Evaluation curEvaluation, CoreHunterData data){
         // check move type
         if (!(move instanceof SubsetMove)) {
             throw new IncompatibleDeltaEvaluationException(
@@ -85,88 +73,130 @@ public class AverageAccessionToNearestEntry implements Objective<SubsetSolution,
         SubsetMove subsetMove = (SubsetMove) move;
 
         // cast evaluation (cannot fail as both evaluate methods return such evaluation object)
-        NearestEntryEvaluation eval = (NearestEntryEvaluation) curEvaluation;
-        // copy to initialize new evaluation
-        NearestEntryEvaluation newEval = new NearestEntryEvaluation(eval);
+        @SuppressWarnings("unchecked")
+        InPlaceEvaluation<NearestEntryEvaluation> eval = (InPlaceEvaluation<NearestEntryEvaluation>) curEvaluation;
 
         // get added and deleted IDs from move
         Set<Integer> added = subsetMove.getAddedIDs();
         Set<Integer> deleted = subsetMove.getDeletedIDs();
-        // get current selection from solution
-        Set<Integer> curSelection = curSolution.getSelectedIDs();
-        // infer new selection
-        List<Integer> newSelection = new ArrayList<>(curSelection);
-        newSelection.addAll(added);
-        newSelection.removeAll(deleted);
+        
+        // evaluate move in place (current selection is only evaluated from scratch if it can not be restored)
+        return eval.derive(added, deleted, () -> new AccessionToNearestEntryEvaluation(
+                curSolution.getSelectedIDs(), curSolution.getAllIDs(), data
+        ));
+    }
+    
+    /**
+     * Keeps track of the closest selected item of each accession.
+     */
+    private class AccessionToNearestEntryEvaluation extends NearestEntryEvaluation {
+        
+        // IDs of all accessions
+        private final Set<Integer> all;
+        private final CoreHunterData data;
+        // id of and distance to the item found by the most recent search for a closest item
+        private int closestId;
+        private double closestDist;
 
-        // set conbribution of added items to zero
-        for(int item : added){
-            newEval.update(item, new NearestEntry(item, 0.0));
+        private AccessionToNearestEntryEvaluation(Set<Integer> selected, Set<Integer> all, CoreHunterData data) {
+            // evaluate to infinity if no items are selected
+            super(data.getSize(), selected, Double.POSITIVE_INFINITY);
+            this.all = all;
+            this.data = data;
+            // find closest selected item for each accession
+            for(int item : all){
+                // find and register closest selected item (if any)
+                if(findClosestSelected(item)){
+                    add(item, closestId, closestDist);
+                }
+            }
         }
 
-        // update closest items for all accessions
-        for(int item : curSolution.getAllIDs()){
-            NearestEntry curClosest = newEval.getClosest(item);
-            if(curClosest == null){
-                // case 1: no closest item set means that current solution is empty;
-                //         search for closest item in new selection
-                NearestEntry newClosest = findClosest(item, newSelection, data);
-                // register, if any
-                if(newClosest != null){
-                    newEval.add(item, newClosest);
-                }
-            } else {
-                // case 2: current closest item needs to be updated
-                if(deleted.contains(curClosest.getId())){
-                    // case 2A: current closest item removed, rescan entire new selection
-                    NearestEntry newClosest = findClosest(item, newSelection, data);
-                    // update, if any
-                    if(newClosest != null){
-                        newEval.update(item, newClosest);
-                    } else {
-                        // no closest item left (new selection is empty);
-                        // discard contribution
-                        newEval.remove(item);
+        @Override
+        protected void updateClosest(Set<Integer> added, Set<Integer> deleted) {
+            
+            // set contribution of added items to zero
+            for(int item : added){
+                update(item, item, 0.0);
+            }
+            
+            // update closest items for all accessions
+            for(int item : all){
+                int curClosest = getClosestId(item);
+                if(curClosest < 0){
+                    // case 1: no closest item set means that current solution is empty;
+                    //         search for closest item in new selection and register, if any
+                    if(findClosestSelected(item)){
+                        add(item, closestId, closestDist);
                     }
                 } else {
-                    // case 2B: current closest item retained; only check if any newly
-                    //          added item is closer
-                    NearestEntry closestAddedItem = findClosest(item, added, data);
-                    if(closestAddedItem != null && closestAddedItem.getDistance() < curClosest.getDistance()){
-                        // update closest item
-                        newEval.update(item, closestAddedItem);
+                    // case 2: current closest item needs to be updated
+                    if(!isSelected(curClosest)){
+                        // case 2A: current closest item removed, rescan entire new selection
+                        if(findClosestSelected(item)){
+                            // update closest item
+                            update(item, closestId, closestDist);
+                        } else {
+                            // no closest item left (new selection is empty);
+                            // discard contribution
+                            remove(item);
+                        }
+                    } else {
+                        // case 2B: current closest item retained; only check if any newly
+                        //          added item is closer
+                        if(findClosest(item, added) && closestDist < getClosestDistance(item)){
+                            // update closest item
+                            update(item, closestId, closestDist);
+                        }
                     }
                 }
             }
+            
         }
-
-        return newEval;
-    }
-    
-    /**
-     * Find the item in the given group that is closest to the given item.
-     * The closest item is allowed to be the same as the given item.
-     * 
-     * @param itemId ID of an item
-     * @param group IDs of group of items
-     * @param data Core Hunter data
-     * @return id of and distance to the item from the group that is closest to the given item;
-     *         <code>null</code> if the group is empty
-     */
-    private NearestEntry findClosest(int itemId, Collection<Integer> group, CoreHunterData data){
-        double dist;
-        Double minDist = Double.POSITIVE_INFINITY;
-        Integer closest = null;
-        for(int groupMember : group){
-            dist = distanceMeasure.getDistance(itemId, groupMember, data);
-            if(dist < minDist){
-                minDist = dist;
-                closest = groupMember;
+        
+        /**
+         * Find the selected item that is closest to the given item.
+         * The closest item is allowed to be the same as the given item.
+         * 
+         * @param itemId ID of an item
+         * @return <code>false</code> if the selection is empty
+         */
+        private boolean findClosestSelected(int itemId){
+            closestId = -1;
+            closestDist = Double.POSITIVE_INFINITY;
+            for(int i = 0; i < getNumSelected(); i++){
+                check(itemId, getSelectedId(i));
             }
+            return closestId >= 0;
         }
-        return closest != null ? new NearestEntry(closest, minDist) : null;
+        
+        /**
+         * Find the item in the given group that is closest to the given item.
+         * The closest item is allowed to be the same as the given item.
+         * 
+         * @param itemId ID of an item
+         * @param group IDs of group of items
+         * @return <code>false</code> if the group is empty
+         */
+        private boolean findClosest(int itemId, Collection<Integer> group){
+            closestId = -1;
+            closestDist = Double.POSITIVE_INFINITY;
+            for(int groupMember : group){
+                check(itemId, groupMember);
+            }
+            return closestId >= 0;
+        }
+        
+        private void check(int itemId, int groupMember){
+            double dist = distanceMeasure.getDistance(itemId, groupMember, data);
+            if(dist < closestDist){
+                closestDist = dist;
+                closestId = groupMember;
+            }
+        }
+        
     }
-
+    
     @Override
     public boolean isMinimizing() {
         return true;
@@ -20,16 +20,14 @@
 package org.corehunter.objectives;
 
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 import java.util.Set;
 
 import org.corehunter.data.CoreHunterData;
 import org.corehunter.objectives.distance.DistanceMeasure;
-import org.corehunter.objectives.distance.eval.NearestEntry;
 import org.corehunter.objectives.distance.eval.NearestEntryEvaluation;
 import org.corehunter.objectives.distance.measures.MissingValuesPolicy;
+import org.corehunter.objectives.eval.InPlaceEvaluation;
 
 import org.jamesframework.core.exceptions.IncompatibleDeltaEvaluationException;
 import org.jamesframework.core.problems.objectives.Objective;
@@ -55,24 +53,13 @@ public class AverageEntryToNearestEntry implements Objective<SubsetSolution, Cor
     }
     
     @Override
-    public NearestEntryEvaluation evaluate(SubsetSolution solution, CoreHunterData data) {
-        // initialize evaluation object (evaluate to zero if less than two items are selected)
-        NearestEntryEvaluation eval = new NearestEntryEvaluation(0.0);
-        // find closest neighbour of each selected item
-        Set<Integer> selected = solution.getSelectedIDs();
-        for(int sel : selected){
-            // find and register closest other selected item (if any)
-            NearestEntry closest = findClosest(sel, selected, data);
-            if(closest != null){
-                eval.add(sel, closest);
-            }
-        }
-        return eval;
+    public Evaluation evaluate(SubsetSolution solution, CoreHunterData data) {
+        return new InPlaceEvaluation<>(new EntryToNearestEntryEvaluation(solution.getSelectedIDs(), data));
     }
     
     @Override
-    public NearestEntryEvaluation evaluate(Move move, SubsetSolution curSolution,
-                                           Evaluation curEvaluation, CoreHunterData data){
+    public Evaluation evaluate(Move move, SubsetSolution curSolution,
+                               Evaluation curEvaluation, CoreHunterData data){
         // check move type
         if (!(move instanceof SubsetMove)) {
             throw new IncompatibleDeltaEvaluationException(
@@ -84,89 +71,128 @@ public class AverageEntryToNearestEntry implements Objective<SubsetSolution, Cor
         SubsetMove subsetMove = (SubsetMove) move;
 
         // cast evaluation (cannot fail as both evaluate methods return such evaluation object)
-        NearestEntryEvaluation eval = (NearestEntryEvaluation) curEvaluation;
-        // copy to initialize new evaluation
-        NearestEntryEvaluation newEval = new NearestEntryEvaluation(eval);
+        @SuppressWarnings("unchecked")
+        InPlaceEvaluation<NearestEntryEvaluation> eval = (InPlaceEvaluation<NearestEntryEvaluation>) curEvaluation;
 
         // get added and deleted IDs from move
         Set<Integer> added = subsetMove.getAddedIDs();
         Set<Integer> deleted = subsetMove.getDeletedIDs();
-        // get current selection from solution
-        Set<Integer> curSelection = curSolution.getSelectedIDs();
-        // infer new selection
-        List<Integer> newSelection = new ArrayList<>(curSelection);
-        newSelection.addAll(added);
-        newSelection.removeAll(deleted);
+        
+        // evaluate move in place (current selection is only evaluated from scratch if it can not be restored)
+        return eval.derive(
+                added, deleted, () -> new EntryToNearestEntryEvaluation(curSolution.getSelectedIDs(), data)
+        );
+    }
+    
+    /**
+     * Keeps track of the closest other selected item of each selected item.
+     */
+    private class EntryToNearestEntryEvaluation extends NearestEntryEvaluation {
+        
+        private final CoreHunterData data;
+        // id of and distance to the item found by the most recent search for a closest item
+        private int closestId;
+        private double closestDist;
 
-        // discard contribution of removed items
-        for(int item : deleted){
-            newEval.remove(item);
+        private EntryToNearestEntryEvaluation(Set<Integer> selected, CoreHunterData data) {
+            // evaluate to zero if less than two items are selected
+            super(data.getSize(), selected, 0.0);
+            this.data = data;
+            // find closest neighbour of each selected item
+            for(int sel : selected){
+                // find and register closest other selected item (if any)
+                if(findClosestSelected(sel)){
+                    add(sel, closestId, closestDist);
+                }
+            }
         }
 
-        // update closest items in new selection
-        for(int item : newSelection){
-            NearestEntry curClosest = newEval.getClosest(item);
-            if(curClosest == null){
-                // case 1: previously unselected or no closest item set (less than two items were selected);
-                //         search for closest item in new selection
-                NearestEntry newClosest = findClosest(item, newSelection, data);
-                // register, if any
-                if(newClosest != null){
-                    newEval.add(item, newClosest);
-                }
-            } else {
-                // case 2: current closest item needs to be updated
-                if(deleted.contains(curClosest.getId())){
-                    // case 2A: current closest item removed, rescan entire new selection
-                    NearestEntry newClosest = findClosest(item, newSelection, data);
-                    // update, if any
-                    if(newClosest != null){
-                        newEval.update(item, newClosest);
-                    } else {
-                        // no closest item left (new selection consists of single item);
-                        // discard contribution
-                        newEval.remove(item);
+        @Override
+        protected void updateClosest(Set<Integer> added, Set<Integer> deleted) {
+            
+            // discard contribution of removed items
+            for(int item : deleted){
+                remove(item);
+            }
+            
+            // update closest items in new selection
+            for(int i = 0; i < getNumSelected(); i++){
+                int item = getSelectedId(i);
+                int curClosest = getClosestId(item);
+                if(curClosest < 0){
+                    // case 1: previously unselected or no closest item set (less than two items were selected);
+                    //         search for closest item in new selection and register, if any
+                    if(findClosestSelected(item)){
+                        add(item, closestId, closestDist);
                     }
                 } else {
-                    // case 2B: current closest item retained; only check if any newly
-                    //          added item is closer
-                    NearestEntry closestAddedItem = findClosest(item, added, data);
-                    if(closestAddedItem != null && closestAddedItem.getDistance() < curClosest.getDistance()){
-                        // update closest item
-                        newEval.update(item, closestAddedItem);
+                    // case 2: current closest item needs to be updated
+                    if(!isSelected(curClosest)){
+                        // case 2A: current closest item removed, rescan entire new selection
+                        if(findClosestSelected(item)){
+                            // update closest item
+                            update(item, closestId, closestDist);
+                        } else {
+                            // no closest item left (new selection consists of single item);
+                            // discard contribution
+                            remove(item);
+                        }
+                    } else {
+                        // case 2B: current closest item retained; only check if any newly
+                        //          added item is closer
+                        if(findClosest(item, added) && closestDist < getClosestDistance(item)){
+                            // update closest item
+                            update(item, closestId, closestDist);
+                        }
                     }
                 }
             }
+            
         }
-
-        return newEval;
-    }
-    
-    /**
-     * Find the item in the given group that is closest to and different from the given item.
-     * 
-     * @param itemId ID of the item
-     * @param group IDs of other items
-     * @param data Core Hunter data
-     * @return id of and distance to the item from the group that is closest to the given item;
-     *         <code>null</code> if the group does not contain any items other than the given item
-     */
-    private NearestEntry findClosest(int itemId, Collection<Integer> group, CoreHunterData data){
-        double dist;
-        Double minDist = Double.POSITIVE_INFINITY;
-        Integer closest = null;
-        for(int other : group){
+        
+        /**
+         * Find the selected item that is closest to and different from the given item.
+         * 
+         * @param itemId ID of the item
+         * @return <code>false</code> if no other items are selected
+         */
+        private boolean findClosestSelected(int itemId){
+            closestId = -1;
+            closestDist = Double.POSITIVE_INFINITY;
+            for(int i = 0; i < getNumSelected(); i++){
+                check(itemId, getSelectedId(i));
+            }
+            return closestId >= 0;
+        }
+        
+        /**
+         * Find the item in the given group that is closest to and different from the given item.
+         * 
+         * @param itemId ID of the item
+         * @param group IDs of other items
+         * @return <code>false</code> if the group does not contain any items other than the given item
+         */
+        private boolean findClosest(int itemId, Collection<Integer> group){
+            closestId = -1;
+            closestDist = Double.POSITIVE_INFINITY;
+            for(int other : group){
+                check(itemId, other);
+            }
+            return closestId >= 0;
+        }
+        
+        private void check(int itemId, int other){
             if(other != itemId){
-                dist = distanceMeasure.getDistance(itemId, other, data);
-                if(dist < minDist){
-                    minDist = dist;
-                    closest = other;
+                double dist = distanceMeasure.getDistance(itemId, other, data);
+                if(dist < closestDist){
+                    closestDist = dist;
+                    closestId = other;
                 }
             }
         }
-        return closest != null ? new NearestEntry(closest, minDist) : null;
+        
     }
-
+    
     @Override
     public boolean isMinimizing() {
         return false;
@@ -28,6 +28,7 @@ import org.jamesframework.core.subset.SubsetSolution;
 import org.corehunter.data.CoreHunterData;
 import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.objectives.eval.CoverageEvaluation;
+import org.corehunter.objectives.eval.InPlaceEvaluation;
 import org.jamesframework.core.exceptions.IncompatibleDeltaEvaluationException;
 import org.jamesframework.core.search.neigh.Move;
 import org.jamesframework.core.subset.neigh.moves.SubsetMove;
@@ -39,21 +40,13 @@ import org.corehunter.data.GenotypeData;
 public class Coverage implements Objective<SubsetSolution, CoreHunterData> {
     
     @Override
-    public CoverageEvaluation evaluate(SubsetSolution solution, CoreHunterData data) {
-        
-        GenotypeData genotypes = data.getGenotypicData();
-        
-        if(genotypes == null){
-            throw new CoreHunterException("Genotypes are required for coverage objective.");
-        }
-        
-        return new CoverageEvaluation(solution.getSelectedIDs(), genotypes);
-        
+    public Evaluation evaluate(SubsetSolution solution, CoreHunterData data) {
+        return new InPlaceEvaluation<>(createEvaluation(solution, data));
     }
-
+    
     @Override
-    public CoverageEvaluation evaluate(Move move, SubsetSolution curSolution,
-                                       Evaluation curEvaluation, CoreHunterData data) {
+    public Evaluation evaluate(Move move, SubsetSolution curSolution,
+                               Evaluation curEvaluation, CoreHunterData data) {
 
         // check move type
         if (!(move instanceof SubsetMove)) {
@@ -65,17 +58,30 @@ public class Coverage implements Objective<SubsetSolution, CoreHunterData> {
         // cast move
         SubsetMove subsetMove = (SubsetMove) move;
         // cast evaluation (cannot fail as both evaluate methods return such evaluation object)
-        CoverageEvaluation eval = (CoverageEvaluation) curEvaluation;
+        @SuppressWarnings("unchecked")
+        InPlaceEvaluation<CoverageEvaluation> eval = (InPlaceEvaluation<CoverageEvaluation>) curEvaluation;
         
         // get set of added and deleted IDs
         Set<Integer> added = subsetMove.getAddedIDs();
         Set<Integer> deleted = subsetMove.getDeletedIDs();
         
-        // return updated evaluation
-        return new CoverageEvaluation(eval, added, deleted, data.getGenotypicData());
+        // evaluate move in place (current selection is only evaluated from scratch if it can not be restored)
+        return eval.derive(added, deleted, () -> createEvaluation(curSolution, data));
 
     }
     
+    private CoverageEvaluation createEvaluation(SubsetSolution solution, CoreHunterData data) {
+        
+        GenotypeData genotypes = data.getGenotypicData();
+        
+        if(genotypes == null){
+            throw new CoreHunterException("Genotypes are required for coverage objective.");
+        }
+        
+        return new CoverageEvaluation(solution.getSelectedIDs(), genotypes);
+        
+    }
+    
     @Override
     public boolean isMinimizing() {
         return false;
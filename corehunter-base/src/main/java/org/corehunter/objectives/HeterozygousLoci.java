@@ -25,6 +25,7 @@ import org.corehunter.data.CoreHunterData;
 import org.corehunter.data.GenotypeData;
 import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.objectives.eval.HeterozygousLociEvaluation;
+import org.corehunter.objectives.eval.InPlaceEvaluation;
 import org.jamesframework.core.exceptions.IncompatibleDeltaEvaluationException;
 import org.jamesframework.core.problems.objectives.Objective;
 import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
@@ -40,23 +41,13 @@ import org.jamesframework.core.subset.neigh.moves.SubsetMove;
 public class HeterozygousLoci implements Objective<SubsetSolution, CoreHunterData> {
 
     @Override
-    public HeterozygousLociEvaluation evaluate(SubsetSolution solution, CoreHunterData data) {
-        
-        GenotypeData geno = data.getGenotypicData();
-        
-        if(geno == null){
-            throw new CoreHunterException(
-                    "Genotypes are required for expected proportion of heterozygous loci objective."
-            );
-        }
-        
-        return new HeterozygousLociEvaluation(solution.getSelectedIDs(), geno);
-        
+    public Evaluation evaluate(SubsetSolution solution, CoreHunterData data) {
+        return new InPlaceEvaluation<>(createEvaluation(solution, data));
     }
     
     @Override
-    public HeterozygousLociEvaluation evaluate(Move move, SubsetSolution curSolution,
-                                               Evaluation curEvaluation, CoreHunterData data) {
+    public Evaluation evaluate(Move move, SubsetSolution curSolution,
+                               Evaluation curEvaluation, CoreHunterData data) {
 
         // check move type
         if (!(move instanceof SubsetMove)) {
@@ -68,17 +59,33 @@ public class HeterozygousLoci implements Objective<SubsetSolution, CoreHunterDat
         // cast move
         SubsetMove subsetMove = (SubsetMove) move;
         // cast evaluation (cannot fail as both evaluate methods return such evaluation object)
-        HeterozygousLociEvaluation eval = (HeterozygousLociEvaluation) curEvaluation;
+        @SuppressWarnings("unchecked")
+        InPlaceEvaluation<HeterozygousLociEvaluation> eval
+                = (InPlaceEvaluation<HeterozygousLociEvaluation>) curEvaluation;
         
         // get set of added and deleted IDs
         Set<Integer> added = subsetMove.getAddedIDs();
         Set<Integer> deleted = subsetMove.getDeletedIDs();
         
-        // return updated evaluation
-        return new HeterozygousLociEvaluation(eval, added, deleted, data.getGenotypicData());
+        // evaluate move in place (current selection is only evaluated from scratch if it can not be restored)
+        return eval.derive(added, deleted, () -> createEvaluation(curSolution, data));
 
     }
     
+    private HeterozygousLociEvaluation createEvaluation(SubsetSolution solution, CoreHunterData data) {
+        
+        GenotypeData geno = data.getGenotypicData();
+        
+        if(geno == null){
+            throw new CoreHunterException(
+                    "Genotypes are required for expected proportion of heterozygous loci objective."
+            );
+        }
+        
+        return new HeterozygousLociEvaluation(solution.getSelectedIDs(), geno);
+        
+    }
+    
     @Override
     public boolean isMinimizing() {
         return false;
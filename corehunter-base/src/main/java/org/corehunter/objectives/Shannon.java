@@ -25,6 +25,7 @@ import org.corehunter.data.CoreHunterData;
 import org.corehunter.data.GenotypeData;
 import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.objectives.eval.ShannonEvaluation;
+import org.corehunter.objectives.eval.InPlaceEvaluation;
 import org.jamesframework.core.exceptions.IncompatibleDeltaEvaluationException;
 import org.jamesframework.core.problems.objectives.Objective;
 import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
@@ -38,21 +39,13 @@ import org.jamesframework.core.subset.neigh.moves.SubsetMove;
 public class Shannon implements Objective<SubsetSolution, CoreHunterData> {
 
     @Override
-    public ShannonEvaluation evaluate(SubsetSolution solution, CoreHunterData data) {
-        
-        GenotypeData geno = data.getGenotypicData();
-        
-        if(geno == null){
-            throw new CoreHunterException("Genotypes are required for Shannon's index.");
-        }
-        
-        return new ShannonEvaluation(solution.getSelectedIDs(), geno);
-        
+    public Evaluation evaluate(SubsetSolution solution, CoreHunterData data) {
+        return new InPlaceEvaluation<>(createEvaluation(solution, data));
     }
     
     @Override
-    public ShannonEvaluation evaluate(Move move, SubsetSolution curSolution,
-                                      Evaluation curEvaluation, CoreHunterData data) {
+    public Evaluation evaluate(Move move, SubsetSolution curSolution,
+                               Evaluation curEvaluation, CoreHunterData data) {
 
         // check move type
         if (!(move instanceof SubsetMove)) {
@@ -64,17 +57,30 @@ public class Shannon implements Objective<SubsetSolution, CoreHunterData> {
         // cast move
         SubsetMove subsetMove = (SubsetMove) move;
         // cast evaluation (cannot fail as both evaluate methods return such evaluation object)
-        ShannonEvaluation eval = (ShannonEvaluation) curEvaluation;
+        @SuppressWarnings("unchecked")
+        InPlaceEvaluation<ShannonEvaluation> eval = (InPlaceEvaluation<ShannonEvaluation>) curEvaluation;
         
         // get set of added and deleted IDs
         Set<Integer> added = subsetMove.getAddedIDs();
         Set<Integer> deleted = subsetMove.getDeletedIDs();
         
-        // return updated evaluation
-        return new ShannonEvaluation(eval, added, deleted, data.getGenotypicData());
+        // evaluate move in place (current selection is only evaluated from scratch if it can not be restored)
+        return eval.derive(added, deleted, () -> createEvaluation(curSolution, data));
 
     }
-
+    
+    private ShannonEvaluation createEvaluation(SubsetSolution solution, CoreHunterData data) {
+        
+        GenotypeData geno = data.getGenotypicData();
+        
+        if(geno == null){
+            throw new CoreHunterException("Genotypes are required for Shannon's index.");
+        }
+        
+        return new ShannonEvaluation(solution.getSelectedIDs(), geno);
+        
+    }
+    
     @Override
     public boolean isMinimizing() {
         return false;
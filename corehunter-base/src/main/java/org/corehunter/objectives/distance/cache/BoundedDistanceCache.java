@@ -0,0 +1,285 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.corehunter.data.DistancePrecision;
+
+/**
+ * Distance cache with a bounded memory footprint, for data sets that are too large to cache all pairwise
+ * distances. Distances are stored in rows: the row of an item holds its distances to all other items. Only a
+ * limited number of rows is kept in memory. When this number is reached, a row is evicted using the CLOCK
+ * algorithm: rows from which a distance has been retrieved since the last sweep of the clock hand are given a
+ * second chance. Distances that are not found in any retained row have to be recomputed.
+ * <p>
+ * A distance between two items is retrieved from the row of either item. When it is stored, it is added to
+ * the rows of both items that are currently retained. If none of both rows is retained, a row is allocated for
+ * the item that has been involved in most of the recently stored distances, but only if this item has been
+ * involved in more than one such distance. Items that occur in many pairs, such as the items selected in a
+ * core, thus quickly obtain a row that then remains in memory, while the distances from other items to these
+ * selected items are found in their rows.
+ * <p>
+ * The cache is safe for concurrent use. Retrieving and storing distances in a retained row does not require
+ * locking, and distances are published at most once per row as in {@link PackedDistanceCache}. Only the
+ * allocation and eviction of rows is synchronized.
+ *
+ * @author Herman De Beukelaer
+ */
+public class BoundedDistanceCache implements DistanceCache {
+
+    // number of stored distances after which an item without row may obtain one
+    private static final int ADMISSION_THRESHOLD = 2;
+    // maximum recorded number of stored distances per item without row
+    private static final int MAX_COUNT = Byte.MAX_VALUE;
+    // bookkeeping per item: row reference (assuming uncompressed references) and count
+    private static final int ITEM_BOOKKEEPING = Long.BYTES + Byte.BYTES;
+    
+    private final int n;
+    private final DistancePrecision precision;
+    private final int maxRows;
+    
+    // retained rows (null if not retained)
+    private final AtomicReferenceArray<Row> rows;
+    // number of stored distances in which an item without row was involved (approximate)
+    private final byte[] counts;
+    
+    // clock: items of retained rows and position of clock hand (guarded by this)
+    private final int[] clock;
+    private int numRows;
+    private int hand;
+    
+    /**
+     * Create an empty cache for the given number of items, with the given precision and memory limit.
+     * The memory limit covers the bookkeeping per item (see {@link #bookkeepingMemorySize(int)}) and determines
+     * the number of rows that can be retained in the remaining memory. If the remainder is smaller than the size
+     * of a single row, no rows are retained and all distances are recomputed whenever they are requested.
+     *
+     * @param n number of items
+     * @param precision precision with which distances are stored
+     * @param maxMemory approximate maximum memory footprint in bytes
+     * @throws IllegalArgumentException if <code>n</code> or <code>maxMemory</code> is negative
+     */
+    public BoundedDistanceCache(int n, DistancePrecision precision, long maxMemory) {
+        if (precision == null) {
+            throw new IllegalArgumentException("Precision not defined.");
+        }
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of items should be positive.");
+        }
+        if (maxMemory < 0) {
+            throw new IllegalArgumentException("Memory limit should be positive.");
+        }
+        this.n = n;
+        this.precision = precision;
+        long rowSize = Math.max(1, rowMemorySize(n, precision));
+        long rowMemory = Math.max(0, maxMemory - bookkeepingMemorySize(n));
+        maxRows = (int) Math.min(n, rowMemory / rowSize);
+        rows = new AtomicReferenceArray<>(n);
+        counts = new byte[n];
+        clock = new int[maxRows];
+        numRows = 0;
+        hand = 0;
+    }
+    
+    /**
+     * Get the approximate number of bytes used by a single row, including its slot in the clock.
+     * 
+     * @param n number of items
+     * @param precision precision with which distances are stored
+     * @return memory footprint of a row in bytes
+     */
+    public static long rowMemorySize(int n, DistancePrecision precision) {
+        return (long) n * precision.getNumBytes() + ((n + 63) >>> 6) * Long.BYTES + Integer.BYTES;
+    }
+    
+    /**
+     * Get the approximate number of bytes used for bookkeeping, independent of the number of retained rows:
+     * a row reference and a count per item.
+     * 
+     * @param n number of items
+     * @return memory footprint of the bookkeeping in bytes
+     */
+    public static long bookkeepingMemorySize(int n) {
+        return (long) n * ITEM_BOOKKEEPING;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Get the precision with which distances are stored.
+     *
+     * @return precision
+     */
+    public DistancePrecision getPrecision() {
+        return precision;
+    }
+    
+    /**
+     * Get the maximum number of retained rows. If zero, distances are not cached.
+     * 
+     * @return maximum number of rows
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+    
+    /**
+     * Get the number of currently retained rows.
+     * 
+     * @return number of rows
+     */
+    public synchronized int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public double get(int idX, int idY) {
+        double d = get(rows.get(idX), idY);
+        if (Double.isNaN(d)) {
+            d = get(rows.get(idY), idX);
+        }
+        return d;
+    }
+    
+    private double get(Row row, int id) {
+        if (row != null) {
+            double d = row.get(id);
+            if (!Double.isNaN(d)) {
+                // mark row as recently used
+                if (!row.referenced) {
+                    row.referenced = true;
+                }
+                return d;
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public void put(int idX, int idY, double distance) {
+        boolean stored = false;
+        Row rowX = rows.get(idX);
+        if (rowX != null) {
+            rowX.put(idY, distance);
+            stored = true;
+        }
+        Row rowY = rows.get(idY);
+        if (rowY != null) {
+            rowY.put(idX, distance);
+            stored = true;
+        }
+        if (!stored && maxRows > 0) {
+            // no retained rows: update counts (races only affect the accuracy of the counts)
+            int countX = Math.min(counts[idX] + 1, MAX_COUNT);
+            int countY = Math.min(counts[idY] + 1, MAX_COUNT);
+            counts[idX] = (byte) countX;
+            counts[idY] = (byte) countY;
+            // allocate row for most frequently involved item
+            if (countX >= countY && countX >= ADMISSION_THRESHOLD) {
+                allocate(idX).put(idY, distance);
+            } else if (countY > countX && countY >= ADMISSION_THRESHOLD) {
+                allocate(idY).put(idX, distance);
+            }
+        }
+    }
+    
+    private synchronized Row allocate(int id) {
+        Row row = rows.get(id);
+        if (row != null) {
+            // allocated concurrently
+            return row;
+        }
+        if (numRows < maxRows) {
+            clock[numRows++] = id;
+        } else {
+            // evict row using clock algorithm
+            boolean evicted = false;
+            while (!evicted) {
+                Row candidate = rows.get(clock[hand]);
+                if (candidate.referenced) {
+                    // second chance
+                    candidate.referenced = false;
+                } else {
+                    rows.set(clock[hand], null);
+                    counts[clock[hand]] = 0;
+                    clock[hand] = id;
+                    evicted = true;
+                }
+                hand = (hand + 1) % maxRows;
+            }
+        }
+        row = new Row(n, precision);
+        rows.set(id, row);
+        return row;
+    }
+    
+    /**
+     * Distances from a single item to all other items.
+     */
+    private static final class Row {
+        
+        // one of both arrays is used, depending on the precision
+        private final double[] distances;
+        private final float[] floatDistances;
+        private final AtomicLongArray computed;
+        
+        // set when a distance is retrieved, cleared by the clock hand
+        private volatile boolean referenced;
+        
+        private Row(int n, DistancePrecision precision) {
+            if (precision == DistancePrecision.FLOAT) {
+                distances = null;
+                floatDistances = new float[n];
+            } else {
+                distances = new double[n];
+                floatDistances = null;
+            }
+            computed = new AtomicLongArray((n + 63) >>> 6);
+        }
+        
+        private double get(int id) {
+            if ((computed.get(id >>> 6) & (1L << id)) != 0) {
+                return distances != null ? distances[id] : floatDistances[id];
+            }
+            return Double.NaN;
+        }
+        
+        private void put(int id, double distance) {
+            if (distances != null) {
+                distances[id] = distance;
+            } else {
+                floatDistances[id] = (float) distance;
+            }
+            // publish
+            int w = id >>> 6;
+            long bit = 1L << id;
+            long word = computed.get(w);
+            while ((word & bit) == 0 && !computed.compareAndSet(w, word, word | bit)) {
+                word = computed.get(w);
+            }
+        }
+        
+    }
+
+}
@@ -0,0 +1,57 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.cache;
+
+/**
+ * Stores pairwise distances between items with integer IDs <code>0, ..., n-1</code>.
+ * Distances are assumed to be symmetric so that <code>(idX, idY)</code> and <code>(idY, idX)</code>
+ * refer to the same entry. The distance from an item to itself is not stored.
+ *
+ * @author Herman De Beukelaer
+ */
+public interface DistanceCache {
+
+    /**
+     * Get the number of items for which distances can be stored.
+     *
+     * @return number of items
+     */
+    public int size();
+
+    /**
+     * Retrieve a cached distance. If the distance between the given items has not
+     * been stored, {@link Double#NaN} is returned.
+     *
+     * @param idX id of the first item
+     * @param idY id of the second item, different from <code>idX</code>
+     * @return cached distance, or {@link Double#NaN} if the distance has not been stored
+     */
+    public double get(int idX, int idY);
+
+    /**
+     * Store the distance between two items.
+     *
+     * @param idX id of the first item
+     * @param idY id of the second item, different from <code>idX</code>
+     * @param distance distance between both items
+     */
+    public void put(int idX, int idY, double distance);
+
+}
@@ -0,0 +1,309 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.DistancePrecision;
+import org.corehunter.objectives.distance.DistanceMeasure;
+import org.corehunter.objectives.distance.measures.MissingValuesPolicy;
+
+/**
+ * Registry of distance caches that can be shared among distance measures. Caches are identified by the data
+ * set (compared by identity), the type of distance measure, the missing values policy and the precision with
+ * which distances are stored. Distance measures of the same type are assumed to compute the same distances,
+ * given the same missing values policy. All objectives of a Core Hunter run share a registry, so that distances
+ * are only computed once even if they are used by several objectives, for normalization and for evaluation.
+ * <p>
+ * Besides distance caches, the registry also holds data derived from a data set by distance measures to speed up
+ * distance computations (e.g. a flat copy of allele frequencies), so that it is shared in the same way.
+ * <p>
+ * The registry is safe for concurrent use. Caches and derived data are created outside of any lock that is
+ * shared by other lookups: while one thread creates an entry (e.g. a large frequency table), other threads only
+ * wait if they request that same entry, which is created only once.
+ * 
+ * @author Herman De Beukelaer
+ */
+public class DistanceCacheRegistry {
+    
+    private final ConcurrentMap<CacheKey, FutureTask<DistanceCache>> caches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<DerivedKey, FutureTask<Object>> derived = new ConcurrentHashMap<>();
+    
+    /**
+     * Get the distance cache registered for the given data set, type of distance measure, missing values
+     * policy and precision. If no such cache has been registered, it is created with the given factory.
+     * 
+     * @param data data set
+     * @param measure type of distance measure
+     * @param policy missing values policy
+     * @param precision precision with which distances are stored
+     * @param factory used to create the cache, if not yet registered
+     * @return registered distance cache
+     */
+    public DistanceCache getCache(CoreHunterData data,
+                                  Class<? extends DistanceMeasure> measure,
+                                  MissingValuesPolicy policy,
+                                  DistancePrecision precision,
+                                  Supplier<DistanceCache> factory){
+        return getOrCreate(caches, new CacheKey(data, measure, policy, precision), factory);
+    }
+    
+    /**
+     * Register a distance cache for the given data set, type of distance measure, missing values policy and
+     * precision. A previously registered cache with the same properties is replaced.
+     * 
+     * @param data data set
+     * @param measure type of distance measure
+     * @param policy missing values policy
+     * @param precision precision with which distances are stored
+     * @param cache distance cache
+     */
+    public void register(CoreHunterData data,
+                         Class<? extends DistanceMeasure> measure,
+                         MissingValuesPolicy policy,
+                         DistancePrecision precision,
+                         DistanceCache cache){
+        if(cache == null){
+            throw new IllegalArgumentException("Cache not defined.");
+        }
+        FutureTask<DistanceCache> task = new FutureTask<>(() -> cache);
+        task.run();
+        caches.put(new CacheKey(data, measure, policy, precision), task);
+    }
+    
+    /**
+     * Get all distance caches registered for the given data set. Caches that are still being created
+     * by another thread are not included.
+     * 
+     * @param data data set
+     * @return map containing the registered caches for the given data set
+     */
+    public Map<CacheKey, DistanceCache> getCaches(CoreHunterData data){
+        Map<CacheKey, DistanceCache> dataCaches = new HashMap<>();
+        caches.forEach((k, task) -> {
+            if(k.data == data && task.isDone()){
+                try {
+                    dataCaches.put(k, task.get());
+                } catch (InterruptedException | ExecutionException ex){
+                    // creation failed (tasks that are done do not wait): skip
+                }
+            }
+        });
+        return dataCaches;
+    }
+    
+    /**
+     * Get data of the given type derived from the given data set. If no such data has been registered,
+     * it is created with the given factory.
+     * 
+     * @param data data set
+     * @param type type of derived data
+     * @param factory used to create the derived data, if not yet registered
+     * @param <T> type of derived data
+     * @return registered derived data
+     */
+    public <T> T getDerivedData(CoreHunterData data, Class<T> type, Supplier<T> factory){
+        return type.cast(getOrCreate(derived, new DerivedKey(data, type), factory));
+    }
+    
+    /**
+     * Get the number of registered caches.
+     * 
+     * @return number of registered caches
+     */
+    public int size(){
+        return caches.size();
+    }
+    
+    /**
+     * Remove all registered caches and derived data.
+     */
+    public void clear(){
+        caches.clear();
+        derived.clear();
+    }
+    
+    /**
+     * Remove all caches and derived data registered for the given data set.
+     * 
+     * @param data data set
+     */
+    public void clear(CoreHunterData data){
+        caches.keySet().removeIf(k -> k.data == data);
+        derived.keySet().removeIf(k -> k.data == data);
+    }
+    
+    // get the value registered for the given key, or create it in the calling thread if it has not been registered;
+    // other threads that request the same key in the meantime wait for the value instead of creating it again
+    private static <K, V> V getOrCreate(ConcurrentMap<K, FutureTask<V>> map, K key, Supplier<? extends V> factory){
+        FutureTask<V> task = map.get(key);
+        if(task == null){
+            FutureTask<V> newTask = new FutureTask<>(factory::get);
+            task = map.putIfAbsent(key, newTask);
+            if(task == null){
+                task = newTask;
+                newTask.run();
+            }
+        }
+        boolean interrupted = false;
+        try {
+            while(true){
+                try {
+                    return task.get();
+                } catch (InterruptedException ex){
+                    // keep waiting, as the value is created by another lookup
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex){
+            // creation failed: allow a later lookup to try again
+            map.remove(key, task);
+            Throwable cause = ex.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Identifies a registered distance cache.
+     */
+    public static final class CacheKey {
+        
+        private final CoreHunterData data;
+        private final Class<? extends DistanceMeasure> measure;
+        private final MissingValuesPolicy policy;
+        private final DistancePrecision precision;
+
+        private CacheKey(CoreHunterData data, Class<? extends DistanceMeasure> measure,
+                    MissingValuesPolicy policy, DistancePrecision precision) {
+            this.data = data;
+            this.measure = measure;
+            this.policy = policy;
+            this.precision = precision;
+        }
+        
+        /**
+         * Get the data set for which distances are cached.
+         * 
+         * @return data set
+         */
+        public CoreHunterData getData() {
+            return data;
+        }
+        
+        /**
+         * Get the type of distance measure.
+         * 
+         * @return type of distance measure
+         */
+        public Class<? extends DistanceMeasure> getMeasure() {
+            return measure;
+        }
+        
+        /**
+         * Get the missing values policy.
+         * 
+         * @return missing values policy
+         */
+        public MissingValuesPolicy getPolicy() {
+            return policy;
+        }
+        
+        /**
+         * Get the precision with which distances are stored.
+         * 
+         * @return precision
+         */
+        public DistancePrecision getPrecision() {
+            return precision;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(data);
+            hash = 31 * hash + measure.hashCode();
+            hash = 31 * hash + policy.hashCode();
+            hash = 31 * hash + precision.hashCode();
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return data == other.data
+                    && measure == other.measure
+                    && policy == other.policy
+                    && precision == other.precision;
+        }
+        
+    }
+    
+    private static final class DerivedKey {
+        
+        private final CoreHunterData data;
+        private final Class<?> type;
+
+        private DerivedKey(CoreHunterData data, Class<?> type) {
+            this.data = data;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(data) + type.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DerivedKey)) {
+                return false;
+            }
+            DerivedKey other = (DerivedKey) obj;
+            return data == other.data && type == other.type;
+        }
+        
+    }
+    
+}
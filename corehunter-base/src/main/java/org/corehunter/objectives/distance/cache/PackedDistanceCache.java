@@ -0,0 +1,303 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.corehunter.data.DistancePrecision;
+
+/**
+ * Distance cache that stores all pairwise distances between <code>n</code> items in a single
+ * primitive array. As distances are symmetric and the diagonal is zero, only the strict triangle
+ * is stored, row by row: the distance between items <code>i</code> and <code>j &lt; i</code> is
+ * found at index <code>i(i-1)/2 + j</code>. Which entries have been computed is tracked in a
+ * separate bitmap. Distances are stored either in double or in single precision, where the latter
+ * halves the required memory.
+ * <p>
+ * The cache is safe for concurrent use without locking. Each entry is published at most once: a distance is
+ * written before its bit is atomically set in the bitmap, and readers only access distances of which the bit
+ * is set, so that a published distance is always visible to all threads. If two threads concurrently store the
+ * same distance, the value is simply written twice.
+ * <p>
+ * The content of the cache can be written to a channel in a little-endian binary format and mapped back into
+ * memory, so that computed distances can be persisted across sessions, see {@link #write(WritableByteChannel)}
+ * and {@link #read(FileChannel, long, int, DistancePrecision)}.
+ *
+ * @author Herman De Beukelaer
+ */
+public class PackedDistanceCache implements DistanceCache {
+
+    /**
+     * Maximum number of items supported by this cache, for which the number of stored distances still fits in a
+     * single array.
+     */
+    public static final int MAX_SIZE = 65536;
+    
+    // number of values per mapped segment when reading from a channel (a single mapping is limited to 2GB)
+    private static final int SEGMENT_SIZE = 1 << 27;
+    // size of buffer used to write to a channel
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final int n;
+    private final DistancePrecision precision;
+    // one of both arrays is used, depending on the precision
+    private final double[] distances;
+    private final float[] floatDistances;
+    private final AtomicLongArray computed;
+
+    /**
+     * Create an empty cache for the given number of items, which stores distances in double precision.
+     *
+     * @param n number of items
+     * @throws IllegalArgumentException if <code>n</code> is negative or exceeds {@link #MAX_SIZE}
+     */
+    public PackedDistanceCache(int n) {
+        this(n, DistancePrecision.DOUBLE);
+    }
+    
+    /**
+     * Create an empty cache for the given number of items, which stores distances with the given precision.
+     *
+     * @param n number of items
+     * @param precision precision with which distances are stored
+     * @throws IllegalArgumentException if <code>n</code> is negative or exceeds {@link #MAX_SIZE}
+     */
+    public PackedDistanceCache(int n, DistancePrecision precision) {
+        if (precision == null) {
+            throw new IllegalArgumentException("Precision not defined.");
+        }
+        if (n < 0 || n > MAX_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Number of items should be between 0 and %d, got %d.", MAX_SIZE, n
+            ));
+        }
+        this.n = n;
+        this.precision = precision;
+        int numDistances = (int) numDistances(n);
+        if (precision == DistancePrecision.FLOAT) {
+            distances = null;
+            floatDistances = new float[numDistances];
+        } else {
+            distances = new double[numDistances];
+            floatDistances = null;
+        }
+        computed = new AtomicLongArray((numDistances + 63) >>> 6);
+    }
+
+    /**
+     * Get the number of distances stored in the packed triangle for the given number of items.
+     *
+     * @param n number of items
+     * @return number of stored distances, i.e. <code>n(n-1)/2</code>
+     */
+    public static long numDistances(int n) {
+        return (long) n * (n - 1) / 2;
+    }
+
+    /**
+     * Get the approximate number of bytes required to cache all distances between the given number of items.
+     *
+     * @param n number of items
+     * @param precision precision with which distances are stored
+     * @return approximate memory footprint of the cache in bytes
+     */
+    public static long memorySize(int n, DistancePrecision precision) {
+        long numDistances = numDistances(n);
+        return numDistances * precision.getNumBytes() + ((numDistances + 63) >>> 6) * Long.BYTES;
+    }
+
+    /**
+     * Get the position of the distance between the given items in the packed triangle.
+     *
+     * @param idX id of the first item
+     * @param idY id of the second item, different from <code>idX</code>
+     * @return index in the packed triangle
+     */
+    public static int index(int idX, int idY) {
+        int i = Math.max(idX, idY);
+        int j = Math.min(idX, idY);
+        return (int) ((long) i * (i - 1) / 2) + j;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Get the precision with which distances are stored.
+     *
+     * @return precision
+     */
+    public DistancePrecision getPrecision() {
+        return precision;
+    }
+
+    @Override
+    public double get(int idX, int idY) {
+        int k = index(idX, idY);
+        if ((computed.get(k >>> 6) & (1L << k)) != 0) {
+            return distances != null ? distances[k] : floatDistances[k];
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public void put(int idX, int idY, double distance) {
+        int k = index(idX, idY);
+        if (distances != null) {
+            distances[k] = distance;
+        } else {
+            floatDistances[k] = (float) distance;
+        }
+        // publish
+        int w = k >>> 6;
+        long bit = 1L << k;
+        long word = computed.get(w);
+        while ((word & bit) == 0 && !computed.compareAndSet(w, word, word | bit)) {
+            word = computed.get(w);
+        }
+    }
+    
+    /**
+     * Get the number of distances that have been stored in the cache.
+     *
+     * @return number of stored distances
+     */
+    public long getNumStored() {
+        long count = 0;
+        for (int w = 0; w < computed.length(); w++) {
+            count += Long.bitCount(computed.get(w));
+        }
+        return count;
+    }
+    
+    /**
+     * Get the number of bytes written by {@link #write(WritableByteChannel)} for a cache
+     * with the given number of items and precision.
+     *
+     * @param n number of items
+     * @param precision precision with which distances are stored
+     * @return number of written bytes
+     */
+    public static long binarySize(int n, DistancePrecision precision) {
+        long numDistances = numDistances(n);
+        return ((numDistances + 63) >>> 6) * Long.BYTES + numDistances * precision.getNumBytes();
+    }
+    
+    /**
+     * Write the content of the cache to the given channel in little-endian binary format: the bitmap of stored
+     * distances followed by the packed triangle of distances. The number of items and the precision are not
+     * written, so that they can be stored in a separate header. Distances that are concurrently stored while
+     * writing may or may not be included.
+     *
+     * @param channel channel to which the cache is written
+     * @throws IOException if any error occurs while writing
+     */
+    public void write(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // write snapshot of bitmap before writing distances (which have then been written)
+        for (int w = 0; w < computed.length(); w++) {
+            if (buffer.remaining() < Long.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putLong(computed.get(w));
+        }
+        if (distances != null) {
+            for (double d : distances) {
+                if (buffer.remaining() < Double.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putDouble(d);
+            }
+        } else {
+            for (float d : floatDistances) {
+                if (buffer.remaining() < Float.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putFloat(d);
+            }
+        }
+        flush(channel, buffer);
+    }
+    
+    /**
+     * Read a cache that has been written with {@link #write(WritableByteChannel)}, starting at the given position
+     * of a file. The content is mapped into memory in segments and copied in bulk into the cache.
+     *
+     * @param channel file channel from which the cache is read
+     * @param position position of the written cache in the file (in bytes)
+     * @param n number of items of the written cache
+     * @param precision precision of the written cache
+     * @return cache with the distances that had been stored in the written cache
+     * @throws IOException if any error occurs while mapping the file, if the file is too small to contain
+     *                     the cache, or if <code>n</code> is negative or exceeds {@link #MAX_SIZE}
+     */
+    public static PackedDistanceCache read(FileChannel channel, long position, int n, DistancePrecision precision)
+            throws IOException {
+        PackedDistanceCache cache;
+        try {
+            cache = new PackedDistanceCache(n, precision);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        if (channel.size() < position + binarySize(n, precision)) {
+            throw new IOException("File is too small to contain a distance cache for " + n + " items.");
+        }
+        // map bitmap
+        int numWords = cache.computed.length();
+        LongBuffer bitmap = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) numWords * Long.BYTES)
+                                   .order(ByteOrder.LITTLE_ENDIAN)
+                                   .asLongBuffer();
+        for (int w = 0; w < numWords; w++) {
+            cache.computed.set(w, bitmap.get(w));
+        }
+        // map distances in segments
+        long offset = position + (long) numWords * Long.BYTES;
+        int numDistances = (int) numDistances(n);
+        int numBytes = precision.getNumBytes();
+        for (int first = 0; first < numDistances; first += SEGMENT_SIZE) {
+            int count = Math.min(SEGMENT_SIZE, numDistances - first);
+            ByteBuffer segment = channel.map(
+                    FileChannel.MapMode.READ_ONLY, offset + (long) first * numBytes, (long) count * numBytes
+            ).order(ByteOrder.LITTLE_ENDIAN);
+            if (cache.distances != null) {
+                segment.asDoubleBuffer().get(cache.distances, first, count);
+            } else {
+                segment.asFloatBuffer().get(cache.floatDistances, first, count);
+            }
+        }
+        return cache;
+    }
+    
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+}
@@ -20,8 +20,14 @@
 package org.corehunter.objectives.distance.eval;
 
 /**
+ * ID of and distance to the closest entry of an item. No longer used by {@link NearestEntryEvaluation},
+ * which stores closest entries in primitive arrays; only kept for compatibility.
+ * 
  * @author Herman De Beukelaer
+ * @deprecated use {@link NearestEntryEvaluation#getClosestId(int)} and
+ *             {@link NearestEntryEvaluation#getClosestDistance(int)}
  */
+@Deprecated
 public class NearestEntry {
         
     private final int id;
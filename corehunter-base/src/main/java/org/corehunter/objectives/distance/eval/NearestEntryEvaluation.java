@@ -19,56 +19,100 @@
 
 package org.corehunter.objectives.distance.eval;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
 
 import org.corehunter.objectives.AverageAccessionToNearestEntry;
 import org.corehunter.objectives.AverageEntryToNearestEntry;
-import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
+import org.corehunter.objectives.eval.MutableEvaluation;
+import org.corehunter.objectives.eval.UndoLog.DoubleField;
+import org.corehunter.objectives.eval.UndoLog.IntField;
 
 /**
  * Stores metadata for efficient delta evaluation in {@link AverageEntryToNearestEntry} and
- * {@link AverageAccessionToNearestEntry}.
+ * {@link AverageAccessionToNearestEntry}. The closest entry of each item (if registered) and the corresponding
+ * distance are stored in arrays indexed by item ID, and the selection is stored as an array of selected IDs.
+ * All arrays are updated in place and only the changed entries are recorded in the undo log, so that the cost
+ * of an update is proportional to the number of items of which the closest entry changes.
  * 
  * @author Herman De Beukelaer
  */
-public class NearestEntryEvaluation implements Evaluation {
+public abstract class NearestEntryEvaluation extends MutableEvaluation {
     
-    // maps items to closest entries (IDs) and the corresponding distance
-    private final Map<Integer, NearestEntry> nearestEntryMap;
-    // sum of distances from items to respective closest entries
+    // ID of the closest entry of each item (-1 if not registered) and the corresponding distance
+    private final int[] nearestId;
+    private final double[] nearestDist;
+    // number of registered items
+    private int numRegistered;
+    private final IntField numRegisteredField = n -> numRegistered = n;
+    // sum of distances from registered items to respective closest entries
     private double minDistSum;
+    private final DoubleField minDistSumField = s -> minDistSum = s;
     // value when no distances have been registered
     private final double emptyValue;
+    // IDs of selected items (first entries) and position of each item in this array (-1 if not selected)
+    private final int[] selected;
+    private final int[] selectedPositions;
+    // number of selected items
+    private int numSelected;
+    private final IntField numSelectedField = n -> numSelected = n;
 
-    public NearestEntryEvaluation(double emptyValue) {
-        nearestEntryMap = new HashMap<>();
+    /**
+     * Create an evaluation without any registered closest entries.
+     * 
+     * @param size number of items (IDs range from 0 to <code>size - 1</code>)
+     * @param selected IDs of selected items
+     * @param emptyValue value when no distances have been registered
+     */
+    public NearestEntryEvaluation(int size, Collection<Integer> selected, double emptyValue) {
+        nearestId = new int[size];
+        Arrays.fill(nearestId, -1);
+        nearestDist = new double[size];
+        numRegistered = 0;
         minDistSum = 0.0;
         this.emptyValue = emptyValue;
+        this.selected = new int[size];
+        selectedPositions = new int[size];
+        Arrays.fill(selectedPositions, -1);
+        numSelected = 0;
+        for(int id : selected){
+            select(id);
+        }
     }
 
     /**
-     * Deep copy constructor
+     * Register the closest entry of a given item.
      * 
-     * @param toCopy evaluation to copy
+     * @param itemId id of the item
+     * @param closestId id of the closest (other) selected item
+     * @param distance distance to the closest selected item
      */
-    public NearestEntryEvaluation(NearestEntryEvaluation toCopy){
-        nearestEntryMap = new HashMap<>(toCopy.nearestEntryMap);
-        minDistSum = toCopy.minDistSum;
-        emptyValue = toCopy.emptyValue;
+    public void add(int itemId, int closestId, double distance){
+        // update minimum distance sum
+        recordDouble(minDistSumField, minDistSum);
+        if(nearestId[itemId] < 0){
+            recordInt(numRegisteredField, numRegistered);
+            numRegistered++;
+        } else {
+            minDistSum -= nearestDist[itemId];
+        }
+        minDistSum += distance;
+        // update metadata
+        set(nearestId, itemId, closestId);
+        set(nearestDist, itemId, distance);
     }
-
+    
     /**
      * Register the closest entry of a given item.
      * 
      * @param itemId id of the item
      * @param nearestEntry id of and distance to the closest (other) selected item
+     * @deprecated use {@link #add(int, int, double)}
      */
+    @Deprecated
     public void add(int itemId, NearestEntry nearestEntry){
-        // update minimum distance sum
-        minDistSum += nearestEntry.getDistance();
-        // update metadata
-        nearestEntryMap.put(itemId, nearestEntry);
+        add(itemId, nearestEntry.getId(), nearestEntry.getDistance());
     }
 
     /**
@@ -78,11 +122,14 @@ public class NearestEntryEvaluation implements Evaluation {
      * @return <code>true</code> if the item had been registered and is now removed
      */
     public boolean remove(int itemId){
-        if(nearestEntryMap.containsKey(itemId)){
+        if(nearestId[itemId] >= 0){
             // update minimum distance sum
-            minDistSum -= nearestEntryMap.get(itemId).getDistance();
+            recordDouble(minDistSumField, minDistSum);
+            minDistSum -= nearestDist[itemId];
+            recordInt(numRegisteredField, numRegistered);
+            numRegistered--;
             // update metadata
-            nearestEntryMap.remove(itemId);
+            set(nearestId, itemId, -1);
             return true;
         }
         return false;
@@ -92,30 +139,146 @@ public class NearestEntryEvaluation implements Evaluation {
      * Update the closest entry of a previously registered item.
      * 
      * @param itemId id of the item
-     * @param nearestEntry id of and distance to the closest (other) selected item
+     * @param closestId id of the closest (other) selected item
+     * @param distance distance to the closest selected item
      * @return <code>true</code> if the item had been registered and is now updated
      */
-    public boolean update(int itemId, NearestEntry nearestEntry){
-        if(nearestEntryMap.containsKey(itemId)){
+    public boolean update(int itemId, int closestId, double distance){
+        if(nearestId[itemId] >= 0){
             // update minimum distance sum
-            minDistSum -= nearestEntryMap.get(itemId).getDistance();
-            minDistSum += nearestEntry.getDistance();
+            recordDouble(minDistSumField, minDistSum);
+            minDistSum = minDistSum - nearestDist[itemId] + distance;
             // update metadata
-            nearestEntryMap.put(itemId, nearestEntry);
+            set(nearestId, itemId, closestId);
+            set(nearestDist, itemId, distance);
             return true;
         }
         return false;
     }
+    
+    /**
+     * Update the closest entry of a previously registered item.
+     * 
+     * @param itemId id of the item
+     * @param nearestEntry id of and distance to the closest (other) selected item
+     * @return <code>true</code> if the item had been registered and is now updated
+     * @deprecated use {@link #update(int, int, double)}
+     */
+    @Deprecated
+    public boolean update(int itemId, NearestEntry nearestEntry){
+        return update(itemId, nearestEntry.getId(), nearestEntry.getDistance());
+    }
+    
+    /**
+     * Update the selection and the closest entries.
+     * 
+     * @param add IDs of added items
+     * @param remove IDs of removed items
+     */
+    @Override
+    protected final void update(Set<Integer> add, Set<Integer> remove){
+        for(int item : remove){
+            deselect(item);
+        }
+        for(int item : add){
+            select(item);
+        }
+        updateClosest(add, remove);
+    }
+    
+    /**
+     * Update the closest entries after some items have been added to and/or removed from the selection.
+     * The selection has already been updated when this method is called.
+     * 
+     * @param add IDs of added items
+     * @param remove IDs of removed items
+     */
+    protected abstract void updateClosest(Set<Integer> add, Set<Integer> remove);
+    
+    private void select(int itemId){
+        if(selectedPositions[itemId] < 0){
+            int pos = numSelected;
+            set(selected, pos, itemId);
+            set(selectedPositions, itemId, pos);
+            recordInt(numSelectedField, numSelected);
+            numSelected = pos + 1;
+        }
+    }
+    
+    private void deselect(int itemId){
+        int pos = selectedPositions[itemId];
+        if(pos >= 0){
+            // move last selected item to the freed position
+            int last = numSelected - 1;
+            int lastId = selected[last];
+            set(selected, pos, lastId);
+            set(selectedPositions, lastId, pos);
+            set(selectedPositions, itemId, -1);
+            recordInt(numSelectedField, numSelected);
+            numSelected = last;
+        }
+    }
+    
+    /**
+     * Get the number of selected items.
+     * 
+     * @return number of selected items
+     */
+    public int getNumSelected(){
+        return numSelected;
+    }
+    
+    /**
+     * Get the ID of a selected item. The order of the selected items changes when the selection is updated.
+     * 
+     * @param index index of the selected item, at least zero and smaller than {@link #getNumSelected()}
+     * @return ID of the selected item
+     */
+    public int getSelectedId(int index){
+        return selected[index];
+    }
+    
+    /**
+     * Check whether an item is selected.
+     * 
+     * @param itemId id of the item
+     * @return <code>true</code> if the item is selected
+     */
+    public boolean isSelected(int itemId){
+        return selectedPositions[itemId] >= 0;
+    }
 
+    /**
+     * Get the id of the closest selected item for an item with given id.
+     * 
+     * @param itemId id of the item
+     * @return id of closest selected item; -1 if no nearest entry has been registered
+     */
+    public int getClosestId(int itemId){
+        return nearestId[itemId];
+    }
+    
+    /**
+     * Get the distance to the closest selected item for an item with given id.
+     * 
+     * @param itemId id of the item
+     * @return distance to closest selected item; {@link Double#NaN} if no nearest entry has been registered
+     */
+    public double getClosestDistance(int itemId){
+        return nearestId[itemId] >= 0 ? nearestDist[itemId] : Double.NaN;
+    }
+    
     /**
      * Get the id of and distance to the closest selected item for an item with given id.
      * 
      * @param itemId id of the item
      * @return id of and distance to closest selected item;
      *         <code>null</code> if no nearest entry has been registered
+     * @deprecated use {@link #getClosestId(int)} and {@link #getClosestDistance(int)}
      */
+    @Deprecated
     public NearestEntry getClosest(int itemId){
-        return nearestEntryMap.get(itemId);
+        return nearestId[itemId] >= 0 ? new NearestEntry(nearestId[itemId], nearestDist[itemId]) : null;
     }
 
     /**
@@ -126,8 +289,7 @@ public class NearestEntryEvaluation implements Evaluation {
      */
     @Override
     public double getValue() {
-        int n = nearestEntryMap.size();
-        return n > 0 ? minDistSum/n : emptyValue;
+        return numRegistered > 0 ? minDistSum/numRegistered : emptyValue;
     }
     
 }
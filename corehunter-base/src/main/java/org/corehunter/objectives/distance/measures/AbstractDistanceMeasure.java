@@ -19,27 +19,54 @@
 
 package org.corehunter.objectives.distance.measures;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
 import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.DistancePrecision;
 import org.corehunter.objectives.distance.DistanceMeasure;
+import org.corehunter.objectives.distance.cache.BoundedDistanceCache;
+import org.corehunter.objectives.distance.cache.DistanceCache;
+import org.corehunter.objectives.distance.cache.DistanceCacheRegistry;
+import org.corehunter.objectives.distance.cache.PackedDistanceCache;
 
 /**
- * Caches pairwise distances upon computation.
+ * Caches pairwise distances upon computation. For each data set, distances are stored in a
+ * {@link PackedDistanceCache} which only keeps one primitive value per pair of distinct items.
+ * If a maximum cache size is set that does not allow to cache all distances, or if the data
+ * set is too large for a packed cache, distances are stored in a {@link BoundedDistanceCache}
+ * instead, which retains the distances of frequently involved items within the memory limit.
+ * Distances may be requested concurrently from multiple threads (e.g. by the replicas of a
+ * parallel tempering search), which then share and fill the same cache without locking.
+ * <p>
+ * Caches are obtained from a {@link DistanceCacheRegistry}. By default, every distance measure has its own
+ * registry. A shared registry can be set to reuse the distances computed by other measures of the same type,
+ * with the same missing values policy and precision, e.g. across all objectives of a Core Hunter run.
  * 
  * @author Herman De Beukelaer
  */
 public abstract class AbstractDistanceMeasure implements DistanceMeasure {
     
-    private final Map<CoreHunterData, Double[][]> cache;
+    // number of rows and columns of a block of distances computed at once during precomputation
+    // (a multiple of the number of entries per tile of a bulk allele frequency computation)
+    private static final int BLOCK_SIZE = 2 * AlleleFrequencyTable.ENTRY_TILE;
+    
+    // registry that holds the distance caches (private to this measure unless a shared registry is set)
+    private DistanceCacheRegistry registry;
+    private boolean sharedRegistry;
+    // most recently used cache (lock-free fast path)
+    private volatile DataCache lastUsed;
     private MissingValuesPolicy missingValuesPolicy;
+    private DistancePrecision precision = DistancePrecision.DOUBLE;
+    private long maxCacheSize = -1;
     
     public AbstractDistanceMeasure() {
         this(MissingValuesPolicy.FLOOR);
     }
     
     public AbstractDistanceMeasure(MissingValuesPolicy policy){
-        cache = new HashMap<>();
+        registry = new DistanceCacheRegistry();
+        sharedRegistry = false;
         setMissingValuesPolicy(policy);
     }
     
@@ -54,24 +81,124 @@ public abstract class AbstractDistanceMeasure implements DistanceMeasure {
      */
     @Override
     public double getDistance(int idX, int idY, CoreHunterData data){
-        Double[][] distances = cache.get(data);
-        if(distances != null && distances[idX][idY] != null){
-            // return cached value
-            return distances[idX][idY];
+        if(idX == idY){
+            return 0.0;
+        }
+        DistanceCache distances = getCache(data);
+        double d = distances.get(idX, idY);
+        if(Double.isNaN(d)){
+            // compute and store
+            d = computeDistance(idX, idY, data);
+            distances.put(idX, idY, d);
+        }
+        return d;
+    }
+    
+    /**
+     * Compute and cache all pairwise distances between items in the given data. The work is
+     * divided among the threads of the given fork-join pool. Distances that have already been
+     * cached are not recomputed. Distances are not precomputed if they are stored in a bounded
+     * cache, which can not hold all distances.
+     * 
+     * @param data data from which distances are computed
+     * @param pool fork-join pool in which the distances are computed
+     * @return <code>true</code> if all distances have been computed, <code>false</code> if
+     *         distances are stored in a bounded cache and have not been precomputed
+     */
+    public boolean precompute(CoreHunterData data, ForkJoinPool pool){
+        DistanceCache distances = getCache(data);
+        if(distances instanceof BoundedDistanceCache){
+            // not all distances can be cached
+            return false;
+        }
+        int numBlocks = (data.getSize() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        pool.invoke(new PrecomputeTask(data, distances, 0, (long) numBlocks * (numBlocks + 1) / 2));
+        return true;
+    }
+    
+    private DistanceCache getCache(CoreHunterData data){
+        DataCache last = lastUsed;
+        if(last != null && last.data == data){
+            return last.distances;
+        }
+        DistanceCache distances = registry.getCache(
+                data, getClass(), missingValuesPolicy, precision, () -> createCache(data)
+        );
+        lastUsed = new DataCache(data, distances);
+        return distances;
+    }
+    
+    private void clearCache(){
+        lastUsed = null;
+        if(!sharedRegistry){
+            // caches can not be reused by other measures
+            registry.clear();
+        }
+    }
+    
+    /**
+     * Get data of the given type derived from the given data set, to speed up distance computations.
+     * Derived data is held by the same registry as the distance caches, so that it is shared among
+     * all distance measures that share a registry. If not yet available, it is created with the
+     * given factory.
+     * 
+     * @param data data set
+     * @param type type of derived data
+     * @param factory used to create the derived data, if not yet available
+     * @param <T> type of derived data
+     * @return derived data
+     */
+    protected <T> T getDerivedData(CoreHunterData data, Class<T> type, Supplier<T> factory){
+        return registry.getDerivedData(data, type, factory);
+    }
+    
+    /**
+     * Set the registry from which distance caches are obtained. Distance measures of the same type that
+     * share a registry reuse each other's computed distances for the same data, provided that they apply
+     * the same missing values policy and precision. The size of a shared cache is determined by the measure
+     * that first requests it. If <code>null</code>, the measure uses a private registry (default).
+     * 
+     * @param registry shared distance cache registry; <code>null</code> to use a private registry
+     */
+    public void setCacheRegistry(DistanceCacheRegistry registry) {
+        lastUsed = null;
+        if(registry == null){
+            this.registry = new DistanceCacheRegistry();
+            sharedRegistry = false;
         } else {
-            if(distances == null){
-                int n = data.getSize();
-                distances = new Double[n][n];
-                cache.put(data, distances);
-            }
-            // compute, store and return
-            double d = (idX != idY ? computeDistance(idX, idY, data) : 0.0);
-            distances[idX][idY] = d;
-            distances[idY][idX] = d;
-            return d;
+            this.registry = registry;
+            sharedRegistry = true;
         }
     }
     
+    /**
+     * Get the registry from which distance caches are obtained.
+     * 
+     * @return distance cache registry
+     */
+    public DistanceCacheRegistry getCacheRegistry() {
+        return registry;
+    }
+    
+    /**
+     * Create an empty distance cache for the given data.
+     * 
+     * @param data data for which distances are cached
+     * @return empty distance cache
+     */
+    private DistanceCache createCache(CoreHunterData data){
+        int n = data.getSize();
+        if(n > PackedDistanceCache.MAX_SIZE){
+            // use bounded cache (default limit: a quarter of the maximum heap size)
+            long limit = maxCacheSize >= 0 ? maxCacheSize : Runtime.getRuntime().maxMemory() / 4;
+            return new BoundedDistanceCache(n, precision, limit);
+        }
+        if(maxCacheSize >= 0 && PackedDistanceCache.memorySize(n, precision) > maxCacheSize){
+            return new BoundedDistanceCache(n, precision, maxCacheSize);
+        }
+        return new PackedDistanceCache(n, precision);
+    }
+    
     /**
      * Compute distance. This method is called when a distance is not found in the cache.
      * 
@@ -82,15 +209,92 @@ public abstract class AbstractDistanceMeasure implements DistanceMeasure {
      */
     protected abstract double computeDistance(int idX, int idY, CoreHunterData data);
     
+    /**
+     * Compute the distances between all pairs of items in a block of rows and columns, where the column ID
+     * is smaller than the row ID, and store them in the given cache. This method is called when precomputing
+     * distances, possibly from several threads for disjoint blocks. The default implementation computes every
+     * distance that has not yet been cached with {@link #computeDistance(int, int, CoreHunterData)}.
+     * Measures that compute many distances at once more efficiently than one by one may override it.
+     * 
+     * @param fromX first id of the row range (inclusive)
+     * @param toX last id of the row range (exclusive)
+     * @param fromY first id of the column range (inclusive)
+     * @param toY last id of the column range (exclusive)
+     * @param data data from which the distances are computed
+     * @param distances cache in which the computed distances are stored
+     */
+    protected void computeDistances(int fromX, int toX, int fromY, int toY,
+                                    CoreHunterData data, DistanceCache distances){
+        for(int i = fromX; i < toX; i++){
+            for(int j = fromY; j < Math.min(toY, i); j++){
+                if(Double.isNaN(distances.get(i, j))){
+                    distances.put(i, j, computeDistance(i, j, data));
+                }
+            }
+        }
+    }
+    
     @Override
     public final void setMissingValuesPolicy(MissingValuesPolicy policy) {
         if(missingValuesPolicy != policy){
             // update policy and clear cache
             missingValuesPolicy = policy;
-            cache.clear();
+            clearCache();
+        }
+    }
+    
+    /**
+     * Set the precision with which computed distances are cached. Double precision is used by default.
+     * Single precision halves the memory used by the cache, at the cost of rounding all distances to
+     * approximately seven significant digits. Changing the precision clears the cache.
+     * 
+     * @param precision precision with which computed distances are stored
+     */
+    public final void setPrecision(DistancePrecision precision) {
+        if(precision == null){
+            throw new IllegalArgumentException("Precision not defined.");
+        }
+        if(this.precision != precision){
+            // update precision and clear cache
+            this.precision = precision;
+            clearCache();
+        }
+    }
+    
+    /**
+     * Get the precision with which computed distances are cached.
+     * 
+     * @return precision
+     */
+    public DistancePrecision getPrecision() {
+        return precision;
+    }
+    
+    /**
+     * Set the maximum size of the distance cache, in bytes. If all distances can not be cached within this
+     * limit, a bounded cache is used that only retains the distances of frequently involved items. A negative
+     * value means that the size of the cache is not limited (default), except for data sets that are too large
+     * to cache all distances. Changing the maximum size clears the cache.
+     * 
+     * @param bytes maximum size of the cache in bytes; negative if not limited
+     */
+    public final void setMaxCacheSize(long bytes) {
+        if(maxCacheSize != bytes){
+            // update limit and clear cache
+            maxCacheSize = bytes;
+            clearCache();
         }
     }
     
+    /**
+     * Get the maximum size of the distance cache, in bytes.
+     * 
+     * @return maximum size of the cache in bytes; negative if not limited
+     */
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+    
     protected double missingValueContribution(double ceilValue){
         switch(missingValuesPolicy){
             case FLOOR:
@@ -104,4 +308,78 @@ public abstract class AbstractDistanceMeasure implements DistanceMeasure {
         }
     }
     
+    private static final class DataCache {
+        
+        private final CoreHunterData data;
+        private final DistanceCache distances;
+
+        private DataCache(CoreHunterData data, DistanceCache distances) {
+            this.data = data;
+            this.distances = distances;
+        }
+        
+    }
+    
+    /**
+     * Computes the distances in a range of blocks of the lower triangle of the distance matrix. Blocks of
+     * {@link #BLOCK_SIZE} rows and columns are numbered row by row, where block row <code>r</code> contains
+     * the blocks in columns <code>0</code> to <code>r</code>. Ranges are split in halves until they contain
+     * at most a few blocks.
+     */
+    private class PrecomputeTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        // maximum number of blocks computed by a single task
+        private static final long THRESHOLD = 4;
+        
+        private final CoreHunterData data;
+        private final DistanceCache distances;
+        private final long from;
+        private final long to;
+
+        private PrecomputeTask(CoreHunterData data, DistanceCache distances, long from, long to) {
+            this.data = data;
+            this.distances = distances;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= THRESHOLD){
+                int n = data.getSize();
+                // position of first block
+                int r = (int) ((Math.sqrt(8.0 * from + 1) - 1) / 2);
+                while((long) r * (r + 1) / 2 > from){
+                    r--;
+                }
+                while((long) (r + 1) * (r + 2) / 2 <= from){
+                    r++;
+                }
+                int c = (int) (from - (long) r * (r + 1) / 2);
+                for(long b = from; b < to; b++){
+                    int fromX = r * BLOCK_SIZE;
+                    int fromY = c * BLOCK_SIZE;
+                    computeDistances(fromX, Math.min(fromX + BLOCK_SIZE, n),
+                                     fromY, Math.min(fromY + BLOCK_SIZE, n), data, distances);
+                    // next block
+                    if(c == r){
+                        r++;
+                        c = 0;
+                    } else {
+                        c++;
+                    }
+                }
+            } else {
+                long mid = (from + to) / 2;
+                invokeAll(
+                        new PrecomputeTask(data, distances, from, mid),
+                        new PrecomputeTask(data, distances, mid, to)
+                );
+            }
+        }
+        
+    }
+    
 }
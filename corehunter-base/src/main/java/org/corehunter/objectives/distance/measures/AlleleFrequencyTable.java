@@ -0,0 +1,537 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.measures;
+
+import java.util.Arrays;
+import org.corehunter.data.AlleleFrequencyConsumer;
+import org.corehunter.data.GenotypeData;
+
+/**
+ * Flat copy of the allele frequencies of genotype data, used to compute allele frequency based distances.
+ * The frequencies of each entry are stored in a single primitive array, in which the alleles of each marker
+ * occupy a consecutive range of positions. Frequencies of markers with missing values are stored as zero. These
+ * markers are recorded in a bit mask per entry. Sums of squared differences between two entries are computed by
+ * simple loops over the contiguous ranges of alleles between markers with missing values, which are unrolled so
+ * that they can be auto-vectorized by the JIT compiler. Sums for many pairs of entries at once are computed as a
+ * tiled matrix product (see {@link #sumsOfSquaredDifferences(int, int, int, int, double[][])}).
+ * <p>
+ * If most frequencies are zero, as for highly multi-allelic markers where each entry only carries a few
+ * alleles, only the non-zero frequencies of each entry are stored, together with their global allele index.
+ * Sums of squared differences are then computed by merging the non-zero frequencies of both entries, so that
+ * memory and work are proportional to the number of non-zero frequencies.
+ * <p>
+ * A table can share the frequencies stored in another table and compute sums of squared differences between
+ * the square roots of these frequencies instead (see {@link SquareRootFrequencyTable}). Square roots are then
+ * derived per tile of a bulk computation, or per range of alleles, so that no second copy of the frequencies
+ * is stored.
+ * 
+ * @author Herman De Beukelaer
+ */
+public class AlleleFrequencyTable {
+    
+    // number of alleles and entries per tile of a bulk computation (tiles of 32 x 512 doubles take 128 KB)
+    private static final int ALLELE_TILE = 512;
+    static final int ENTRY_TILE = 32;
+    // relative size below which a sum computed from the expansion is recomputed directly
+    private static final double CANCELLATION_THRESHOLD = 1e-4;
+    // maximum fraction of non-zero frequencies for which these are stored sparsely
+    private static final double MAX_SPARSE_DENSITY = 0.25;
+    
+    private final GenotypeData genotypes;
+    private final int numMarkers;
+    // offset of the first allele of each marker (with one additional entry for the end of the last marker)
+    private final int[] markerOffsets;
+    // flat allele frequencies per entry (null if stored sparsely)
+    private final double[][] frequencies;
+    // sparse storage: global allele index and frequency of the non-zero frequencies per entry (null if flat)
+    private final int[][] nonZeroAlleles;
+    private final double[][] nonZeroFrequencies;
+    // marker of each allele (null if flat)
+    private final int[] alleleMarkers;
+    // markers with missing values per entry (bit masks with 64 markers per word)
+    private final long[][] missing;
+    // markers with missing values per entry (sorted indices)
+    private final int[][] missingMarkers;
+    // squared norm of the (square roots of the) frequency vector of each entry
+    private final double[] norms;
+    // compute differences between the square roots of the stored frequencies
+    private final boolean squareRoots;
+
+    /**
+     * Create a flat copy of the allele frequencies of the given genotype data.
+     * 
+     * @param genotypes genotype data
+     */
+    public AlleleFrequencyTable(GenotypeData genotypes) {
+        this.genotypes = genotypes;
+        squareRoots = false;
+        int n = genotypes.getSize();
+        numMarkers = genotypes.getNumberOfMarkers();
+        // determine marker offsets
+        markerOffsets = new int[numMarkers + 1];
+        for(int m = 0; m <= numMarkers; m++){
+            markerOffsets[m] = genotypes.getAlleleOffset(m);
+        }
+        int numAlleles = markerOffsets[numMarkers];
+        int numWords = (numMarkers + 63) >>> 6;
+        // copy masks of markers with missing values
+        missing = new long[n][numWords];
+        for(int id = 0; id < n; id++){
+            for(int w = 0; w < numWords; w++){
+                missing[id][w] = genotypes.getMissingValuesMask(id, w);
+            }
+        }
+        // count non-zero frequencies of markers without missing values
+        int[] markers = new int[numAlleles];
+        for(int m = 0; m < numMarkers; m++){
+            Arrays.fill(markers, markerOffsets[m], markerOffsets[m+1], m);
+        }
+        NonZeroCollector collector = new NonZeroCollector(markers);
+        long numNonZero = 0;
+        for(int id = 0; id < n; id++){
+            collector.reset(missing[id], false);
+            genotypes.forEachNonZeroAlleleFrequency(id, collector);
+            numNonZero += collector.count;
+        }
+        if(numNonZero <= MAX_SPARSE_DENSITY * n * numAlleles){
+            // store non-zero frequencies only
+            alleleMarkers = markers;
+            frequencies = null;
+            nonZeroAlleles = new int[n][];
+            nonZeroFrequencies = new double[n][];
+            for(int id = 0; id < n; id++){
+                collector.reset(missing[id], true);
+                genotypes.forEachNonZeroAlleleFrequency(id, collector);
+                nonZeroAlleles[id] = Arrays.copyOf(collector.alleles, collector.count);
+                nonZeroFrequencies[id] = Arrays.copyOf(collector.frequencies, collector.count);
+            }
+            missingMarkers = null;
+            norms = null;
+        } else {
+            // copy frequencies
+            frequencies = new double[n][numAlleles];
+            nonZeroAlleles = null;
+            nonZeroFrequencies = null;
+            alleleMarkers = null;
+            for(int id = 0; id < n; id++){
+                double[] x = frequencies[id];
+                genotypes.copyAlleleFrequencies(id, x);
+                for(int m = 0; m < numMarkers; m++){
+                    if((missing[id][m >>> 6] & (1L << m)) != 0){
+                        Arrays.fill(x, markerOffsets[m], markerOffsets[m+1], 0.0);
+                    }
+                }
+            }
+            // list markers with missing values and compute norms
+            missingMarkers = new int[n][];
+            norms = new double[n];
+            for(int id = 0; id < n; id++){
+                double[] x = frequencies[id];
+                int[] missingList = new int[getNumberOfMissingMarkers(id, id)];
+                int k = 0;
+                for(int w = 0; w < numWords; w++){
+                    long bits = missing[id][w];
+                    while(bits != 0){
+                        missingList[k++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                    }
+                }
+                missingMarkers[id] = missingList;
+                norms[id] = dotProduct(x, x, 0, numAlleles);
+            }
+        }
+    }
+    
+    /**
+     * Create a table that shares the frequencies stored in the given table. If <code>squareRoots</code> is
+     * <code>true</code>, sums of squared differences are computed between the square roots of these frequencies,
+     * which are derived when needed instead of being stored.
+     * 
+     * @param table table of which the frequencies are shared
+     * @param squareRoots compute differences between the square roots of the frequencies
+     */
+    protected AlleleFrequencyTable(AlleleFrequencyTable table, boolean squareRoots) {
+        genotypes = table.genotypes;
+        numMarkers = table.numMarkers;
+        markerOffsets = table.markerOffsets;
+        frequencies = table.frequencies;
+        nonZeroAlleles = table.nonZeroAlleles;
+        nonZeroFrequencies = table.nonZeroFrequencies;
+        alleleMarkers = table.alleleMarkers;
+        missing = table.missing;
+        missingMarkers = table.missingMarkers;
+        this.squareRoots = squareRoots;
+        if(frequencies == null || squareRoots == table.squareRoots){
+            norms = table.norms;
+        } else {
+            // squared norm of the square roots is the sum of the frequencies (and vice versa)
+            norms = new double[frequencies.length];
+            for(int id = 0; id < frequencies.length; id++){
+                double[] x = frequencies[id];
+                if(squareRoots){
+                    for(double f : x){
+                        norms[id] += f;
+                    }
+                } else {
+                    norms[id] = dotProduct(x, x, 0, x.length);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the genotype data from which the frequencies have been copied.
+     * 
+     * @return genotype data
+     */
+    public GenotypeData getGenotypes() {
+        return genotypes;
+    }
+    
+    /**
+     * Get the number of markers.
+     * 
+     * @return number of markers
+     */
+    public int getNumberOfMarkers() {
+        return numMarkers;
+    }
+    
+    /**
+     * Get the total number of alleles across all markers.
+     * 
+     * @return total number of alleles
+     */
+    public int getTotalNumberOfAlleles() {
+        return markerOffsets[numMarkers];
+    }
+    
+    /**
+     * Count the number of markers with missing values in at least one of the two given entries.
+     * 
+     * @param idX id of the first entry
+     * @param idY id of the second entry
+     * @return number of markers with missing values in any of both entries
+     */
+    public int getNumberOfMissingMarkers(int idX, int idY) {
+        long[] mx = missing[idX];
+        long[] my = missing[idY];
+        int count = 0;
+        for(int w = 0; w < mx.length; w++){
+            count += Long.bitCount(mx[w] | my[w]);
+        }
+        return count;
+    }
+    
+    /**
+     * Compute the sum of squared differences between the allele frequencies of two entries,
+     * across all markers without missing values in any of both entries.
+     * 
+     * @param idX id of the first entry
+     * @param idY id of the second entry
+     * @return sum of squared frequency differences
+     */
+    public double sumOfSquaredDifferences(int idX, int idY) {
+        if(frequencies == null){
+            return sparseSumOfSquaredDifferences(idX, idY);
+        }
+        double[] x = frequencies[idX];
+        double[] y = frequencies[idY];
+        long[] mx = missing[idX];
+        long[] my = missing[idY];
+        double sum = 0.0;
+        // process blocks of 64 markers
+        for(int w = 0; w < mx.length; w++){
+            int firstMarker = w << 6;
+            int endMarker = Math.min(firstMarker + 64, numMarkers);
+            long skip = mx[w] | my[w];
+            // sum over consecutive ranges of markers without missing values
+            int from = firstMarker;
+            while(skip != 0){
+                int m = firstMarker + Long.numberOfTrailingZeros(skip);
+                sum += rangeSumOfSquaredDifferences(x, y, markerOffsets[from], markerOffsets[m]);
+                from = m + 1;
+                skip &= skip - 1;
+            }
+            sum += rangeSumOfSquaredDifferences(x, y, markerOffsets[from], markerOffsets[endMarker]);
+        }
+        return sum;
+    }
+    
+    private static double sumOfSquaredDifferences(double[] x, double[] y, int from, int to) {
+        // independent partial sums allow the loop to be vectorized
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = from;
+        for(; i + 3 < to; i += 4){
+            double d0 = x[i] - y[i];
+            double d1 = x[i+1] - y[i+1];
+            double d2 = x[i+2] - y[i+2];
+            double d3 = x[i+3] - y[i+3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for(; i < to; i++){
+            double d = x[i] - y[i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+    
+    private double rangeSumOfSquaredDifferences(double[] x, double[] y, int from, int to) {
+        return squareRoots ? sumOfSquaredRootDifferences(x, y, from, to) : sumOfSquaredDifferences(x, y, from, to);
+    }
+    
+    private static double sumOfSquaredRootDifferences(double[] x, double[] y, int from, int to) {
+        // independent partial sums allow the loop to be vectorized (square roots are intrinsics)
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = from;
+        for(; i + 3 < to; i += 4){
+            double d0 = Math.sqrt(x[i]) - Math.sqrt(y[i]);
+            double d1 = Math.sqrt(x[i+1]) - Math.sqrt(y[i+1]);
+            double d2 = Math.sqrt(x[i+2]) - Math.sqrt(y[i+2]);
+            double d3 = Math.sqrt(x[i+3]) - Math.sqrt(y[i+3]);
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for(; i < to; i++){
+            double d = Math.sqrt(x[i]) - Math.sqrt(y[i]);
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+    
+    /**
+     * Compute the sums of squared frequency differences for all pairs of entries in a rectangular
+     * block, across all markers without missing values in any of both entries of each pair. The result
+     * for entries <code>idX</code> and <code>idY</code> is stored at position <code>[idX - fromX][idY - fromY]</code>
+     * of the given result array.
+     * <p>
+     * The sums are expanded as <code>|x|^2 + |y|^2 - 2 x.y</code>, so that the dominant part of the
+     * computation is a matrix product of the frequency vectors, carried out in tiles that fit in the
+     * processor cache. Frequencies of markers with missing values are stored as zero, so that they do not
+     * contribute to the dot products; the contribution of these markers to the norms of the other entry is
+     * subtracted per pair. For pairs of nearly identical entries, where the expansion would suffer from
+     * cancellation, the sum is computed directly with {@link #sumOfSquaredDifferences(int, int)}.
+     * If frequencies are stored sparsely, the sum is computed by merging non-zero frequencies for each pair.
+     * If the table computes differences between square roots, these are derived once per tile.
+     * 
+     * @param fromX first id of the row range (inclusive)
+     * @param toX last id of the row range (exclusive)
+     * @param fromY first id of the column range (inclusive)
+     * @param toY last id of the column range (exclusive)
+     * @param result array in which the sums of squared differences are stored
+     */
+    public void sumsOfSquaredDifferences(int fromX, int toX, int fromY, int toY, double[][] result) {
+        sumsOfSquaredDifferences(fromX, toX, fromY, toY, false, result);
+    }
+    
+    /**
+     * Compute the sums of squared frequency differences for all pairs of entries in a rectangular block,
+     * as in {@link #sumsOfSquaredDifferences(int, int, int, int, double[][])}. If <code>lower</code> is
+     * <code>true</code>, only pairs with <code>idY &lt; idX</code> are computed, and all other positions of
+     * the result array are left untouched. This avoids computing both halves of blocks on the diagonal.
+     * 
+     * @param fromX first id of the row range (inclusive)
+     * @param toX last id of the row range (exclusive)
+     * @param fromY first id of the column range (inclusive)
+     * @param toY last id of the column range (exclusive)
+     * @param lower only compute pairs with <code>idY &lt; idX</code>
+     * @param result array in which the sums of squared differences are stored
+     */
+    public void sumsOfSquaredDifferences(int fromX, int toX, int fromY, int toY, boolean lower, double[][] result) {
+        if(frequencies == null){
+            // sparse storage: merge non-zero frequencies per pair
+            for(int i = fromX; i < toX; i++){
+                int end = lower ? Math.min(toY, i) : toY;
+                for(int j = fromY; j < end; j++){
+                    result[i - fromX][j - fromY] = i == j ? 0.0 : sparseSumOfSquaredDifferences(i, j);
+                }
+            }
+            return;
+        }
+        int numAlleles = getTotalNumberOfAlleles();
+        for(int i = fromX; i < toX; i++){
+            int end = lower ? Math.min(toY, i) : toY;
+            if(end > fromY){
+                Arrays.fill(result[i - fromX], 0, end - fromY, 0.0);
+            }
+        }
+        // square roots of the current tile of column entries and of a row entry (only if needed)
+        double[][] tileRoots = squareRoots ? new double[ENTRY_TILE][ALLELE_TILE] : null;
+        double[] rowRoots = squareRoots ? new double[ALLELE_TILE] : null;
+        // accumulate dot products tile by tile
+        for(int k0 = 0; k0 < numAlleles; k0 += ALLELE_TILE){
+            int k1 = Math.min(k0 + ALLELE_TILE, numAlleles);
+            for(int j0 = fromY; j0 < toY; j0 += ENTRY_TILE){
+                int j1 = Math.min(j0 + ENTRY_TILE, toY);
+                if(squareRoots){
+                    for(int j = j0; j < j1; j++){
+                        squareRoots(frequencies[j], k0, k1, tileRoots[j - j0]);
+                    }
+                }
+                for(int i = lower ? Math.max(fromX, j0 + 1) : fromX; i < toX; i++){
+                    double[] r = result[i - fromX];
+                    int end = lower ? Math.min(j1, i) : j1;
+                    if(squareRoots){
+                        squareRoots(frequencies[i], k0, k1, rowRoots);
+                        for(int j = j0; j < end; j++){
+                            r[j - fromY] += dotProduct(rowRoots, tileRoots[j - j0], 0, k1 - k0);
+                        }
+                    } else {
+                        double[] x = frequencies[i];
+                        for(int j = j0; j < end; j++){
+                            r[j - fromY] += dotProduct(x, frequencies[j], k0, k1);
+                        }
+                    }
+                }
+            }
+        }
+        // convert to sums of squared differences
+        for(int i = fromX; i < toX; i++){
+            double[] r = result[i - fromX];
+            int end = lower ? Math.min(toY, i) : toY;
+            for(int j = fromY; j < end; j++){
+                double normSum = norms[i] + norms[j] - missingNorm(i, j) - missingNorm(j, i);
+                double sum = normSum - 2.0 * r[j - fromY];
+                if(sum < CANCELLATION_THRESHOLD * normSum){
+                    // recompute directly to avoid loss of precision
+                    sum = i == j ? 0.0 : sumOfSquaredDifferences(i, j);
+                }
+                r[j - fromY] = sum;
+            }
+        }
+    }
+    
+    // squared norm of the (square roots of the) frequencies of entry idX at the markers with missing values
+    // for entry idY
+    private double missingNorm(int idX, int idY) {
+        double[] x = frequencies[idX];
+        double norm = 0.0;
+        for(int m : missingMarkers[idY]){
+            for(int a = markerOffsets[m]; a < markerOffsets[m+1]; a++){
+                norm += squareRoots ? x[a] : x[a] * x[a];
+            }
+        }
+        return norm;
+    }
+    
+    // copy the square roots of the given range of frequencies to the start of the given array
+    private static void squareRoots(double[] x, int from, int to, double[] roots) {
+        for(int a = from; a < to; a++){
+            roots[a - from] = Math.sqrt(x[a]);
+        }
+    }
+    
+    // sum of squared differences between the non-zero frequencies of two entries (merged by allele index)
+    private double sparseSumOfSquaredDifferences(int idX, int idY) {
+        int[] ax = nonZeroAlleles[idX];
+        int[] ay = nonZeroAlleles[idY];
+        double[] fx = nonZeroFrequencies[idX];
+        double[] fy = nonZeroFrequencies[idY];
+        // frequencies of markers with missing values in one entry are not stored for that entry,
+        // but still have to be skipped for the other entry
+        long[] mx = missing[idX];
+        long[] my = missing[idY];
+        double sum = 0.0;
+        int i = 0, j = 0;
+        while(i < ax.length || j < ay.length){
+            int a = i < ax.length ? ax[i] : Integer.MAX_VALUE;
+            int b = j < ay.length ? ay[j] : Integer.MAX_VALUE;
+            if(a == b){
+                double d = squareRoots ? Math.sqrt(fx[i++]) - Math.sqrt(fy[j++]) : fx[i++] - fy[j++];
+                sum += d * d;
+            } else if(a < b){
+                int m = alleleMarkers[a];
+                if((my[m >>> 6] & (1L << m)) == 0){
+                    sum += squareRoots ? fx[i] : fx[i] * fx[i];
+                }
+                i++;
+            } else {
+                int m = alleleMarkers[b];
+                if((mx[m >>> 6] & (1L << m)) == 0){
+                    sum += squareRoots ? fy[j] : fy[j] * fy[j];
+                }
+                j++;
+            }
+        }
+        return sum;
+    }
+    
+    private static double dotProduct(double[] x, double[] y, int from, int to) {
+        // independent partial sums allow the loop to be vectorized
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = from;
+        for(; i + 3 < to; i += 4){
+            s0 += x[i] * y[i];
+            s1 += x[i+1] * y[i+1];
+            s2 += x[i+2] * y[i+2];
+            s3 += x[i+3] * y[i+3];
+        }
+        for(; i < to; i++){
+            s0 += x[i] * y[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+    
+    /**
+     * Collects the non-zero frequencies of an entry, skipping markers with missing values.
+     */
+    private static final class NonZeroCollector implements AlleleFrequencyConsumer {
+        
+        private final int[] alleleMarkers;
+        private long[] missingMask;
+        private boolean store;
+        private int count;
+        private int[] alleles = new int[16];
+        private double[] frequencies = new double[16];
+
+        private NonZeroCollector(int[] alleleMarkers) {
+            this.alleleMarkers = alleleMarkers;
+        }
+        
+        private void reset(long[] missingMask, boolean store) {
+            this.missingMask = missingMask;
+            this.store = store;
+            count = 0;
+        }
+        
+        @Override
+        public void accept(int allele, double frequency) {
+            int m = alleleMarkers[allele];
+            if((missingMask[m >>> 6] & (1L << m)) == 0){
+                if(store){
+                    if(count == alleles.length){
+                        alleles = Arrays.copyOf(alleles, 2 * count);
+                        frequencies = Arrays.copyOf(frequencies, 2 * count);
+                    }
+                    alleles[count] = allele;
+                    frequencies[count] = frequency;
+                }
+                count++;
+            }
+        }
+        
+    }
+    
+}
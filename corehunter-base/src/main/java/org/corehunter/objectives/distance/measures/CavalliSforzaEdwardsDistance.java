@@ -22,12 +22,16 @@ package org.corehunter.objectives.distance.measures;
 import org.corehunter.data.CoreHunterData;
 import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.data.GenotypeData;
+import org.corehunter.objectives.distance.cache.DistanceCache;
 
 /**
  * @author Guy Davenport, Herman De Beukelaer
  */
 public class CavalliSforzaEdwardsDistance extends AbstractDistanceMeasure {
     
+    // square roots of the allele frequencies of the most recently used data set
+    private volatile SquareRootFrequencyTable sqrtFrequencies;
+    
     @Override
     public double computeDistance(int idX, int idY, CoreHunterData data) {
         
@@ -35,31 +39,49 @@ public class CavalliSforzaEdwardsDistance extends AbstractDistanceMeasure {
             return 0.0;
         }
         
-        GenotypeData genotypes = data.getGenotypicData();
-        
-        if(genotypes == null){
-            throw new CoreHunterException("Genotypes are required for Cavalli-Sforza and Edwards distance.");
-        }
+        SquareRootFrequencyTable table = getSquareRootFrequencyTable(data);
         
-        int numberOfMarkers = genotypes.getNumberOfMarkers();
-        double sumSquareDiff = 0.0;
+        // frequencies available for both individuals (square roots precomputed)
+        double sumSquareDiff = table.sumOfSquaredDifferences(idX, idY);
         
-        for (int markerIndex = 0; markerIndex < numberOfMarkers; ++markerIndex) {
-            
-            if(genotypes.hasMissingValues(idX, markerIndex) || genotypes.hasMissingValues(idY, markerIndex)){
-                // missing frequencies in at least one individual
-                sumSquareDiff += missingValueContribution(2.0);
-            } else {
-                // frequencies available for both individuals
-                int numberOfAlleles = genotypes.getNumberOfAlleles(markerIndex);
-                for (int alleleIndex = 0; alleleIndex < numberOfAlleles; ++alleleIndex) {
-                    double pxla = genotypes.getAlleleFrequency(idX, markerIndex, alleleIndex);
-                    double pyla = genotypes.getAlleleFrequency(idY, markerIndex, alleleIndex);
-                    double diff = Math.sqrt(pxla) - Math.sqrt(pyla);
-                    sumSquareDiff += diff * diff;
+        return distance(table, sumSquareDiff, idX, idY);
+    }
+    
+    /**
+     * Computes all distances in a block at once, as a tiled matrix product of the square roots of the allele
+     * frequencies (see
+     * {@link AlleleFrequencyTable#sumsOfSquaredDifferences(int, int, int, int, boolean, double[][])}).
+     * Only pairs with a column ID smaller than the row ID are computed.
+     * 
+     * @param fromX first id of the row range (inclusive)
+     * @param toX last id of the row range (exclusive)
+     * @param fromY first id of the column range (inclusive)
+     * @param toY last id of the column range (exclusive)
+     * @param data data from which the distances are computed
+     * @param distances cache in which the computed distances are stored
+     */
+    @Override
+    protected void computeDistances(int fromX, int toX, int fromY, int toY,
+                                    CoreHunterData data, DistanceCache distances) {
+        SquareRootFrequencyTable table = getSquareRootFrequencyTable(data);
+        double[][] sums = new double[toX - fromX][toY - fromY];
+        table.sumsOfSquaredDifferences(fromX, toX, fromY, toY, true, sums);
+        for(int i = fromX; i < toX; i++){
+            for(int j = fromY; j < Math.min(toY, i); j++){
+                if(Double.isNaN(distances.get(i, j))){
+                    distances.put(i, j, distance(table, sums[i - fromX][j - fromY], i, j));
                 }
             }
-            
+        }
+    }
+    
+    private double distance(SquareRootFrequencyTable table, double sumSquareDiff, int idX, int idY){
+        
+        int numberOfMarkers = table.getNumberOfMarkers();
+        // missing frequencies in at least one individual
+        int numberOfMissingMarkers = table.getNumberOfMissingMarkers(idX, idY);
+        if(numberOfMissingMarkers > 0){
+            sumSquareDiff += numberOfMissingMarkers * missingValueContribution(2.0);
         }
 
         double distance = Math.sqrt(sumSquareDiff / (2*numberOfMarkers));
@@ -67,6 +89,25 @@ public class CavalliSforzaEdwardsDistance extends AbstractDistanceMeasure {
         return distance;
     }
     
+    private SquareRootFrequencyTable getSquareRootFrequencyTable(CoreHunterData data){
+        GenotypeData genotypes = data.getGenotypicData();
+        if(genotypes == null){
+            throw new CoreHunterException("Genotypes are required for Cavalli-Sforza and Edwards distance.");
+        }
+        SquareRootFrequencyTable table = sqrtFrequencies;
+        if(table == null || table.getGenotypes() != genotypes){
+            // share the allele frequencies with other measures that use the same registry
+            AlleleFrequencyTable frequencies = getDerivedData(
+                    data, AlleleFrequencyTable.class, () -> new AlleleFrequencyTable(genotypes)
+            );
+            table = getDerivedData(
+                    data, SquareRootFrequencyTable.class, () -> new SquareRootFrequencyTable(frequencies)
+            );
+            sqrtFrequencies = table;
+        }
+        return table;
+    }
+    
     @Override
     public String toString(){
         return "Cavalli Sforza and Edwards";
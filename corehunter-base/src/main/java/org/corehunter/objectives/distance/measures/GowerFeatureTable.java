@@ -0,0 +1,290 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.measures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import uno.informatics.data.Feature;
+import uno.informatics.data.Scale;
+import uno.informatics.data.dataset.FeatureData;
+import uno.informatics.data.dataset.FeatureDataRow;
+
+/**
+ * Columnar copy of phenotypic data, compiled once per data set to compute Gower distances. Features are
+ * stored in primitive columns according to their type. Interval and ratio scaled features, as well as ordinal
+ * features (represented by the index of each value in the ordered list of possible values), are stored as
+ * numeric columns with values divided by the range of the feature, so that the contribution of a feature to
+ * the distance reduces to an absolute difference. Nominal features are stored as integer codes, and binary
+ * features as bit sets. Each column has a bit set marking missing values (if any).
+ * 
+ * @author Herman De Beukelaer
+ */
+public class GowerFeatureTable {
+    
+    private final FeatureData phenotypes;
+    private final int numFeatures;
+    
+    // numeric features: scaled values per column
+    private final double[][] numeric;
+    private final long[][] numericMissing;
+    // nominal features: value codes per column
+    private final int[][] nominal;
+    private final long[][] nominalMissing;
+    // binary (asymmetric) features: values per column
+    private final long[][] binary;
+    private final long[][] binaryMissing;
+
+    /**
+     * Compile the given phenotypic data. The scale type of each feature determines how its values are stored.
+     * Interval and ratio scaled features should have a numeric data type and ordinal features should specify
+     * an ordered list of possible values.
+     * 
+     * @param phenotypes phenotypic data
+     * @throws IllegalArgumentException if any feature has an unsupported scale or data type
+     */
+    public GowerFeatureTable(FeatureData phenotypes) {
+        
+        this.phenotypes = phenotypes;
+        int n = phenotypes.getRowCount();
+        List<Feature> features = phenotypes.getFeatures();
+        numFeatures = features.size();
+        FeatureDataRow[] rows = new FeatureDataRow[n];
+        for(int i = 0; i < n; i++){
+            rows[i] = phenotypes.getRow(i);
+        }
+        
+        List<double[]> numericColumns = new ArrayList<>();
+        List<long[]> numericMissingColumns = new ArrayList<>();
+        List<int[]> nominalColumns = new ArrayList<>();
+        List<long[]> nominalMissingColumns = new ArrayList<>();
+        List<long[]> binaryColumns = new ArrayList<>();
+        List<long[]> binaryMissingColumns = new ArrayList<>();
+        
+        for(int k = 0; k < numFeatures; k++){
+            Scale scale = features.get(k).getMethod().getScale();
+            long[] missing = missingValues(rows, k);
+            switch (scale.getScaleType()) {
+                case NOMINAL:
+                    switch (scale.getDataType()) {
+                        case BOOLEAN:
+                            // assymetric binary
+                            binaryColumns.add(binaryValues(rows, k));
+                            binaryMissingColumns.add(missing);
+                            break;
+                        default:
+                            // default nominal
+                            nominalColumns.add(nominalCodes(rows, k));
+                            nominalMissingColumns.add(missing);
+                    }
+                    break;
+                case ORDINAL:
+                    if(scale.getValues().isEmpty()){
+                        throw new IllegalArgumentException(
+                                "Ordered list of possible values should be provided for scale type "
+                                + scale.getScaleType() + "."
+                        );
+                    }
+                    // treat indices in list of possible values as interval variables
+                    numericColumns.add(ordinalValues(rows, k, scale, scale.getValues().size()-1));
+                    numericMissingColumns.add(missing);
+                    break;
+                case INTERVAL:
+                case RATIO:
+                    switch (scale.getDataType()) {
+                        case BIG_DECIMAL:
+                        case BIG_INTEGER:
+                        case DOUBLE:
+                        case FLOAT:
+                        case INTEGER:
+                        case LONG:
+                        case SHORT:
+                            double range = scale.getMaximumValue().doubleValue()
+                                         - scale.getMinimumValue().doubleValue();
+                            numericColumns.add(rangedValues(rows, k, range));
+                            numericMissingColumns.add(missing);
+                            break;
+                        case BOOLEAN:
+                        case DATE:
+                        case STRING:
+                        case UNKNOWN:
+                        default:
+                            throw new IllegalArgumentException("Illegal data type " + scale.getDataType()
+                                                             + " for scale type " + scale.getScaleType());
+                    }
+                    break;
+                case NONE:
+                default:
+                    throw new IllegalArgumentException("Illegal scale type: " + scale.getScaleType());
+            }
+        }
+        
+        numeric = numericColumns.toArray(new double[0][]);
+        numericMissing = numericMissingColumns.toArray(new long[0][]);
+        nominal = nominalColumns.toArray(new int[0][]);
+        nominalMissing = nominalMissingColumns.toArray(new long[0][]);
+        binary = binaryColumns.toArray(new long[0][]);
+        binaryMissing = binaryMissingColumns.toArray(new long[0][]);
+        
+    }
+    
+    /**
+     * Get the phenotypic data from which the table has been compiled.
+     * 
+     * @return phenotypic data
+     */
+    public FeatureData getPhenotypes() {
+        return phenotypes;
+    }
+    
+    /**
+     * Get the number of features.
+     * 
+     * @return number of features
+     */
+    public int getNumberOfFeatures() {
+        return numFeatures;
+    }
+    
+    /**
+     * Compute the Gower distance between two items. Each feature with a missing value in any of both items
+     * contributes the given value, with weight one. Binary features are treated as asymmetric, i.e. they are
+     * ignored if the value is <code>false</code> for both items.
+     * 
+     * @param idX id of the first item
+     * @param idY id of the second item
+     * @param missingContribution contribution of a feature with missing values
+     * @return Gower distance
+     */
+    public double distance(int idX, int idY, double missingContribution) {
+        double distSum = 0.0;
+        int weightSum = numFeatures;
+        int numMissing = 0;
+        // numeric features
+        for(int c = 0; c < numeric.length; c++){
+            long[] missing = numericMissing[c];
+            if(missing != null && (isSet(missing, idX) || isSet(missing, idY))){
+                numMissing++;
+            } else {
+                double[] values = numeric[c];
+                distSum += Math.abs(values[idX] - values[idY]);
+            }
+        }
+        // nominal features
+        for(int c = 0; c < nominal.length; c++){
+            long[] missing = nominalMissing[c];
+            if(missing != null && (isSet(missing, idX) || isSet(missing, idY))){
+                numMissing++;
+            } else if(nominal[c][idX] != nominal[c][idY]){
+                distSum += 1.0;
+            }
+        }
+        // binary features
+        for(int c = 0; c < binary.length; c++){
+            long[] missing = binaryMissing[c];
+            if(missing != null && (isSet(missing, idX) || isSet(missing, idY))){
+                numMissing++;
+            } else {
+                boolean x = isSet(binary[c], idX);
+                boolean y = isSet(binary[c], idY);
+                if(x != y){
+                    distSum += 1.0;
+                } else if(!x){
+                    // both false: ignored
+                    weightSum--;
+                }
+            }
+        }
+        distSum += numMissing * missingContribution;
+        return distSum / weightSum;
+    }
+    
+    private static boolean isSet(long[] bits, int i){
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+    
+    private static long[] newBitSet(int n){
+        return new long[(n + 63) >>> 6];
+    }
+    
+    private static long[] missingValues(FeatureDataRow[] rows, int k){
+        long[] missing = null;
+        for(int i = 0; i < rows.length; i++){
+            if(rows[i].getValue(k) == null){
+                if(missing == null){
+                    missing = newBitSet(rows.length);
+                }
+                missing[i >>> 6] |= 1L << i;
+            }
+        }
+        return missing;
+    }
+    
+    private static long[] binaryValues(FeatureDataRow[] rows, int k){
+        long[] values = newBitSet(rows.length);
+        for(int i = 0; i < rows.length; i++){
+            if(Boolean.TRUE.equals(rows[i].getValue(k))){
+                values[i >>> 6] |= 1L << i;
+            }
+        }
+        return values;
+    }
+    
+    private static int[] nominalCodes(FeatureDataRow[] rows, int k){
+        Map<Object, Integer> codes = new HashMap<>();
+        int[] values = new int[rows.length];
+        for(int i = 0; i < rows.length; i++){
+            Object value = rows[i].getValue(k);
+            if(value != null){
+                values[i] = codes.computeIfAbsent(value, v -> codes.size());
+            }
+        }
+        return values;
+    }
+    
+    private static double[] ordinalValues(FeatureDataRow[] rows, int k, Scale scale, double range){
+        double[] values = new double[rows.length];
+        if(range > 0.0){
+            for(int i = 0; i < rows.length; i++){
+                Object value = rows[i].getValue(k);
+                if(value != null){
+                    // convert value to index in list of possible values
+                    values[i] = scale.indexOf(value) / range;
+                }
+            }
+        }
+        return values;
+    }
+    
+    private static double[] rangedValues(FeatureDataRow[] rows, int k, double range){
+        double[] values = new double[rows.length];
+        if(range > 0.0){
+            for(int i = 0; i < rows.length; i++){
+                Object value = rows[i].getValue(k);
+                if(value != null){
+                    values[i] = ((Number) value).doubleValue() / range;
+                }
+            }
+        }
+        return values;
+    }
+    
+}
@@ -22,12 +22,16 @@ package org.corehunter.objectives.distance.measures;
 import org.corehunter.data.CoreHunterData;
 import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.data.GenotypeData;
+import org.corehunter.objectives.distance.cache.DistanceCache;
 
 /**
  * @author Guy Davenport, Herman De Beukelaer
  */
 public class ModifiedRogersDistance extends AbstractDistanceMeasure {
     
+    // flat allele frequencies of the most recently used data set
+    private volatile AlleleFrequencyTable frequencies;
+    
     @Override
     public double computeDistance(int idX, int idY, CoreHunterData data) {
         
@@ -35,36 +39,66 @@ public class ModifiedRogersDistance extends AbstractDistanceMeasure {
             return 0.0;
         }
         
-        GenotypeData genotypes = data.getGenotypicData();
-        
-        if(genotypes == null){
-            throw new CoreHunterException("Genotypes are required for Modified Rogers distance.");
-        }
+        AlleleFrequencyTable table = getAlleleFrequencyTable(data);
         
-        int numberOfMarkers = genotypes.getNumberOfMarkers();
-        double sumSquareDiff = 0.0;
+        // frequencies available for both individuals
+        double sumSquareDiff = table.sumOfSquaredDifferences(idX, idY);
         
-        for (int markerIndex = 0; markerIndex < numberOfMarkers; ++markerIndex) {
-            
-            if(genotypes.hasMissingValues(idX, markerIndex) || genotypes.hasMissingValues(idY, markerIndex)){
-                // missing frequencies in at least one individual
-                sumSquareDiff += missingValueContribution(2.0);
-            } else {
-                // frequencies available for both individuals
-                int numberOfAlleles = genotypes.getNumberOfAlleles(markerIndex);
-                for (int alleleIndex = 0; alleleIndex < numberOfAlleles; ++alleleIndex) {
-                    double pxla = genotypes.getAlleleFrequency(idX, markerIndex, alleleIndex);
-                    double pyla = genotypes.getAlleleFrequency(idY, markerIndex, alleleIndex);
-                    sumSquareDiff += (pxla - pyla) * (pxla - pyla);
+        return distance(table, sumSquareDiff, idX, idY);
+    }
+    
+    /**
+     * Computes all distances in a block at once, as a tiled matrix product of the allele frequencies
+     * (see {@link AlleleFrequencyTable#sumsOfSquaredDifferences(int, int, int, int, boolean, double[][])}).
+     * Only pairs with a column ID smaller than the row ID are computed.
+     * 
+     * @param fromX first id of the row range (inclusive)
+     * @param toX last id of the row range (exclusive)
+     * @param fromY first id of the column range (inclusive)
+     * @param toY last id of the column range (exclusive)
+     * @param data data from which the distances are computed
+     * @param distances cache in which the computed distances are stored
+     */
+    @Override
+    protected void computeDistances(int fromX, int toX, int fromY, int toY,
+                                    CoreHunterData data, DistanceCache distances) {
+        AlleleFrequencyTable table = getAlleleFrequencyTable(data);
+        double[][] sums = new double[toX - fromX][toY - fromY];
+        table.sumsOfSquaredDifferences(fromX, toX, fromY, toY, true, sums);
+        for(int i = fromX; i < toX; i++){
+            for(int j = fromY; j < Math.min(toY, i); j++){
+                if(Double.isNaN(distances.get(i, j))){
+                    distances.put(i, j, distance(table, sums[i - fromX][j - fromY], i, j));
                 }
             }
-            
+        }
+    }
+    
+    private double distance(AlleleFrequencyTable table, double sumSquareDiff, int idX, int idY){
+        
+        int numberOfMarkers = table.getNumberOfMarkers();
+        // missing frequencies in at least one individual
+        int numberOfMissingMarkers = table.getNumberOfMissingMarkers(idX, idY);
+        if(numberOfMissingMarkers > 0){
+            sumSquareDiff += numberOfMissingMarkers * missingValueContribution(2.0);
         }
 
         double distance = Math.sqrt(sumSquareDiff / (2*numberOfMarkers));
 
         return distance;
-
+    }
+    
+    private AlleleFrequencyTable getAlleleFrequencyTable(CoreHunterData data){
+        GenotypeData genotypes = data.getGenotypicData();
+        if(genotypes == null){
+            throw new CoreHunterException("Genotypes are required for Modified Rogers distance.");
+        }
+        AlleleFrequencyTable table = frequencies;
+        if(table == null || table.getGenotypes() != genotypes){
+            table = getDerivedData(data, AlleleFrequencyTable.class, () -> new AlleleFrequencyTable(genotypes));
+            frequencies = table;
+        }
+        return table;
     }
     
     @Override
@@ -0,0 +1,53 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.measures;
+
+import org.corehunter.data.GenotypeData;
+
+/**
+ * Table with the square roots of the allele frequencies of genotype data. Used by the Cavalli-Sforza and Edwards
+ * distance, which then reduces to a sum of squared differences between square roots. The frequencies are shared
+ * with an {@link AlleleFrequencyTable} and square roots are derived per tile of a bulk computation, so that the
+ * frequencies are only stored once when both tables are used for the same data.
+ * 
+ * @author Herman De Beukelaer
+ */
+public class SquareRootFrequencyTable extends AlleleFrequencyTable {
+
+    /**
+     * Create a table with the square roots of the allele frequencies of the given genotype data.
+     * 
+     * @param genotypes genotype data
+     */
+    public SquareRootFrequencyTable(GenotypeData genotypes) {
+        this(new AlleleFrequencyTable(genotypes));
+    }
+    
+    /**
+     * Create a table with the square roots of the allele frequencies stored in the given table,
+     * which are shared with that table.
+     * 
+     * @param frequencies table with the allele frequencies
+     */
+    public SquareRootFrequencyTable(AlleleFrequencyTable frequencies) {
+        super(frequencies, true);
+    }
+    
+}
@@ -0,0 +1,144 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.distance.measures.biallelic;
+
+import org.corehunter.data.BiAllelicGenotypeData;
+
+/**
+ * Bit-packed copy of the allele scores of bi-allelic genotype data, used to compute distances between entries
+ * with bitwise operations on 64 markers at a time. Each score is encoded with two bits, stored in two separate
+ * bit planes: a first bit indicating whether the score is at least one, and a second bit indicating whether the
+ * score equals two. A third bit plane marks missing scores. For every entry, the words of the three planes are
+ * interleaved in a single array.
+ * <p>
+ * For two entries, the bitwise XOR of the first and second planes indicate at which markers the scores differ
+ * in the respective bit. Scores differ by one exactly when one of both planes differs, and by two when both
+ * planes differ, so that the number of markers with each score difference is obtained with a population count.
+ * 
+ * @author Herman De Beukelaer
+ */
+public class AlleleScoreTable {
+    
+    private static final int PLANES = 3;
+    
+    private final BiAllelicGenotypeData genotypes;
+    private final int numMarkers;
+    // interleaved bit planes per entry: score >= 1, score == 2, missing
+    private final long[][] bits;
+
+    /**
+     * Create a bit-packed copy of the allele scores of the given genotype data.
+     * 
+     * @param genotypes bi-allelic genotype data
+     */
+    public AlleleScoreTable(BiAllelicGenotypeData genotypes) {
+        this.genotypes = genotypes;
+        int n = genotypes.getSize();
+        numMarkers = genotypes.getNumberOfMarkers();
+        int numWords = (numMarkers + 63) >>> 6;
+        bits = new long[n][PLANES * numWords];
+        for(int id = 0; id < n; id++){
+            long[] b = bits[id];
+            for(int m = 0; m < numMarkers; m++){
+                int w = PLANES * (m >>> 6);
+                long bit = 1L << m;
+                Integer score = genotypes.getAlleleScore(id, m);
+                if(score == null){
+                    b[w+2] |= bit;
+                } else {
+                    if(score < 0 || score > 2){
+                        throw new IllegalArgumentException(String.format(
+                                "Invalid allele score %d for item %d at marker %d (should be 0, 1 or 2).",
+                                score, id, m
+                        ));
+                    }
+                    if(score >= 1){
+                        b[w] |= bit;
+                    }
+                    if(score == 2){
+                        b[w+1] |= bit;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the genotype data from which the scores have been copied.
+     * 
+     * @return genotype data
+     */
+    public BiAllelicGenotypeData getGenotypes() {
+        return genotypes;
+    }
+    
+    /**
+     * Get the number of markers.
+     * 
+     * @return number of markers
+     */
+    public int getNumberOfMarkers() {
+        return numMarkers;
+    }
+    
+    /**
+     * Count the number of markers with a missing score in at least one of the two given entries.
+     * 
+     * @param idX id of the first entry
+     * @param idY id of the second entry
+     * @return number of markers with missing values in any of both entries
+     */
+    public int getNumberOfMissingMarkers(int idX, int idY) {
+        long[] x = bits[idX];
+        long[] y = bits[idY];
+        int count = 0;
+        for(int w = 2; w < x.length; w += PLANES){
+            count += Long.bitCount(x[w] | y[w]);
+        }
+        return count;
+    }
+    
+    /**
+     * Compute a weighted count of the score differences between two entries, across all markers without
+     * missing values in any of both entries. Each marker at which the scores differ by one contributes the
+     * first weight, and each marker at which the scores differ by two contributes the second weight.
+     * 
+     * @param idX id of the first entry
+     * @param idY id of the second entry
+     * @param weightOne contribution of a score difference of one
+     * @param weightTwo contribution of a score difference of two
+     * @return weighted count of score differences
+     */
+    public double weightedDifferences(int idX, int idY, double weightOne, double weightTwo) {
+        long[] x = bits[idX];
+        long[] y = bits[idY];
+        int diffOne = 0;
+        int diffTwo = 0;
+        for(int w = 0; w < x.length; w += PLANES){
+            long available = ~(x[w+2] | y[w+2]);
+            long u = (x[w] ^ y[w]) & available;
+            long v = (x[w+1] ^ y[w+1]) & available;
+            diffOne += Long.bitCount(u ^ v);
+            diffTwo += Long.bitCount(u & v);
+        }
+        return weightOne * diffOne + weightTwo * diffTwo;
+    }
+    
+}
@@ -19,14 +19,74 @@
 
 package org.corehunter.objectives.distance.measures.biallelic;
 
+import org.corehunter.data.BiAllelicGenotypeData;
 import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.GenotypeData;
+import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.objectives.distance.measures.AbstractDistanceMeasure;
 
+/**
+ * Cavalli-Sforza and Edwards distance for bi-allelic genotype data, computed from bit-packed allele scores.
+ * Yields the same distances as {@link org.corehunter.objectives.distance.measures.CavalliSforzaEdwardsDistance}
+ * applied to the allele frequencies inferred from the scores: a marker at which the scores differ by one
+ * or two contributes a squared difference of square root frequencies of <code>2 - sqrt(2)</code> or two,
+ * respectively.
+ * 
+ * @author Herman De Beukelaer
+ */
 public class CavalliSforzaEdwardsDistanceBiAllelic extends AbstractDistanceMeasure {
+    
+    // sum of squared differences of square root frequencies for a score difference of one and two
+    private static final double DIFF_ONE = 2.0 - Math.sqrt(2.0);
+    private static final double DIFF_TWO = 2.0;
+    
+    // bit-packed allele scores of the most recently used data set
+    private volatile AlleleScoreTable scores;
 
     @Override
     public double computeDistance(int idX, int idY, CoreHunterData data) {
-        throw new UnsupportedOperationException("Not supported yet.");
-    }
+        
+        if(idX == idY){
+            return 0.0;
+        }
+        
+        GenotypeData genotypes = data.getGenotypicData();
+        
+        if(!(genotypes instanceof BiAllelicGenotypeData)){
+            throw new CoreHunterException(
+                    "Bi-allelic genotypes are required for bi-allelic Cavalli-Sforza and Edwards distance."
+            );
+        }
+        
+        AlleleScoreTable table = getAlleleScoreTable(data, (BiAllelicGenotypeData) genotypes);
+        
+        int numberOfMarkers = table.getNumberOfMarkers();
+        // scores available for both individuals
+        double sumSquareDiff = table.weightedDifferences(idX, idY, DIFF_ONE, DIFF_TWO);
+        // missing scores in at least one individual
+        int numberOfMissingMarkers = table.getNumberOfMissingMarkers(idX, idY);
+        if(numberOfMissingMarkers > 0){
+            sumSquareDiff += numberOfMissingMarkers * missingValueContribution(2.0);
+        }
+
+        double distance = Math.sqrt(sumSquareDiff / (2*numberOfMarkers));
 
+        return distance;
+        
+    }
+    
+    private AlleleScoreTable getAlleleScoreTable(CoreHunterData data, BiAllelicGenotypeData genotypes){
+        AlleleScoreTable table = scores;
+        if(table == null || table.getGenotypes() != genotypes){
+            table = getDerivedData(data, AlleleScoreTable.class, () -> new AlleleScoreTable(genotypes));
+            scores = table;
+        }
+        return table;
+    }
+    
+    @Override
+    public String toString(){
+        return "Cavalli Sforza and Edwards";
+    }
+    
 }
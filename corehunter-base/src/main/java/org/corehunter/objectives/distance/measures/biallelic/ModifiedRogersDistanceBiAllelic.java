@@ -19,14 +19,73 @@
 
 package org.corehunter.objectives.distance.measures.biallelic;
 
+import org.corehunter.data.BiAllelicGenotypeData;
 import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.GenotypeData;
+import org.corehunter.exceptions.CoreHunterException;
 import org.corehunter.objectives.distance.measures.AbstractDistanceMeasure;
 
+/**
+ * Modified Rogers distance for bi-allelic genotype data, computed from bit-packed allele scores.
+ * Yields the same distances as {@link org.corehunter.objectives.distance.measures.ModifiedRogersDistance}
+ * applied to the allele frequencies inferred from the scores: a marker at which the scores differ by
+ * one or two contributes a squared frequency difference of one half or two, respectively.
+ * 
+ * @author Herman De Beukelaer
+ */
 public class ModifiedRogersDistanceBiAllelic extends AbstractDistanceMeasure {
+    
+    // sum of squared frequency differences for a score difference of one and two
+    private static final double DIFF_ONE = 0.5;
+    private static final double DIFF_TWO = 2.0;
+    
+    // bit-packed allele scores of the most recently used data set
+    private volatile AlleleScoreTable scores;
 
     @Override
     public double computeDistance(int idX, int idY, CoreHunterData data) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        
+        if(idX == idY){
+            return 0.0;
+        }
+        
+        GenotypeData genotypes = data.getGenotypicData();
+        
+        if(!(genotypes instanceof BiAllelicGenotypeData)){
+            throw new CoreHunterException(
+                    "Bi-allelic genotypes are required for bi-allelic Modified Rogers distance."
+            );
+        }
+        
+        AlleleScoreTable table = getAlleleScoreTable(data, (BiAllelicGenotypeData) genotypes);
+        
+        int numberOfMarkers = table.getNumberOfMarkers();
+        // scores available for both individuals
+        double sumSquareDiff = table.weightedDifferences(idX, idY, DIFF_ONE, DIFF_TWO);
+        // missing scores in at least one individual
+        int numberOfMissingMarkers = table.getNumberOfMissingMarkers(idX, idY);
+        if(numberOfMissingMarkers > 0){
+            sumSquareDiff += numberOfMissingMarkers * missingValueContribution(2.0);
+        }
+
+        double distance = Math.sqrt(sumSquareDiff / (2*numberOfMarkers));
+
+        return distance;
+        
+    }
+    
+    private AlleleScoreTable getAlleleScoreTable(CoreHunterData data, BiAllelicGenotypeData genotypes){
+        AlleleScoreTable table = scores;
+        if(table == null || table.getGenotypes() != genotypes){
+            table = getDerivedData(data, AlleleScoreTable.class, () -> new AlleleScoreTable(genotypes));
+            scores = table;
+        }
+        return table;
+    }
+    
+    @Override
+    public String toString(){
+        return "Modified Rogers";
     }
     
 }
@@ -22,153 +22,178 @@ package org.corehunter.objectives.eval;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
-import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
+import org.corehunter.data.AlleleFrequencyConsumer;
 import org.corehunter.data.GenotypeData;
+import org.corehunter.objectives.eval.UndoLog.IntField;
 
 /**
+ * Keeps track of the summed allele frequencies of a selection, from which the average genotype is inferred.
+ * Initially, the frequencies of all alleles are summed across the selected items (see
+ * {@link GenotypeData#sumAlleleFrequencies(int[], double[])}). When the selection is updated, only the
+ * non-zero frequencies of the added and removed items are added to and subtracted from the sums, in place (see
+ * {@link GenotypeData#forEachNonZeroAlleleFrequency(int, AlleleFrequencyConsumer)}). The cost of an update is
+ * therefore proportional to the number of non-zero frequencies of the swapped items, not to the total number
+ * of alleles.
+ * 
  * @author Herman De Beukelaer
  */
-public abstract class AllelicDiversityEvaluation implements Evaluation {
+public abstract class AllelicDiversityEvaluation extends MutableEvaluation {
 
-    // average genotype with missing values treated as zero
-    private final double[][] origAverageGenotype;
-    // average genotype after resolving missing values
-    private double[][] averageGenotype;
+    // genotype data
+    private final GenotypeData data;
+    // offset of the first allele of each marker (with one additional entry for the end of the last marker)
+    private final int[] alleleOffsets;
+    // marker of each allele
+    private final int[] alleleMarkers;
+    // summed frequency of each allele across the selected items (missing values treated as zero)
+    private final double[] alleleSums;
     // number of selected items in core collection
-    private final int numSelected;
+    private int numSelected;
+    private final IntField numSelectedField = n -> numSelected = n;
+    // update the sums when items are added/removed
+    private final AlleleFrequencyConsumer addFrequency;
+    private final AlleleFrequencyConsumer subtractFrequency;
     
     /**
      * Initialize evaluation based on IDs of selected items.
-     * Computes and stores the average genotype of the selection.
+     * Computes and stores the summed allele frequencies of the selection.
      * 
      * @param ids IDs of selected items
      * @param data genotype variant data
      */
     public AllelicDiversityEvaluation(Collection<Integer> ids, GenotypeData data){
         
+        this.data = data;
         numSelected = ids.size();
         
-        // infer average genotype (missing values treated as zero)
+        // store allele offsets
         int numMarkers = data.getNumberOfMarkers();
-        origAverageGenotype = new double[numMarkers][];
+        alleleOffsets = new int[numMarkers + 1];
+        for(int m = 0; m <= numMarkers; m++){
+            alleleOffsets[m] = data.getAlleleOffset(m);
+        }
+        alleleMarkers = new int[alleleOffsets[numMarkers]];
         for(int m = 0; m < numMarkers; m++){
-            int numAlleles = data.getNumberOfAlleles(m);
-            origAverageGenotype[m] = new double[numAlleles];
-            if(numSelected > 0){
-                for(int a = 0; a < numAlleles; a++){
-                    double freqSum = 0.0;
-                    for(int id : ids){
-                        freqSum += frequency(data, id, m, a);
-                    }
-                    double avgFreq = freqSum/numSelected;
-                    origAverageGenotype[m][a] = avgFreq;
-                }
-            }
+            Arrays.fill(alleleMarkers, alleleOffsets[m], alleleOffsets[m+1], m);
         }
         
-        // modify average genotype to take into account missing values
-        resolveMissingValues();
+        // sum allele frequencies (missing values treated as zero)
+        alleleSums = new double[alleleOffsets[numMarkers]];
+        if(!ids.isEmpty()){
+            int[] sortedIDs = ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+            data.sumAlleleFrequencies(sortedIDs, alleleSums);
+        }
+        
+        addFrequency = (a, freq) -> set(alleleSums, a, alleleSums[a] + freq);
+        subtractFrequency = (a, freq) -> set(alleleSums, a, alleleSums[a] - freq);
                 
     }
     
     /**
-     * Infer a modified evaluation by removing and/or adding some items from/to the selection.
-     * EFficiently updates the average genotype based on that from the current selection.
+     * Update the summed allele frequencies based on the added and removed items.
      * 
-     * @param curEval current evaluation
      * @param add IDs of added items
      * @param remove IDs of removed items
-     * @param data genotype variant data
      */
-    public AllelicDiversityEvaluation(AllelicDiversityEvaluation curEval,
-                                      Set<Integer> add, Set<Integer> remove,
-                                      GenotypeData data){
-        
-        int origNumSelected = curEval.numSelected;
-        numSelected = origNumSelected + add.size() - remove.size();
-        
-        if(numSelected == 0){
-            // new selection is empty: set all average frequencies to zero
-            origAverageGenotype = init2Darray(curEval.origAverageGenotype);
-        } else {
-            
-            // new selection is not empty: update average genotype
-            
-            // copy original average genotype with missing values treated as zero
-            origAverageGenotype = copy2Darray(curEval.origAverageGenotype);
-
-            // update average genotype based on added/removed items
-            for(int m = 0; m < origAverageGenotype.length; m++){
-                for(int a = 0; a < origAverageGenotype[m].length; a++){
-                    // undo average (only if current selection was not empty)
-                    if(origNumSelected > 0) {
-                        origAverageGenotype[m][a] *= origNumSelected;
-                    }
-                    // add
-                    for(int id : add){
-                        origAverageGenotype[m][a] += frequency(data, id, m, a);
-                    }
-                    // remove
-                    for(int id : remove){
-                        origAverageGenotype[m][a] -= frequency(data, id, m, a);
-                    }
-                    // redo average
-                    origAverageGenotype[m][a] /= numSelected;
+    @Override
+    protected void update(Set<Integer> add, Set<Integer> remove){
+        int newSize = numSelected + add.size() - remove.size();
+        recordInt(numSelectedField, numSelected);
+        numSelected = newSize;
+        if(newSize == 0){
+            // new selection is empty: set all sums to zero
+            for(int a = 0; a < alleleSums.length; a++){
+                if(alleleSums[a] != 0.0){
+                    set(alleleSums, a, 0.0);
                 }
             }
-            
+        } else {
+            // update sums based on added/removed items
+            for(int id : add){
+                data.forEachNonZeroAlleleFrequency(id, addFrequency);
+            }
+            for(int id : remove){
+                data.forEachNonZeroAlleleFrequency(id, subtractFrequency);
+            }
         }
-        
-        // modify average genotype to take into account missing values
-        resolveMissingValues();
-        
     }
     
-    private double frequency(GenotypeData data, int id, int m, int a){
-        Double freq = data.getAlleleFrequency(id, m, a);
-        return freq == null ? 0.0 : freq;
+    /**
+     * Get the genotype data.
+     * 
+     * @return genotype data
+     */
+    protected GenotypeData getData(){
+        return data;
     }
     
-    private void resolveMissingValues(){
-        if(numSelected > 0){
-            // resolve missing values by increasing the highest frequency
-            // per marker so that its allele frequencies sum to one
-            averageGenotype = copy2Darray(origAverageGenotype);
-            for (int m = 0; m < averageGenotype.length; m++) {
-                // find and increase highest frequency
-                double[] alleleFreqs = averageGenotype[m];
-                int mostCommonAllele = 0;
-                double mostCommonAlleleFreq = alleleFreqs[0];
-                double freqSum = alleleFreqs[0];
-                for (int a = 1; a < alleleFreqs.length; a++) {
-                    freqSum += alleleFreqs[a];
-                    if (alleleFreqs[a] > mostCommonAlleleFreq) {
-                        mostCommonAllele = a;
-                        mostCommonAlleleFreq = alleleFreqs[a];
-                    }
-                }
-                alleleFreqs[mostCommonAllele] += (1.0 - freqSum); 
-            }
-        } else {
-            // empty selection: set all frequencies to zero
-            averageGenotype = init2Darray(origAverageGenotype);
-        }
+    /**
+     * Get the number of markers.
+     * 
+     * @return number of markers
+     */
+    protected int getNumberOfMarkers(){
+        return alleleOffsets.length - 1;
     }
-        
-    private double[][] init2Darray(double[][] template){
-        double[][] array = new double[template.length][];
-        for(int i = 0; i < array.length; i++){
-            array[i] = new double[template[i].length];
-        }
-        return array;
+    
+    /**
+     * Get the total number of alleles across all markers.
+     * 
+     * @return total number of alleles
+     */
+    protected int getTotalNumberOfAlleles(){
+        return alleleMarkers.length;
     }
     
-    private double[][] copy2Darray(double[][] toCopy){
-        double[][] copy = new double[toCopy.length][];
-        for(int i = 0; i < copy.length; i++){
-            copy[i] = Arrays.copyOf(toCopy[i], toCopy[i].length);
+    /**
+     * Get the number of alleles of a marker.
+     * 
+     * @param m marker index
+     * @return number of alleles
+     */
+    protected int getNumberOfAlleles(int m){
+        return alleleOffsets[m+1] - alleleOffsets[m];
+    }
+    
+    /**
+     * Get the marker of an allele.
+     * 
+     * @param allele global allele index (see {@link GenotypeData#getAlleleOffset(int)})
+     * @return marker index
+     */
+    protected int getMarker(int allele){
+        return alleleMarkers[allele];
+    }
+    
+    /**
+     * Get the average frequencies of the alleles of the given marker in the selection. Missing values are
+     * resolved by increasing the highest frequency so that the allele frequencies sum to one (worst case
+     * approach with minimal diversity). If the selection is empty all average frequencies are zero.
+     * 
+     * @param m marker index
+     * @param alleleFreqs array in which the average allele frequencies of the marker are stored,
+     *                    with a length of at least the number of alleles of the marker
+     */
+    protected void getAverageFrequencies(int m, double[] alleleFreqs){
+        int from = alleleOffsets[m];
+        int numAlleles = alleleOffsets[m+1] - from;
+        int n = getNumSelected();
+        if(n > 0){
+            // compute average and find highest frequency
+            int mostCommonAllele = 0;
+            double freqSum = 0.0;
+            for (int a = 0; a < numAlleles; a++) {
+                alleleFreqs[a] = alleleSums[from + a] / n;
+                freqSum += alleleFreqs[a];
+                if (alleleFreqs[a] > alleleFreqs[mostCommonAllele]) {
+                    mostCommonAllele = a;
+                }
+            }
+            // resolve missing values by increasing the highest frequency
+            alleleFreqs[mostCommonAllele] += (1.0 - freqSum);
+        } else {
+            Arrays.fill(alleleFreqs, 0, numAlleles, 0.0);
         }
-        return copy;
     }
     
     /**
@@ -180,7 +205,12 @@ public abstract class AllelicDiversityEvaluation implements Evaluation {
      * @return average genotype
      */
     public double[][] getAverageGenotype(){
-        return averageGenotype;
+        double[][] avgGeno = new double[getNumberOfMarkers()][];
+        for(int m = 0; m < avgGeno.length; m++){
+            avgGeno[m] = new double[getNumberOfAlleles(m)];
+            getAverageFrequencies(m, avgGeno[m]);
+        }
+        return avgGeno;
     }
     
     public int getNumSelected(){
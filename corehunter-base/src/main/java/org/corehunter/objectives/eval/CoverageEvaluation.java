@@ -21,43 +21,117 @@ package org.corehunter.objectives.eval;
 
 import java.util.Collection;
 import java.util.Set;
+import org.corehunter.data.AlleleFrequencyConsumer;
 import org.corehunter.data.GenotypeData;
+import org.corehunter.objectives.eval.UndoLog.IntField;
 
 /**
+ * Keeps track of the number of selected items that carry each allele (with a non-zero frequency), and of the
+ * number of covered alleles. After resolving missing values, an allele is present in the average genotype if
+ * and only if it is carried by a selected item, except for markers without carried alleles, where the first
+ * allele is assigned a frequency of one. An update only changes the counts of the alleles carried by the added
+ * and removed items, so that the value is obtained in constant time.
+ * 
  * @author Herman De Beukelaer
  */
 public class CoverageEvaluation extends AllelicDiversityEvaluation {
 
-    private static final double TOL = 1e-10;
+    // number of selected items that carry each allele
+    private final int[] carriers;
+    // number of carried alleles per marker
+    private final int[] carriedAlleles;
+    // number of covered alleles of a non-empty selection, i.e. the sum of the number of carried alleles
+    // per marker, at least one
+    private int coveredAlleles;
+    private final IntField coveredAllelesField = c -> coveredAlleles = c;
+    // updates the counts when items are added/removed
+    private final CarrierUpdate carrierUpdate;
     
     public CoverageEvaluation(Collection<Integer> ids, GenotypeData data) {
         super(ids, data);
+        // count carriers
+        carriers = new int[getTotalNumberOfAlleles()];
+        for(int id : ids){
+            data.forEachNonZeroAlleleFrequency(id, (a, freq) -> carriers[a]++);
+        }
+        // count carried and covered alleles
+        carriedAlleles = new int[getNumberOfMarkers()];
+        for(int a = 0; a < carriers.length; a++){
+            if(carriers[a] > 0){
+                carriedAlleles[getMarker(a)]++;
+            }
+        }
+        coveredAlleles = 0;
+        for(int c : carriedAlleles){
+            coveredAlleles += Math.max(1, c);
+        }
+        carrierUpdate = new CarrierUpdate();
     }
-
-    public CoverageEvaluation(AllelicDiversityEvaluation curEval,
-                              Set<Integer> add, Set<Integer> remove,
-                              GenotypeData data) {
-        super(curEval, add, remove, data);
+    
+    /**
+     * Update the counts for the alleles carried by the added and removed items.
+     * 
+     * @param add IDs of added items
+     * @param remove IDs of removed items
+     */
+    @Override
+    protected void update(Set<Integer> add, Set<Integer> remove) {
+        super.update(add, remove);
+        carrierUpdate.increment = true;
+        for(int id : add){
+            getData().forEachNonZeroAlleleFrequency(id, carrierUpdate);
+        }
+        carrierUpdate.increment = false;
+        for(int id : remove){
+            getData().forEachNonZeroAlleleFrequency(id, carrierUpdate);
+        }
     }
     
     @Override
     public double getValue() {
-        double[][] avgGeno = getAverageGenotype();
+        if(getNumSelected() == 0){
+            // empty selection
+            return 0.0;
+        }
+        return (double) coveredAlleles / getTotalNumberOfAlleles();
+    }
+    
+    /**
+     * Updates the counts when an allele is gained or lost by a selected item.
+     */
+    private final class CarrierUpdate implements AlleleFrequencyConsumer {
         
-        int numberOfMarkers = avgGeno.length;
-        int totalNumberOfAlleles = 0;
-        int alleleCount = 0;
-        for(int m = 0; m < numberOfMarkers; m++){
-            int numberOfAlleles = avgGeno[m].length;
-            totalNumberOfAlleles += numberOfAlleles;
-            for(int a = 0; a < numberOfAlleles; a++){
-                if(avgGeno[m][a] > TOL){
-                    alleleCount++;
+        private boolean increment;
+        
+        @Override
+        public void accept(int allele, double frequency) {
+            int count = carriers[allele];
+            int m = getMarker(allele);
+            if(increment){
+                set(carriers, allele, count + 1);
+                if(count == 0){
+                    // newly carried allele (covered unless it is the first at this marker)
+                    int carried = carriedAlleles[m];
+                    set(carriedAlleles, m, carried + 1);
+                    if(carried >= 1){
+                        recordInt(coveredAllelesField, coveredAlleles);
+                        coveredAlleles++;
+                    }
+                }
+            } else {
+                set(carriers, allele, count - 1);
+                if(count == 1){
+                    // allele no longer carried (still covered if it was the last at this marker)
+                    int carried = carriedAlleles[m];
+                    set(carriedAlleles, m, carried - 1);
+                    if(carried >= 2){
+                        recordInt(coveredAllelesField, coveredAlleles);
+                        coveredAlleles--;
+                    }
                 }
             }
         }
-
-        return ((double) alleleCount) / totalNumberOfAlleles;
+        
     }
 
 }
@@ -20,22 +20,30 @@
 package org.corehunter.objectives.eval;
 
 import java.util.Collection;
-import java.util.Set;
 import org.corehunter.data.GenotypeData;
 
 /**
+ * Expected proportion of heterozygous loci in offspring, computed as the average of
+ * <code>1 - sum(p^2)</code> across all markers, where <code>p</code> are the average
+ * allele frequencies of a marker. The terms of affected markers are recomputed when
+ * the selection is updated.
+ * 
  * @author Herman De Beukelaer
  */
-public class HeterozygousLociEvaluation extends AllelicDiversityEvaluation {
+public class HeterozygousLociEvaluation extends MarkerTermsEvaluation {
     
     public HeterozygousLociEvaluation(Collection<Integer> ids, GenotypeData data) {
         super(ids, data);
     }
-
-    public HeterozygousLociEvaluation(AllelicDiversityEvaluation curEval,
-                              Set<Integer> add, Set<Integer> remove,
-                              GenotypeData data) {
-        super(curEval, add, remove, data);
+    
+    @Override
+    protected double computeTerm(double[] averageFrequencies, int numAlleles) {
+        double summedAverageAlleleFrequencySquared = 0.0;
+        for (int a = 0; a < numAlleles; a++) {
+            double freq = averageFrequencies[a];
+            summedAverageAlleleFrequencySquared += freq * freq;
+        }
+        return 1.0 - summedAverageAlleleFrequencySquared;
     }
     
     @Override
@@ -44,19 +52,8 @@ public class HeterozygousLociEvaluation extends AllelicDiversityEvaluation {
             // empty selection
             return 0.0;
         } else {
-            double[][] avgGeno = getAverageGenotype();
-            // compute expected proportion of heterozygous loci in offspring
-            double total = 0.0;
-            int numberOfMarkers = avgGeno.length;
-            for (int m = 0; m < numberOfMarkers; m++) {
-                int numberOfAlleles = avgGeno[m].length;
-                double summedAverageAlleleFrequencySquared = 0.0;
-                for (int a = 0; a < numberOfAlleles; a++) {
-                    summedAverageAlleleFrequencySquared += avgGeno[m][a] * avgGeno[m][a];
-                }
-                total += (1.0 - summedAverageAlleleFrequencySquared);
-            }
-            return total/numberOfMarkers;
+            // expected proportion of heterozygous loci in offspring
+            return getTotal() / getNumberOfMarkers();
         }
     }
 
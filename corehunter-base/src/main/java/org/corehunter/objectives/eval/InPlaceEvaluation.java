@@ -0,0 +1,167 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.eval;
+
+import java.util.Set;
+import java.util.function.Supplier;
+import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
+
+/**
+ * Evaluation of a selection backed by a {@link MutableEvaluation} that is shared with the evaluations from which
+ * it was derived. A delta evaluation ({@link #derive(Set, Set, Supplier)}) temporarily applies the move to the
+ * shared mutable evaluation to obtain the new value, and immediately undoes it. The derived evaluation only stores
+ * this value together with the move, so that evaluating a move that is rejected by the search does not copy any
+ * state. A move is applied in place only when the derived evaluation is itself used as the base of a delta
+ * evaluation, i.e. after the search has accepted the move. The changes made by the most recently applied move are
+ * kept in an undo log, so that its base evaluation can still be restored. If the shared state can not be restored
+ * for an older evaluation, it is computed again from scratch.
+ * <p>
+ * All evaluations derived (directly or indirectly) from the same full evaluation share a single lock, which guards
+ * their mutable fields as well as all shared mutable evaluations in this tree, including those that replace an
+ * earlier one after evaluating from scratch. Evaluations can therefore safely be used from different threads, e.g.
+ * when solutions are swapped between the replicas of a parallel search.
+ * 
+ * @param <E> type of mutable evaluation
+ * @author Herman De Beukelaer
+ */
+public final class InPlaceEvaluation<E extends MutableEvaluation> implements Evaluation {
+
+    // value of the evaluated selection
+    private final double value;
+    // lock shared by all evaluations derived from the same full evaluation, which guards all fields below
+    private final Object lock;
+    // shared mutable evaluation
+    private Shared<E> shared;
+    // evaluation from which this evaluation was derived, and the applied move (until it is applied in place)
+    private InPlaceEvaluation<E> base;
+    private Set<Integer> added;
+    private Set<Integer> removed;
+    
+    /**
+     * Wrap a full evaluation of a selection.
+     * 
+     * @param evaluation mutable evaluation of the selection
+     */
+    public InPlaceEvaluation(E evaluation){
+        value = evaluation.getValue();
+        lock = new Object();
+        shared = new Shared<>(evaluation, this);
+    }
+    
+    private InPlaceEvaluation(InPlaceEvaluation<E> base, Set<Integer> add, Set<Integer> remove, double value){
+        this.value = value;
+        this.lock = base.lock;
+        this.shared = base.shared;
+        this.base = base;
+        this.added = add;
+        this.removed = remove;
+    }
+    
+    /**
+     * Evaluate the selection obtained by adding and/or removing some items to/from this selection.
+     * 
+     * @param add IDs of added items
+     * @param remove IDs of removed items
+     * @param evaluate computes a full mutable evaluation of this selection, only called if it can
+     *                 not be restored from the shared mutable evaluation
+     * @return evaluation of the modified selection
+     */
+    public InPlaceEvaluation<E> derive(Set<Integer> add, Set<Integer> remove, Supplier<? extends E> evaluate){
+        synchronized(lock){
+            if(!restore(shared)){
+                // evaluate from scratch
+                shared = new Shared<>(evaluate.get(), this);
+                base = null;
+                added = null;
+                removed = null;
+            }
+            return trial(shared, add, remove);
+        }
+    }
+    
+    // make the shared mutable evaluation correspond to this evaluation, if possible (lock is held by caller)
+    private boolean restore(Shared<E> s){
+        if(s.owner == this){
+            return true;
+        }
+        if(s.previous == this){
+            // undo most recently applied move
+            s.log.undo();
+            s.owner = this;
+            s.previous = null;
+            return true;
+        }
+        if(base != null && base.shared == s && base.restore(s)){
+            // apply move in place (keep log to undo it)
+            s.log.clear();
+            s.evaluation.apply(added, removed, s.log);
+            s.owner = this;
+            s.previous = base;
+            base = null;
+            added = null;
+            removed = null;
+            return true;
+        }
+        return false;
+    }
+    
+    // evaluate a move by temporarily applying it (lock is held by caller)
+    private InPlaceEvaluation<E> trial(Shared<E> s, Set<Integer> add, Set<Integer> remove){
+        double newValue;
+        try {
+            s.evaluation.apply(add, remove, s.trial);
+            newValue = s.evaluation.getValue();
+        } finally {
+            s.trial.undo();
+        }
+        return new InPlaceEvaluation<>(this, add, remove, newValue);
+    }
+    
+    @Override
+    public double getValue() {
+        return value;
+    }
+    
+    /**
+     * Mutable evaluation shared by derived evaluations. All fields are guarded by the lock of these evaluations.
+     */
+    private static final class Shared<E extends MutableEvaluation> {
+        
+        private final E evaluation;
+        // evaluation to which the mutable evaluation currently corresponds
+        private InPlaceEvaluation<E> owner;
+        // base evaluation of the most recently applied move (restored by undoing the log)
+        private InPlaceEvaluation<E> previous;
+        // changes made by the most recently applied move
+        private final UndoLog log;
+        // changes made by the move that is being evaluated
+        private final UndoLog trial;
+
+        private Shared(E evaluation, InPlaceEvaluation<E> owner) {
+            this.evaluation = evaluation;
+            this.owner = owner;
+            previous = null;
+            log = new UndoLog();
+            trial = new UndoLog();
+        }
+        
+    }
+    
+}
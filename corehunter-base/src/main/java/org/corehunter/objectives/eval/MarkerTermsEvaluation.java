@@ -0,0 +1,199 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.eval;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import org.corehunter.data.AlleleFrequencyConsumer;
+import org.corehunter.data.GenotypeData;
+import org.corehunter.objectives.eval.UndoLog.DoubleField;
+import org.corehunter.objectives.eval.UndoLog.IntField;
+
+/**
+ * Allelic diversity evaluation with a value that is computed from the sum of independent terms per marker,
+ * each of which only depends on the average allele frequencies at that marker. The terms are stored together
+ * with their running total. If the size of the selection does not change, an update only recomputes the terms
+ * of the markers at which the added or removed items carry alleles, as the average frequencies of all other
+ * markers are not affected. If the size of the selection changes, all terms are recomputed.
+ * 
+ * @author Herman De Beukelaer
+ */
+public abstract class MarkerTermsEvaluation extends AllelicDiversityEvaluation {
+    
+    // term of each marker
+    private final double[] terms;
+    // sum of all terms
+    private double total;
+    private final DoubleField totalField = t -> total = t;
+    // number of terms updated since the total was last summed, to limit accumulation of rounding errors
+    private int numUpdates;
+    private final IntField numUpdatesField = n -> numUpdates = n;
+    // average allele frequencies of the marker of which the term is being computed
+    private final double[] averageFrequencies;
+    // collects the markers affected by an update
+    private final MarkerCollector affectedMarkers;
+    
+    /**
+     * Initialize evaluation based on IDs of selected items.
+     * Computes and stores the term of each marker.
+     * 
+     * @param ids IDs of selected items
+     * @param data genotype variant data
+     */
+    public MarkerTermsEvaluation(Collection<Integer> ids, GenotypeData data) {
+        super(ids, data);
+        int numMarkers = getNumberOfMarkers();
+        int maxAlleles = 0;
+        for(int m = 0; m < numMarkers; m++){
+            maxAlleles = Math.max(maxAlleles, getNumberOfAlleles(m));
+        }
+        averageFrequencies = new double[maxAlleles];
+        affectedMarkers = new MarkerCollector(numMarkers);
+        terms = new double[numMarkers];
+        for(int m = 0; m < numMarkers; m++){
+            terms[m] = computeTerm(m);
+        }
+        total = sumTerms();
+        numUpdates = 0;
+    }
+    
+    /**
+     * Update the summed allele frequencies and the terms of the affected markers.
+     * Only recomputes the terms of affected markers if the size of the selection does not change.
+     * 
+     * @param add IDs of added items
+     * @param remove IDs of removed items
+     */
+    @Override
+    protected void update(Set<Integer> add, Set<Integer> remove) {
+        int curSize = getNumSelected();
+        super.update(add, remove);
+        if(getNumSelected() != curSize){
+            // average frequencies of all markers change
+            for(int m = 0; m < terms.length; m++){
+                set(terms, m, computeTerm(m));
+            }
+            setTotal(sumTerms(), 0);
+        } else {
+            // recompute terms of markers at which added/removed items carry alleles
+            affectedMarkers.clear();
+            for(int id : add){
+                getData().forEachNonZeroAlleleFrequency(id, affectedMarkers);
+            }
+            for(int id : remove){
+                getData().forEachNonZeroAlleleFrequency(id, affectedMarkers);
+            }
+            double newTotal = total;
+            for(int i = 0; i < affectedMarkers.count; i++){
+                int m = affectedMarkers.markers[i];
+                double term = computeTerm(m);
+                newTotal += term - terms[m];
+                set(terms, m, term);
+            }
+            if(numUpdates + affectedMarkers.count > terms.length){
+                // sum all terms again to discard accumulated rounding errors
+                setTotal(sumTerms(), 0);
+            } else {
+                setTotal(newTotal, numUpdates + affectedMarkers.count);
+            }
+        }
+    }
+    
+    private void setTotal(double newTotal, int newNumUpdates){
+        recordDouble(totalField, total);
+        total = newTotal;
+        recordInt(numUpdatesField, numUpdates);
+        numUpdates = newNumUpdates;
+    }
+    
+    /**
+     * Compute the term of a marker.
+     * 
+     * @param averageFrequencies average allele frequencies at the marker, after resolving missing values
+     *                           (see {@link #getAverageFrequencies(int, double[])}), stored in the first
+     *                           <code>numAlleles</code> entries of the array
+     * @param numAlleles number of alleles of the marker
+     * @return term of the marker
+     */
+    protected abstract double computeTerm(double[] averageFrequencies, int numAlleles);
+    
+    private double computeTerm(int m) {
+        getAverageFrequencies(m, averageFrequencies);
+        return computeTerm(averageFrequencies, getNumberOfAlleles(m));
+    }
+    
+    /**
+     * Get the sum of the terms of all markers.
+     * 
+     * @return sum of all terms
+     */
+    protected double getTotal() {
+        return total;
+    }
+    
+    private double sumTerms() {
+        double sum = 0.0;
+        for(double t : terms){
+            sum += t;
+        }
+        return sum;
+    }
+    
+    /**
+     * Collects the distinct markers of the visited alleles, in a buffer that is reused across updates.
+     */
+    private final class MarkerCollector implements AlleleFrequencyConsumer {
+        
+        // collected markers
+        private final int[] markers;
+        private int count;
+        // stamp of the update in which each marker was last collected
+        private final int[] stamps;
+        private int stamp;
+
+        private MarkerCollector(int numMarkers) {
+            markers = new int[numMarkers];
+            count = 0;
+            stamps = new int[numMarkers];
+            stamp = 0;
+        }
+        
+        private void clear(){
+            count = 0;
+            if(stamp == Integer.MAX_VALUE){
+                Arrays.fill(stamps, 0);
+                stamp = 0;
+            }
+            stamp++;
+        }
+
+        @Override
+        public void accept(int allele, double frequency) {
+            int m = getMarker(allele);
+            if(stamps[m] != stamp){
+                stamps[m] = stamp;
+                markers[count++] = m;
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,119 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.eval;
+
+import java.util.Set;
+import org.corehunter.objectives.eval.UndoLog.DoubleField;
+import org.corehunter.objectives.eval.UndoLog.IntField;
+import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
+
+/**
+ * Evaluation of a selection that is updated in place when items are added to or removed from the selection.
+ * All changes made during an update are recorded in an {@link UndoLog}, so that the update can be undone.
+ * Subclasses keep their state in primitive arrays, which are only changed through {@link #set(double[], int, double)}
+ * and {@link #set(int[], int, int)}, and in primitive scalar fields, of which the previous value is recorded with
+ * {@link #recordDouble(DoubleField, double)} or {@link #recordInt(IntField, int)} before the field is assigned.
+ * Mutable evaluations are not handed to a search directly; they are wrapped in an {@link InPlaceEvaluation} which
+ * decides when to apply and undo updates.
+ * 
+ * @author Herman De Beukelaer
+ */
+public abstract class MutableEvaluation implements Evaluation {
+    
+    // log of the update in progress
+    private UndoLog log;
+    
+    /**
+     * Add and/or remove some items to/from the selection, and record all changes in the given log.
+     * 
+     * @param add IDs of added items
+     * @param remove IDs of removed items
+     * @param log log in which all changes are recorded
+     */
+    final void apply(Set<Integer> add, Set<Integer> remove, UndoLog log){
+        this.log = log;
+        try {
+            update(add, remove);
+        } finally {
+            this.log = null;
+        }
+    }
+    
+    /**
+     * Update the evaluation when some items are added to and/or removed from the selection.
+     * 
+     * @param add IDs of added items
+     * @param remove IDs of removed items
+     */
+    protected abstract void update(Set<Integer> add, Set<Integer> remove);
+    
+    /**
+     * Set an array entry, recording its previous value if an update is in progress.
+     * 
+     * @param array array
+     * @param index index of the entry
+     * @param value new value
+     */
+    protected final void set(double[] array, int index, double value){
+        if(log != null){
+            log.record(array, index);
+        }
+        array[index] = value;
+    }
+    
+    /**
+     * Set an integer array entry, recording its previous value if an update is in progress.
+     * 
+     * @param array array
+     * @param index index of the entry
+     * @param value new value
+     */
+    protected final void set(int[] array, int index, int value){
+        if(log != null){
+            log.record(array, index);
+        }
+        array[index] = value;
+    }
+    
+    /**
+     * Record the current value of a scalar field before it is changed, if an update is in progress.
+     * 
+     * @param field field through which the value is restored
+     * @param value current value of the field
+     */
+    protected final void recordDouble(DoubleField field, double value){
+        if(log != null){
+            log.recordDouble(field, value);
+        }
+    }
+    
+    /**
+     * Record the current value of an integer field before it is changed, if an update is in progress.
+     * 
+     * @param field field through which the value is restored
+     * @param value current value of the field
+     */
+    protected final void recordInt(IntField field, int value){
+        if(log != null){
+            log.recordInt(field, value);
+        }
+    }
+    
+}
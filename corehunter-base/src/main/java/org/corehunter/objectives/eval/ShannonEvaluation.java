@@ -20,41 +20,38 @@
 package org.corehunter.objectives.eval;
 
 import java.util.Collection;
-import java.util.Set;
 import org.corehunter.data.GenotypeData;
 
 /**
+ * Shannon's index, computed as the sum of the terms <code>-(p/M) log(p/M)</code> of all alleles with
+ * a non-zero average frequency <code>p</code>, where <code>M</code> is the number of markers. The
+ * terms are summed per marker and only recomputed for affected markers when the selection is updated.
+ * 
  * @author Herman De Beukelaer
  */
-public class ShannonEvaluation extends AllelicDiversityEvaluation {
+public class ShannonEvaluation extends MarkerTermsEvaluation {
     
     public ShannonEvaluation(Collection<Integer> ids, GenotypeData data) {
         super(ids, data);
     }
-
-    public ShannonEvaluation(AllelicDiversityEvaluation curEval,
-                              Set<Integer> add, Set<Integer> remove,
-                              GenotypeData data) {
-        super(curEval, add, remove, data);
-    }
     
     @Override
-    public double getValue() {
-        double[][] avgGeno = getAverageGenotype();
-        // compute Shannon's index
+    protected double computeTerm(double[] averageFrequencies, int numAlleles) {
+        int numberOfMarkers = getNumberOfMarkers();
         double sum = 0.0;
-        int numberOfMarkers = avgGeno.length;
-        for (int m = 0; m < numberOfMarkers; m++) {
-            int numberOfAlleles = avgGeno[m].length;
-            for (int a = 0; a < numberOfAlleles; a++) {
-                if (avgGeno[m][a] > 0.0) {
-                    double scaledFreq = avgGeno[m][a] / numberOfMarkers;
-                    sum += scaledFreq * Math.log(scaledFreq);
-                }
+        for (int a = 0; a < numAlleles; a++) {
+            double freq = averageFrequencies[a];
+            if (freq > 0.0) {
+                double scaledFreq = freq / numberOfMarkers;
+                sum += scaledFreq * Math.log(scaledFreq);
             }
-            
         }
-        return -sum;
+        return sum;
+    }
+    
+    @Override
+    public double getValue() {
+        return -getTotal();
     }
 
 }
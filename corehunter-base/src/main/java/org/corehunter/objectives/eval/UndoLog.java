@@ -0,0 +1,206 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.objectives.eval;
+
+import java.util.Arrays;
+
+/**
+ * Records the changes made to a {@link MutableEvaluation}, so that they can be undone. Changed array entries are
+ * stored as primitive values together with a reference to the array, and changed scalar fields as primitive values
+ * together with a {@link DoubleField} or {@link IntField} through which the previous value is restored. All
+ * changes are recorded in buffers that are reused after the log is cleared, so that recording the changes of an
+ * update does not allocate any objects once the buffers are large enough.
+ * 
+ * @author Herman De Beukelaer
+ */
+public final class UndoLog {
+    
+    private static final int INITIAL_CAPACITY = 64;
+    
+    // kinds of recorded changes
+    private static final byte DOUBLE_ENTRY = 0;
+    private static final byte INT_ENTRY = 1;
+    private static final byte DOUBLE_FIELD = 2;
+    private static final byte INT_FIELD = 3;
+    
+    // kind of each change
+    private byte[] kinds;
+    // changed array or field of each change, and index of changed array entries
+    private Object[] targets;
+    private int[] indices;
+    // previous values of double and integer array entries and fields
+    private double[] values;
+    private int[] intValues;
+    // number of recorded changes
+    private int size;
+
+    public UndoLog() {
+        kinds = new byte[INITIAL_CAPACITY];
+        targets = new Object[INITIAL_CAPACITY];
+        indices = new int[INITIAL_CAPACITY];
+        values = new double[INITIAL_CAPACITY];
+        intValues = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+    
+    /**
+     * Record the current value of an array entry, before it is changed.
+     * 
+     * @param array changed array
+     * @param index index of the changed entry
+     */
+    public void record(double[] array, int index){
+        ensureCapacity();
+        kinds[size] = DOUBLE_ENTRY;
+        targets[size] = array;
+        indices[size] = index;
+        values[size] = array[index];
+        size++;
+    }
+    
+    /**
+     * Record the current value of an integer array entry, before it is changed.
+     * 
+     * @param array changed array
+     * @param index index of the changed entry
+     */
+    public void record(int[] array, int index){
+        ensureCapacity();
+        kinds[size] = INT_ENTRY;
+        targets[size] = array;
+        indices[size] = index;
+        intValues[size] = array[index];
+        size++;
+    }
+    
+    /**
+     * Record the current value of a scalar field, before it is changed.
+     * 
+     * @param field changed field
+     * @param value current value of the field
+     */
+    public void recordDouble(DoubleField field, double value){
+        ensureCapacity();
+        kinds[size] = DOUBLE_FIELD;
+        targets[size] = field;
+        values[size] = value;
+        size++;
+    }
+    
+    /**
+     * Record the current value of an integer field, before it is changed.
+     * 
+     * @param field changed field
+     * @param value current value of the field
+     */
+    public void recordInt(IntField field, int value){
+        ensureCapacity();
+        kinds[size] = INT_FIELD;
+        targets[size] = field;
+        intValues[size] = value;
+        size++;
+    }
+    
+    /**
+     * Undo all recorded changes, in reverse order, and clear the log.
+     */
+    public void undo(){
+        for(int i = size - 1; i >= 0; i--){
+            switch(kinds[i]){
+                case DOUBLE_ENTRY:
+                    ((double[]) targets[i])[indices[i]] = values[i];
+                    break;
+                case INT_ENTRY:
+                    ((int[]) targets[i])[indices[i]] = intValues[i];
+                    break;
+                case DOUBLE_FIELD:
+                    ((DoubleField) targets[i]).set(values[i]);
+                    break;
+                default:
+                    ((IntField) targets[i]).set(intValues[i]);
+            }
+        }
+        clear();
+    }
+    
+    /**
+     * Clear the log. Recorded changes can no longer be undone.
+     */
+    public void clear(){
+        // release references to changed arrays and fields
+        Arrays.fill(targets, 0, size, null);
+        size = 0;
+    }
+    
+    /**
+     * Get the number of recorded changes.
+     * 
+     * @return number of recorded changes
+     */
+    public int size(){
+        return size;
+    }
+    
+    private void ensureCapacity(){
+        if(size == kinds.length){
+            int capacity = 2 * size;
+            kinds = Arrays.copyOf(kinds, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            indices = Arrays.copyOf(indices, capacity);
+            values = Arrays.copyOf(values, capacity);
+            intValues = Arrays.copyOf(intValues, capacity);
+        }
+    }
+    
+    /**
+     * Sets a scalar field of type <code>double</code>, to restore its previous value.
+     * Implementations are created once per evaluation, typically as a lambda expression
+     * that assigns the field, so that recording a change does not allocate any objects.
+     */
+    @FunctionalInterface
+    public interface DoubleField {
+        
+        /**
+         * Set the value of the field.
+         * 
+         * @param value new value
+         */
+        public void set(double value);
+        
+    }
+    
+    /**
+     * Sets a scalar field of type <code>int</code>, to restore its previous value.
+     * Implementations are created once per evaluation, typically as a lambda expression
+     * that assigns the field, so that recording a change does not allocate any objects.
+     */
+    @FunctionalInterface
+    public interface IntField {
+        
+        /**
+         * Set the value of the field.
+         * 
+         * @param value new value
+         */
+        public void set(int value);
+        
+    }
+    
+}
@@ -0,0 +1,160 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.data.simple;
+
+import static org.corehunter.tests.TestData.DISTANCES;
+import static org.corehunter.tests.TestData.HEADERS_UNIQUE_NAMES;
+import static org.corehunter.tests.TestData.NAME;
+import static org.corehunter.tests.TestData.PRECISION;
+import static org.corehunter.tests.TestData.SET;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.corehunter.data.DistanceMatrixData;
+import org.corehunter.data.DistancePrecision;
+import org.corehunter.data.simple.MappedDistanceMatrixData;
+import org.corehunter.data.simple.SimpleDistanceMatrixData;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class MappedDistanceMatrixDataTest {
+
+    private static final String TEST_OUTPUT = "target/testoutput";
+    
+    // precision of single precision values
+    private static final double FLOAT_PRECISION = 1e-6;
+    
+    @BeforeClass
+    public static void beforeClass(){
+        System.out.println("Test mapped distance matrix data");
+    }
+    
+    @AfterClass
+    public static void afterClass(){
+        System.out.println("Done");
+    }
+    
+    @Test
+    public void doublePrecision() throws IOException {
+        System.out.println(" |- Double precision");
+        Path path = createTempFile("MappedDistanceMatrix-Double");
+        MappedDistanceMatrixData data = MappedDistanceMatrixData.create(
+                path, new SimpleDistanceMatrixData(NAME, HEADERS_UNIQUE_NAMES, DISTANCES), DistancePrecision.DOUBLE
+        );
+        assertEquals(DistancePrecision.DOUBLE, data.getPrecision());
+        assertEquals(8 * MappedDistanceMatrixData.numDistances(DISTANCES.length), Files.size(path));
+        testData(data, PRECISION);
+        // map again
+        testData(new MappedDistanceMatrixData(NAME, HEADERS_UNIQUE_NAMES, path, DistancePrecision.DOUBLE), PRECISION);
+    }
+    
+    @Test
+    public void singlePrecision() throws IOException {
+        System.out.println(" |- Single precision");
+        Path path = createTempFile("MappedDistanceMatrix-Float");
+        MappedDistanceMatrixData data = MappedDistanceMatrixData.create(
+                path, new SimpleDistanceMatrixData(NAME, HEADERS_UNIQUE_NAMES, DISTANCES), DistancePrecision.FLOAT
+        );
+        assertEquals(DistancePrecision.FLOAT, data.getPrecision());
+        assertEquals(4 * MappedDistanceMatrixData.numDistances(DISTANCES.length), Files.size(path));
+        testData(data, FLOAT_PRECISION);
+    }
+    
+    @Test(expected = IOException.class)
+    public void fileTooSmall() throws IOException {
+        System.out.println(" |- File too small");
+        Path path = createTempFile("MappedDistanceMatrix-Small");
+        MappedDistanceMatrixData.create(
+                path, new SimpleDistanceMatrixData(NAME, HEADERS_UNIQUE_NAMES, DISTANCES), DistancePrecision.FLOAT
+        );
+        new MappedDistanceMatrixData(NAME, HEADERS_UNIQUE_NAMES, path, DistancePrecision.DOUBLE);
+    }
+    
+    @Test
+    public void binaryFile() throws IOException {
+        System.out.println(" |- Binary file");
+        for(DistancePrecision precision : DistancePrecision.values()){
+            Path path = createTempFile("MappedDistanceMatrix-Binary");
+            SimpleDistanceMatrixData distances = new SimpleDistanceMatrixData(
+                    NAME, HEADERS_UNIQUE_NAMES, DISTANCES, precision
+            );
+            distances.writeBinaryData(path);
+            assertTrue(SimpleDistanceMatrixData.isBinaryData(path));
+            // distances are aligned and stored after the header
+            long size = Files.size(path);
+            long numBytes = precision.getNumBytes() * MappedDistanceMatrixData.numDistances(DISTANCES.length);
+            assertEquals(0, (size - numBytes) % 8);
+            // reopen
+            MappedDistanceMatrixData data = SimpleDistanceMatrixData.openBinaryData(path);
+            assertEquals(precision, data.getPrecision());
+            for (int i = 0; i < data.getSize(); i++) {
+                assertEquals(HEADERS_UNIQUE_NAMES[i].getName(), data.getHeader(i).getName());
+            }
+            testData(data, precision == DistancePrecision.FLOAT ? FLOAT_PRECISION : PRECISION);
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void notBinaryFile() throws IOException {
+        System.out.println(" |- Not a binary file");
+        Path path = createTempFile("MappedDistanceMatrix-NotBinary");
+        MappedDistanceMatrixData.create(
+                path, new SimpleDistanceMatrixData(NAME, HEADERS_UNIQUE_NAMES, DISTANCES), DistancePrecision.DOUBLE
+        );
+        assertFalse(SimpleDistanceMatrixData.isBinaryData(path));
+        SimpleDistanceMatrixData.openBinaryData(path);
+    }
+    
+    private Path createTempFile(String prefix) throws IOException {
+        Path path = Paths.get(TEST_OUTPUT);
+        Files.createDirectories(path);
+        path = Files.createTempDirectory(path, prefix);
+        return Paths.get(path.toString(), "distances.bin");
+    }
+    
+    private void testData(DistanceMatrixData data, double precision) {
+        
+        assertEquals("Incorrect data name.", NAME, data.getName());
+        assertEquals("Ids not correct.", SET, data.getIDs());
+        
+        int size = data.getSize();
+        for (int i = 0; i < size; i++) {
+            assertEquals("Header for individual " + i + " is not correct.",
+                         HEADERS_UNIQUE_NAMES[i], data.getHeader(i));
+            for (int j = 0; j < size; j++) {
+                assertEquals("Distance[" + i + "][" + j + "] not correct!",
+                             DISTANCES[i][j], data.getDistance(i, j), precision);
+            }
+        }
+        
+    }
+    
+}
@@ -27,11 +27,14 @@ import static org.corehunter.tests.TestData.PRECISION;
 import static org.corehunter.tests.TestData.SET;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
 
+import org.corehunter.data.DistancePrecision;
 import org.corehunter.data.simple.SimpleDistanceMatrixData;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -39,6 +42,7 @@ import org.junit.Test;
 
 import uno.informatics.data.io.FileType;
 import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.pojo.SimpleEntityPojo;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -56,8 +60,12 @@ public class SimpleDistanceMatrixDataTest {
     
     private static final String ERRONEOUS_FILES_DIR = "/distances/err/";
     
+    // precision of single precision values
+    private static final double FLOAT_PRECISION = 1e-6;
+    
     private SimpleEntity[] expectedHeaders;
     private String dataName;
+    private double precision = PRECISION;
 
     @BeforeClass
     public static void beforeClass(){
@@ -77,6 +85,19 @@ public class SimpleDistanceMatrixDataTest {
         testData(new SimpleDistanceMatrixData(NAME, HEADERS_NON_UNIQUE_NAMES, DISTANCES));
     }
     
+    @Test
+    public void inMemorySinglePrecision() {
+        System.out.println(" |- In memory test with single precision");
+        dataName = NAME;
+        expectedHeaders = HEADERS_NON_UNIQUE_NAMES;
+        precision = FLOAT_PRECISION;
+        SimpleDistanceMatrixData data = new SimpleDistanceMatrixData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, DISTANCES, DistancePrecision.FLOAT
+        );
+        assertEquals(DistancePrecision.FLOAT, data.getPrecision());
+        testData(data);
+    }
+    
     @Test
     public void fromFileWithIds() throws IOException {
         dataName = "full-ids.txt";
@@ -155,6 +176,69 @@ public class SimpleDistanceMatrixDataTest {
         }
     }
 
+    @Test
+    public void fromLargeFile() throws IOException {
+        System.out.println(" |- Write and read large file");
+        
+        // random symmetric matrix
+        Random rg = new Random(42);
+        int n = 600;
+        double[][] distances = new double[n][n];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("item-" + i);
+            for(int j = 0; j < i; j++){
+                // mix of short and full length decimal representations
+                distances[i][j] = rg.nextBoolean() ? rg.nextInt(1000) / 100.0 : rg.nextDouble();
+                distances[j][i] = distances[i][j];
+            }
+        }
+        SimpleDistanceMatrixData data = new SimpleDistanceMatrixData(NAME, headers, distances);
+        
+        Path path = Files.createTempDirectory(Files.createDirectories(Paths.get(TEST_OUTPUT)), "DistanceMatrix-Large");
+        path = Paths.get(path.toString(), "large.csv");
+        data.writeData(path, FileType.CSV);
+        
+        for(DistancePrecision p : DistancePrecision.values()){
+            SimpleDistanceMatrixData read = SimpleDistanceMatrixData.readData(path, FileType.CSV, p);
+            assertEquals(p, read.getPrecision());
+            assertEquals(n, read.getSize());
+            for(int i = 0; i < n; i++){
+                assertEquals(headers[i], read.getHeader(i));
+                for(int j = 0; j < n; j++){
+                    if(p == DistancePrecision.DOUBLE){
+                        assertEquals(Double.doubleToLongBits(distances[i][j]),
+                                     Double.doubleToLongBits(read.getDistance(i, j)));
+                    } else {
+                        assertEquals((float) distances[i][j], read.getDistance(i, j), 0.0);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void fromFileWithCommentsAndCarriageReturns() throws IOException {
+        dataName = "comments.txt";
+        expectedHeaders = HEADERS_UNIQUE_NAMES;
+        System.out.println(" |- File " + dataName);
+        
+        // lower triangular part with comments and Windows line endings
+        StringBuilder str = new StringBuilder("# distance matrix\r\nID\r\n");
+        for(int i = 0; i < DISTANCES.length; i++){
+            str.append(HEADERS_UNIQUE_NAMES[i].getUniqueIdentifier());
+            for(int j = 0; j < i; j++){
+                str.append("\t ").append(DISTANCES[i][j]);
+            }
+            str.append(i % 2 == 0 ? "\r\n" : "\n   # comment\r");
+        }
+        Path path = Files.createTempDirectory(Files.createDirectories(Paths.get(TEST_OUTPUT)), "DistanceMatrix-Txt");
+        path = Paths.get(path.toString(), dataName);
+        Files.write(path, str.toString().getBytes(StandardCharsets.UTF_8));
+        
+        testData(SimpleDistanceMatrixData.readData(path, FileType.TXT));
+    }
+
     private void testData(SimpleDistanceMatrixData data) {
         
         // check data name, if set
@@ -183,7 +267,7 @@ public class SimpleDistanceMatrixDataTest {
             // check distances
             for (int j = 0; j < size; j++) {
                 assertEquals("Distance[" + i + "][" + j + "] not correct!",
-                             DISTANCES[i][j], data.getDistance(i, j), PRECISION);
+                             DISTANCES[i][j], data.getDistance(i, j), precision);
             }
             
         }
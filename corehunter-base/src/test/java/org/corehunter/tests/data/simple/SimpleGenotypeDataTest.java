@@ -39,6 +39,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Objects;
 
 import org.corehunter.data.GenotypeDataFormat;
 import org.corehunter.data.simple.SimpleGenotypeData;
@@ -48,11 +49,14 @@ import org.junit.Test;
 
 import uno.informatics.data.io.FileType;
 import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.pojo.SimpleEntityPojo;
 
 import org.corehunter.data.GenotypeData;
 
 import static org.corehunter.tests.TestData.MARKER_NAMES_DEFAULT;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -343,6 +347,77 @@ public class SimpleGenotypeDataTest {
                                                       ALLELE_NAMES_DIPLOID, ALLELE_FREQUENCIES_DIPLOID));
     }
     
+    @Test
+    public void diploidDosages() throws IOException {
+        System.out.println(" |- Dosages (diploid)");
+        SimpleGenotypeData data = (SimpleGenotypeData) SimpleGenotypeData.readData(
+            Paths.get(SimpleGenotypeDataTest.class.getResource(DIPLOID_TXT_IDS).getPath()),
+            FileType.TXT, GenotypeDataFormat.DEFAULT
+        );
+        assertEquals("Diploid frequencies should be stored as dosages of 1/2.", 2, data.getDosageDenominator());
+        // frequencies with denominators 2, 3, 4 and 5
+        data = new SimpleGenotypeData(HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES);
+        assertEquals("Frequencies should be stored as dosages of 1/60.", 60, data.getDosageDenominator());
+        // frequencies without small denominator
+        Double[][][] freqs = new Double[ALLELE_FREQUENCIES.length][][];
+        for(int i = 0; i < freqs.length; i++){
+            freqs[i] = new Double[ALLELE_FREQUENCIES[i].length][];
+            for(int m = 0; m < freqs[i].length; m++){
+                freqs[i][m] = Arrays.copyOf(ALLELE_FREQUENCIES[i][m], ALLELE_FREQUENCIES[i][m].length);
+            }
+        }
+        freqs[2][0] = new Double[]{0.61, 0.0, 0.39};
+        data = new SimpleGenotypeData(HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, freqs);
+        assertEquals("Frequencies should not be stored as dosages.", 0, data.getDosageDenominator());
+        assertEquals("Incorrect frequency.", 0.61, data.getAlleleFrequencyValue(2, 0, 0), PRECISION);
+        // frequencies close to but not exactly equal to a dosage step: stored as is
+        freqs[2][0] = new Double[]{0.5 + 1e-12, 0.0, 0.5 - 1e-12};
+        data = new SimpleGenotypeData(HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, freqs);
+        assertEquals("Frequencies should not be stored as dosages.", 0, data.getDosageDenominator());
+        assertEquals("Frequency should be stored exactly.", 0.5 + 1e-12, data.getAlleleFrequencyValue(2, 0, 0), 0.0);
+    }
+    
+    @Test
+    public void largeDosageDenominator() {
+        System.out.println(" |- Dosages (denominator above 127)");
+        // frequencies with denominators 2, 3, 5 and 7
+        Double[][][] freqs = new Double[][][]{
+            {{1.0, 0.0, 0.0}, {1.0/7, 6.0/7}},
+            {{1.0/3, 2.0/3, 0.0}, {0.5, 0.5}},
+            {{0.2, 0.0, 0.8}, {null, null}}
+        };
+        SimpleEntity[] headers = new SimpleEntity[freqs.length];
+        for(int i = 0; i < headers.length; i++){
+            headers[i] = new SimpleEntityPojo("id-" + i);
+        }
+        SimpleGenotypeData data = new SimpleGenotypeData(headers, null, null, freqs);
+        assertEquals("Frequencies should be stored as dosages of 1/210.", 210, data.getDosageDenominator());
+        int[] ids = {0, 1, 2};
+        double[] sums = new double[data.getTotalNumberOfAlleles()];
+        data.sumAlleleFrequencies(ids, sums);
+        for(int m = 0; m < data.getNumberOfMarkers(); m++){
+            for(int a = 0; a < data.getNumberOfAlleles(m); a++){
+                double expectedSum = 0.0;
+                for(int i = 0; i < freqs.length; i++){
+                    Double f = freqs[i][m][a];
+                    assertEquals("Incorrect frequency.", f == null ? Double.NaN : f,
+                                 data.getAlleleFrequencyValue(i, m, a), PRECISION);
+                    expectedSum += f == null ? 0.0 : f;
+                }
+                assertEquals("Incorrect sum.", expectedSum, sums[data.getAlleleOffset(m) + a], PRECISION);
+            }
+        }
+        // same sums from marker-major layout (opt-in)
+        assertFalse("Marker-major layout should be disabled by default.", data.isMarkerMajorLayout());
+        data.setMarkerMajorLayout(true);
+        assertTrue("Marker-major layout should be enabled.", data.isMarkerMajorLayout());
+        double[] markerMajorSums = new double[data.getTotalNumberOfAlleles()];
+        data.sumAlleleFrequencies(ids, markerMajorSums);
+        assertArrayEquals("Incorrect sums from marker-major layout.", sums, markerMajorSums, PRECISION);
+        data.setMarkerMajorLayout(false);
+        assertFalse("Marker-major layout should have been released.", data.isMarkerMajorLayout());
+    }
+    
     @Test
     public void diploidFromTxtFileWithIds() throws IOException {
         dataName = "ids.txt";
@@ -468,8 +543,18 @@ public class SimpleGenotypeDataTest {
             
         }
         
+        // check allele offsets
+        int offset = 0;
+        for(int m = 0; m <= data.getNumberOfMarkers(); m++){
+            assertEquals("Allele offset for marker " + m + " is not correct.", offset, data.getAlleleOffset(m));
+            if(m < data.getNumberOfMarkers()){
+                offset += data.getNumberOfAlleles(m);
+            }
+        }
+        
         // check individuals (headers and frequencies)
         int size = data.getSize();
+        double[] row = new double[data.getTotalNumberOfAlleles()];
 
         for (int i = 0; i < size; i++) {
             
@@ -485,8 +570,18 @@ public class SimpleGenotypeDataTest {
             }
 
             // check frequencies
+            data.copyAlleleFrequencies(i, row);
             for (int m = 0; m < data.getNumberOfMarkers(); m++) {
                 for (int a = 0; a < data.getNumberOfAlleles(m); a++) {
+                    // primitive values (NaN if missing)
+                    double expected = freqs[i][m][a] == null ? Double.NaN : freqs[i][m][a];
+                    assertEquals("Incorrect primitive frequency for allele " + a
+                               + " of marker " + m + " in individual " + i + ".",
+                               expected, data.getAlleleFrequencyValue(i, m, a), PRECISION);
+                    assertEquals("Incorrect copied frequency for allele " + a
+                               + " of marker " + m + " in individual " + i + ".",
+                               expected, row[data.getAlleleOffset(m) + a], PRECISION);
+                    // boxed values (null if missing)
                     if(freqs[i][m][a] == null){
                         assertNull("Frequency should be missing for allele " + a
                                  + " of marker " + m + " in individual " + i + ".",
@@ -503,10 +598,35 @@ public class SimpleGenotypeDataTest {
                     }
                 }
                 
+                // check missing values (also in bit mask)
+                boolean missing = Arrays.stream(freqs[i][m]).anyMatch(Objects::isNull);
+                assertEquals("Missing values not correctly indicated for marker " + m + " in individual " + i + ".",
+                             missing, data.hasMissingValues(i, m));
+                assertEquals("Missing values mask not correct for marker " + m + " in individual " + i + ".",
+                             missing, (data.getMissingValuesMask(i, m >>> 6) & (1L << m)) != 0);
+                
             }
             
         }
         
+        // check allele frequency sums (missing values treated as zero) for all and even ids
+        int[] all = data.getIDs().stream().mapToInt(Integer::intValue).toArray();
+        int[] even = Arrays.stream(all).filter(id -> id % 2 == 0).toArray();
+        for(int[] ids : new int[][]{all, even}){
+            double[] sums = new double[data.getTotalNumberOfAlleles()];
+            data.sumAlleleFrequencies(ids, sums);
+            for (int m = 0; m < data.getNumberOfMarkers(); m++) {
+                for (int a = 0; a < data.getNumberOfAlleles(m); a++) {
+                    double expected = 0.0;
+                    for(int id : ids){
+                        expected += freqs[id][m][a] == null ? 0.0 : freqs[id][m][a];
+                    }
+                    assertEquals("Incorrect frequency sum for allele " + a + " of marker " + m + ".",
+                                 expected, sums[data.getAlleleOffset(m) + a], PRECISION);
+                }
+            }
+        }
+        
     }
     
     private void testDataFrequencies(GenotypeData data) {
@@ -0,0 +1,305 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.data.simple;
+
+import static org.corehunter.tests.TestData.ALLELE_FREQUENCIES;
+import static org.corehunter.tests.TestData.ALLELE_NAMES;
+import static org.corehunter.tests.TestData.HEADERS_NON_UNIQUE_NAMES;
+import static org.corehunter.tests.TestData.MARKER_NAMES;
+import static org.corehunter.tests.TestData.NAME;
+import static org.corehunter.tests.TestData.PRECISION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.GenotypeData;
+import org.corehunter.data.simple.SimpleGenotypeData;
+import org.corehunter.data.simple.SparseGenotypeData;
+import org.corehunter.objectives.Coverage;
+import org.corehunter.objectives.HeterozygousLoci;
+import org.corehunter.objectives.Shannon;
+import org.corehunter.objectives.distance.measures.CavalliSforzaEdwardsDistance;
+import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
+import org.jamesframework.core.problems.objectives.Objective;
+import org.jamesframework.core.subset.SubsetSolution;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.io.FileType;
+import uno.informatics.data.pojo.SimpleEntityPojo;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class SparseGenotypeDataTest {
+
+    private static final String TEST_OUTPUT = "target/testoutput";
+    
+    @BeforeClass
+    public static void beforeClass(){
+        System.out.println("Test sparse genotype data");
+    }
+    
+    @AfterClass
+    public static void afterClass(){
+        System.out.println("Done");
+    }
+    
+    @Test
+    public void fromSimpleData() {
+        System.out.println(" |- Convert simple data");
+        SimpleGenotypeData simple = new SimpleGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES
+        );
+        SparseGenotypeData sparse = new SparseGenotypeData(simple);
+        testSameData(simple, sparse);
+    }
+    
+    @Test
+    public void multiAllelic() {
+        System.out.println(" |- Multi-allelic data");
+        Random rg = new Random(42);
+        SimpleGenotypeData simple = createMultiAllelicData(rg, 50, 40, 30);
+        SparseGenotypeData sparse = new SparseGenotypeData(simple);
+        testSameData(simple, sparse);
+        // at most two non-zero frequencies per marker (missing values are stored as well)
+        int numMissing = 0;
+        for(int i = 0; i < simple.getSize(); i++){
+            for(int m = 0; m < simple.getNumberOfMarkers(); m++){
+                numMissing += simple.hasMissingValues(i, m) ? simple.getNumberOfAlleles(m) : 0;
+            }
+        }
+        assertEquals(true, sparse.getNumberOfStoredFrequencies() <= 2 * 50 * 40 + numMissing);
+        
+        testSameResults(simple, sparse, rg);
+    }
+    
+    @Test
+    public void nonDyadicFrequencies() {
+        System.out.println(" |- Non-dyadic frequencies");
+        Random rg = new Random(42);
+        // each item carries two or three of many alleles per marker, with frequencies
+        // that are not multiples of a power of two (some not representable as a fraction)
+        double[][] patterns = {
+            {1.0 / 3, 2.0 / 3}, {0.1, 0.9}, {1.0 / 7, 2.0 / 7, 4.0 / 7}, {0.2, 0.3, 0.5}
+        };
+        int n = 40;
+        int m = 30;
+        int numAlleles = 25;
+        Double[][][] freqs = new Double[n][m][numAlleles];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("item-" + i);
+            for(int j = 0; j < m; j++){
+                if(rg.nextInt(50) != 0){
+                    Arrays.fill(freqs[i][j], 0.0);
+                    double[] pattern;
+                    if(rg.nextInt(4) == 0){
+                        // arbitrary split
+                        double p = rg.nextDouble();
+                        pattern = new double[]{p, 1.0 - p};
+                    } else {
+                        pattern = patterns[rg.nextInt(patterns.length)];
+                    }
+                    for(double p : pattern){
+                        freqs[i][j][rg.nextInt(numAlleles)] += p;
+                    }
+                }
+            }
+        }
+        SimpleGenotypeData simple = new SimpleGenotypeData(NAME, headers, new String[m], null, freqs);
+        GenotypeData compressed = SparseGenotypeData.compress(simple);
+        assertTrue(compressed instanceof SparseGenotypeData);
+        SparseGenotypeData sparse = (SparseGenotypeData) compressed;
+        testSameData(simple, sparse);
+        // frequencies as specified
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < m; j++){
+                for(int a = 0; a < numAlleles; a++){
+                    if(freqs[i][j][a] == null){
+                        assertNull(sparse.getAlleleFrequency(i, j, a));
+                    } else {
+                        assertEquals(freqs[i][j][a], sparse.getAlleleFrequency(i, j, a), PRECISION);
+                    }
+                }
+            }
+        }
+        testSameResults(simple, sparse, rg);
+    }
+    
+    @Test
+    public void compress() {
+        System.out.println(" |- Compress by density");
+        // dense data is kept as is
+        SimpleGenotypeData dense = new SimpleGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES
+        );
+        assertTrue(SparseGenotypeData.getDensity(dense) > SparseGenotypeData.MAX_DENSITY);
+        assertSame(dense, SparseGenotypeData.compress(dense));
+        // multi-allelic data is converted
+        SimpleGenotypeData simple = createMultiAllelicData(new Random(42), 50, 40, 30);
+        double density = SparseGenotypeData.getDensity(simple);
+        assertTrue(density <= SparseGenotypeData.MAX_DENSITY);
+        GenotypeData sparse = SparseGenotypeData.compress(simple);
+        assertTrue(sparse instanceof SparseGenotypeData);
+        assertEquals(density, SparseGenotypeData.getDensity(sparse), PRECISION);
+        assertEquals(density * 50 * simple.getTotalNumberOfAlleles(),
+                     ((SparseGenotypeData) sparse).getNumberOfStoredFrequencies(), PRECISION);
+        // sparse data is not converted again
+        assertSame(sparse, SparseGenotypeData.compress(sparse));
+    }
+    
+    @Test
+    public void writeAndRead() throws IOException {
+        System.out.println(" |- Write and read");
+        SparseGenotypeData sparse = new SparseGenotypeData(new SimpleGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES
+        ));
+        Path path = Paths.get(TEST_OUTPUT);
+        Files.createDirectories(path);
+        path = Files.createTempDirectory(path, "SparseGenoFreqs-Txt");
+        path = Paths.get(path.toString(), "sparse.txt");
+        sparse.writeData(path, FileType.TXT);
+        // read back in dense form
+        GenotypeData read = SimpleGenotypeData.readData(path, FileType.TXT);
+        assertEquals(sparse.getSize(), read.getSize());
+        assertEquals(sparse.getNumberOfMarkers(), read.getNumberOfMarkers());
+        for(int i = 0; i < sparse.getSize(); i++){
+            assertEquals(sparse.getHeader(i).getUniqueIdentifier(), read.getHeader(i).getUniqueIdentifier());
+            for(int m = 0; m < sparse.getNumberOfMarkers(); m++){
+                assertEquals(sparse.getMarkerName(m), read.getMarkerName(m));
+                assertEquals(sparse.getNumberOfAlleles(m), read.getNumberOfAlleles(m));
+                for(int a = 0; a < sparse.getNumberOfAlleles(m); a++){
+                    assertEquals(sparse.getAlleleFrequencyValue(i, m, a),
+                                 read.getAlleleFrequencyValue(i, m, a), PRECISION);
+                }
+            }
+        }
+    }
+    
+    // same distances and evaluations for random selections
+    private void testSameResults(GenotypeData simple, GenotypeData sparse, Random rg) {
+        CoreHunterData simpleData = new CoreHunterData(simple);
+        CoreHunterData sparseData = new CoreHunterData(sparse);
+        ModifiedRogersDistance mr = new ModifiedRogersDistance();
+        CavalliSforzaEdwardsDistance ce = new CavalliSforzaEdwardsDistance();
+        for(int x = 0; x < simple.getSize(); x++){
+            for(int y = 0; y < simple.getSize(); y++){
+                assertEquals(mr.getDistance(x, y, simpleData), mr.getDistance(x, y, sparseData), PRECISION);
+                assertEquals(ce.getDistance(x, y, simpleData), ce.getDistance(x, y, sparseData), PRECISION);
+            }
+        }
+        
+        // same evaluations
+        List<Objective<SubsetSolution, CoreHunterData>> objectives = Arrays.asList(
+                new Coverage(), new Shannon(), new HeterozygousLoci()
+        );
+        List<Integer> ids = new ArrayList<>(simpleData.getIDs());
+        for(int k = 0; k < 10; k++){
+            SubsetSolution sol = new SubsetSolution(simpleData.getIDs());
+            for(int id : ids.subList(0, 1 + rg.nextInt(ids.size()))){
+                sol.select(id);
+            }
+            for(Objective<SubsetSolution, CoreHunterData> obj : objectives){
+                assertEquals(obj.evaluate(sol, simpleData).getValue(),
+                             obj.evaluate(sol, sparseData).getValue(), PRECISION);
+            }
+        }
+    }
+    
+    private void testSameData(GenotypeData expected, GenotypeData actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getIDs(), actual.getIDs());
+        assertEquals(expected.getNumberOfMarkers(), actual.getNumberOfMarkers());
+        assertEquals(expected.getTotalNumberOfAlleles(), actual.getTotalNumberOfAlleles());
+        for(int m = 0; m < expected.getNumberOfMarkers(); m++){
+            assertEquals(expected.getMarkerName(m), actual.getMarkerName(m));
+            assertEquals(expected.getNumberOfAlleles(m), actual.getNumberOfAlleles(m));
+            assertEquals(expected.getAlleleOffset(m), actual.getAlleleOffset(m));
+            for(int a = 0; a < expected.getNumberOfAlleles(m); a++){
+                assertEquals(expected.getAlleleName(m, a), actual.getAlleleName(m, a));
+            }
+        }
+        int numAlleles = expected.getTotalNumberOfAlleles();
+        double[] expectedRow = new double[numAlleles];
+        double[] actualRow = new double[numAlleles];
+        for(int i = 0; i < expected.getSize(); i++){
+            assertEquals(expected.getHeader(i).getUniqueIdentifier(), actual.getHeader(i).getUniqueIdentifier());
+            assertEquals(expected.getHeader(i).getName(), actual.getHeader(i).getName());
+            for(int m = 0; m < expected.getNumberOfMarkers(); m++){
+                assertEquals(expected.hasMissingValues(i, m), actual.hasMissingValues(i, m));
+                for(int a = 0; a < expected.getNumberOfAlleles(m); a++){
+                    assertEquals(expected.getAlleleFrequency(i, m, a), actual.getAlleleFrequency(i, m, a));
+                }
+            }
+            for(int b = 0; b < (expected.getNumberOfMarkers() + 63) / 64; b++){
+                assertEquals(expected.getMissingValuesMask(i, b), actual.getMissingValuesMask(i, b));
+            }
+            expected.copyAlleleFrequencies(i, expectedRow);
+            actual.copyAlleleFrequencies(i, actualRow);
+            assertArrayEquals(expectedRow, actualRow, 0.0);
+            // non-zero frequencies
+            Arrays.fill(actualRow, 0.0);
+            actual.forEachNonZeroAlleleFrequency(i, (a, freq) -> actualRow[a] = freq);
+            for(int a = 0; a < numAlleles; a++){
+                assertEquals(Double.isNaN(expectedRow[a]) ? 0.0 : expectedRow[a], actualRow[a], 0.0);
+            }
+        }
+        // sums
+        int[] ids = expected.getIDs().stream().mapToInt(Integer::intValue).toArray();
+        double[] expectedSums = new double[numAlleles];
+        double[] actualSums = new double[numAlleles];
+        expected.sumAlleleFrequencies(ids, expectedSums);
+        actual.sumAlleleFrequencies(ids, actualSums);
+        assertArrayEquals(expectedSums, actualSums, PRECISION);
+    }
+    
+    // random data where each item carries one or two of many alleles per marker (2% missing values)
+    private SimpleGenotypeData createMultiAllelicData(Random rg, int n, int m, int numAlleles) {
+        Double[][][] freqs = new Double[n][m][numAlleles];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("item-" + i);
+            for(int j = 0; j < m; j++){
+                if(rg.nextInt(50) != 0){
+                    Arrays.fill(freqs[i][j], 0.0);
+                    freqs[i][j][rg.nextInt(numAlleles)] += 0.5;
+                    freqs[i][j][rg.nextInt(numAlleles)] += 0.5;
+                }
+            }
+        }
+        return new SimpleGenotypeData(NAME, headers, new String[m], null, freqs);
+    }
+    
+}
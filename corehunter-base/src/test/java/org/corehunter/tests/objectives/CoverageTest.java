@@ -123,5 +123,12 @@ public class CoverageTest extends EvaluationTest {
         }
         
     }
+    
+    @Test
+    public void testSuccessiveDeltaEvaluations() {
+        Random rng = new Random(42);
+        CoreHunterData data = new CoreHunterData(createRandomGenotypeData(rng, 100, 200));
+        testSuccessiveDeltaEvaluations(new Coverage(), data, rng, PRECISION);
+    }
 
 }
@@ -19,12 +19,79 @@
 
 package org.corehunter.tests.objectives;
 
+import java.util.Arrays;
+import java.util.Random;
+
+import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.simple.SimpleGenotypeData;
+import org.jamesframework.core.problems.objectives.Objective;
 import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
+import org.jamesframework.core.search.neigh.Move;
+import org.jamesframework.core.search.neigh.Neighbourhood;
+import org.jamesframework.core.subset.SubsetProblem;
+import org.jamesframework.core.subset.SubsetSolution;
+import org.jamesframework.core.subset.neigh.SinglePerturbationNeighbourhood;
 import org.junit.Assert;
 
+import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.pojo.SimpleEntityPojo;
+
 public class EvaluationTest {
 
     protected void assertEquals(String message, Evaluation expected, Evaluation actual, double precision) {
         Assert.assertEquals(message, expected.getValue(), actual.getValue(), precision);
     }
+    
+    /**
+     * Create random diploid genotype data with 2 to 6 alleles per marker, where 5% of the values are missing.
+     * 
+     * @param rng random generator
+     * @param n number of items
+     * @param m number of markers
+     * @return random genotype data
+     */
+    protected SimpleGenotypeData createRandomGenotypeData(Random rng, int n, int m) {
+        Double[][][] freqs = new Double[n][m][];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        int[] numAlleles = rng.ints(m, 2, 7).toArray();
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("id-" + i);
+            for(int j = 0; j < m; j++){
+                freqs[i][j] = new Double[numAlleles[j]];
+                if(rng.nextDouble() >= 0.05){
+                    Arrays.fill(freqs[i][j], 0.0);
+                    freqs[i][j][rng.nextInt(numAlleles[j])] += 0.5;
+                    freqs[i][j][rng.nextInt(numAlleles[j])] += 0.5;
+                }
+            }
+        }
+        return new SimpleGenotypeData(headers, null, null, freqs);
+    }
+    
+    /**
+     * Apply random moves to a random solution, where each delta evaluation is computed from
+     * the previous delta evaluation, and compare with a full evaluation after every move.
+     * 
+     * @param objective objective
+     * @param data data
+     * @param rng random generator
+     * @param precision precision
+     */
+    protected void testSuccessiveDeltaEvaluations(Objective<SubsetSolution, CoreHunterData> objective,
+                                                  CoreHunterData data, Random rng, double precision) {
+        SubsetProblem<CoreHunterData> problem = new SubsetProblem<>(data, objective, 10, 30);
+        Neighbourhood<SubsetSolution> neigh = new SinglePerturbationNeighbourhood(10, 30);
+        SubsetSolution sol = problem.createRandomSolution(rng);
+        Evaluation curEval = objective.evaluate(sol, data);
+        int numMoves = 2000;
+        for(int k = 0; k < numMoves; k++){
+            Move<? super SubsetSolution> move = neigh.getRandomMove(sol, rng);
+            Evaluation deltaEval = objective.evaluate(move, sol, curEval, data);
+            move.apply(sol);
+            Evaluation fullEval = objective.evaluate(sol, data);
+            assertEquals("Successive delta evaluation and full neighbour evaluation differ!",
+                         fullEval, deltaEval, precision);
+            curEval = deltaEval;
+        }
+    }
 }
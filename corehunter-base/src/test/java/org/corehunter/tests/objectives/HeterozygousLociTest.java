@@ -121,5 +121,12 @@ public class HeterozygousLociTest extends EvaluationTest {
         }
         
     }
+    
+    @Test
+    public void testSuccessiveDeltaEvaluations() {
+        Random rng = new Random(42);
+        CoreHunterData data = new CoreHunterData(createRandomGenotypeData(rng, 100, 200));
+        testSuccessiveDeltaEvaluations(new HeterozygousLoci(), data, rng, PRECISION);
+    }
 
 }
@@ -121,4 +121,11 @@ public class ShannonTest extends EvaluationTest {
         
     }
     
+    @Test
+    public void testSuccessiveDeltaEvaluations() {
+        Random rng = new Random(42);
+        CoreHunterData data = new CoreHunterData(createRandomGenotypeData(rng, 100, 200));
+        testSuccessiveDeltaEvaluations(new Shannon(), data, rng, PRECISION);
+    }
+    
 }
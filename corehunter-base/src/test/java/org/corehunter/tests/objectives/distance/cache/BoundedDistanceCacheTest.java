@@ -0,0 +1,159 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.objectives.distance.cache;
+
+import static org.corehunter.tests.TestData.PRECISION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.corehunter.data.DistancePrecision;
+import org.corehunter.objectives.distance.cache.BoundedDistanceCache;
+import org.junit.Test;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class BoundedDistanceCacheTest {
+
+    private static final int N = 1000;
+    private static final int MAX_ROWS = 20;
+    private static final long MAX_MEMORY = BoundedDistanceCache.bookkeepingMemorySize(N)
+                                           + MAX_ROWS * BoundedDistanceCache.rowMemorySize(N, DistancePrecision.DOUBLE);
+    
+    @Test
+    public void testStoreAndRetrieve() {
+        
+        BoundedDistanceCache cache = new BoundedDistanceCache(N, DistancePrecision.DOUBLE, MAX_MEMORY);
+        assertEquals(N, cache.size());
+        assertEquals(MAX_ROWS, cache.getMaxRows());
+        
+        // store and retrieve random pairs: retrieved distances should always be correct
+        Random rg = new Random(42);
+        for(int t = 0; t < 100000; t++){
+            int i = rg.nextInt(N);
+            int j = rg.nextInt(N);
+            if(i != j){
+                double d = cache.get(i, j);
+                if(Double.isNaN(d)){
+                    cache.put(i, j, distance(i, j));
+                } else {
+                    assertEquals(distance(i, j), d, PRECISION);
+                }
+            }
+        }
+        
+        // memory limit respected
+        assertTrue(cache.getNumRows() <= MAX_ROWS);
+        
+    }
+    
+    @Test
+    public void testFrequentItemsRetained() {
+        
+        BoundedDistanceCache cache = new BoundedDistanceCache(N, DistancePrecision.FLOAT, MAX_MEMORY);
+        
+        // distances from all items to a small selection, repeatedly
+        int[] selected = {3, 141, 592, 653, 589, 793, 238, 462, 643, 383};
+        int misses = 0;
+        for(int r = 0; r < 5; r++){
+            for(int i = 0; i < N; i++){
+                for(int s : selected){
+                    if(i != s){
+                        double d = cache.get(i, s);
+                        if(Double.isNaN(d)){
+                            cache.put(i, s, distance(i, s));
+                            misses++;
+                        } else {
+                            assertEquals((float) distance(i, s), d, 0.0);
+                        }
+                    }
+                }
+            }
+        }
+        
+        // each distance from an item to a selected item is computed at most twice
+        assertTrue(misses <= 2 * N * selected.length);
+        
+    }
+    
+    @Test
+    public void testConcurrentStoreAndRetrieve() {
+        
+        BoundedDistanceCache cache = new BoundedDistanceCache(N, DistancePrecision.DOUBLE, MAX_MEMORY);
+        
+        IntStream.range(0, 64).parallel().forEach(t -> {
+            Random rg = new Random(t);
+            for(int k = 0; k < 10000; k++){
+                int i = rg.nextInt(N);
+                int j = rg.nextInt(N);
+                if(i != j){
+                    double d = cache.get(i, j);
+                    if(Double.isNaN(d)){
+                        cache.put(i, j, distance(i, j));
+                    } else {
+                        assertEquals(distance(i, j), d, PRECISION);
+                    }
+                }
+            }
+        });
+        
+        assertTrue(cache.getNumRows() <= MAX_ROWS);
+        
+    }
+    
+    @Test
+    public void testMemoryLimitBelowTwoRows() {
+        
+        long bookkeeping = BoundedDistanceCache.bookkeepingMemorySize(N);
+        long rowSize = BoundedDistanceCache.rowMemorySize(N, DistancePrecision.DOUBLE);
+        
+        // single row
+        BoundedDistanceCache cache = new BoundedDistanceCache(N, DistancePrecision.DOUBLE, bookkeeping + rowSize);
+        assertEquals(1, cache.getMaxRows());
+        for(int r = 0; r < 3; r++){
+            for(int i = 1; i < N; i++){
+                if(Double.isNaN(cache.get(i, 0))){
+                    cache.put(i, 0, distance(i, 0));
+                }
+            }
+        }
+        assertEquals(1, cache.getNumRows());
+        assertEquals(distance(5, 0), cache.get(5, 0), PRECISION);
+        
+        // less than a single row: nothing cached
+        cache = new BoundedDistanceCache(N, DistancePrecision.DOUBLE, bookkeeping + rowSize - 1);
+        assertEquals(0, cache.getMaxRows());
+        for(int r = 0; r < 3; r++){
+            for(int i = 1; i < N; i++){
+                cache.put(i, 0, distance(i, 0));
+            }
+        }
+        assertEquals(0, cache.getNumRows());
+        assertTrue(Double.isNaN(cache.get(5, 0)));
+        
+    }
+    
+    private double distance(int i, int j){
+        return Math.abs(Math.sin(i) - Math.sin(j));
+    }
+    
+}
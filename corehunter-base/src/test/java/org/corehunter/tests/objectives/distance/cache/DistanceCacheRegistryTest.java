@@ -0,0 +1,224 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.objectives.distance.cache;
+
+import static org.corehunter.tests.TestData.ALLELE_FREQUENCIES;
+import static org.corehunter.tests.TestData.ALLELE_NAMES;
+import static org.corehunter.tests.TestData.HEADERS_NON_UNIQUE_NAMES;
+import static org.corehunter.tests.TestData.MARKER_NAMES;
+import static org.corehunter.tests.TestData.MODIFIED_ROGERS_DISTANCES;
+import static org.corehunter.tests.TestData.MODIFIED_ROGERS_DISTANCES_CEIL_MISSING;
+import static org.corehunter.tests.TestData.NAME;
+import static org.corehunter.tests.TestData.PRECISION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.DistancePrecision;
+import org.corehunter.data.simple.SimpleGenotypeData;
+import org.corehunter.objectives.distance.cache.DistanceCache;
+import org.corehunter.objectives.distance.cache.DistanceCacheRegistry;
+import org.corehunter.objectives.distance.cache.PackedDistanceCache;
+import org.corehunter.objectives.distance.measures.CavalliSforzaEdwardsDistance;
+import org.corehunter.objectives.distance.measures.MissingValuesPolicy;
+import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
+import org.junit.Test;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class DistanceCacheRegistryTest {
+
+    @Test
+    public void testGetCache() {
+        
+        CoreHunterData data = createData();
+        CoreHunterData otherData = createData();
+        int n = data.getSize();
+        DistanceCacheRegistry registry = new DistanceCacheRegistry();
+        Supplier<DistanceCache> factory = () -> new PackedDistanceCache(n);
+        Supplier<DistanceCache> floatFactory = () -> new PackedDistanceCache(n, DistancePrecision.FLOAT);
+        
+        DistanceCache cache = registry.getCache(
+                data, ModifiedRogersDistance.class, MissingValuesPolicy.FLOOR, DistancePrecision.DOUBLE, factory
+        );
+        assertEquals(1, registry.size());
+        
+        // same properties: same cache
+        assertSame(cache, registry.getCache(
+                data, ModifiedRogersDistance.class, MissingValuesPolicy.FLOOR, DistancePrecision.DOUBLE, factory
+        ));
+        assertEquals(1, registry.size());
+        
+        // different properties: different caches
+        assertNotSame(cache, registry.getCache(
+                otherData, ModifiedRogersDistance.class, MissingValuesPolicy.FLOOR, DistancePrecision.DOUBLE, factory
+        ));
+        assertNotSame(cache, registry.getCache(
+                data, CavalliSforzaEdwardsDistance.class, MissingValuesPolicy.FLOOR, DistancePrecision.DOUBLE, factory
+        ));
+        assertNotSame(cache, registry.getCache(
+                data, ModifiedRogersDistance.class, MissingValuesPolicy.CEIL, DistancePrecision.DOUBLE, factory
+        ));
+        assertNotSame(cache, registry.getCache(
+                data, ModifiedRogersDistance.class, MissingValuesPolicy.FLOOR, DistancePrecision.FLOAT, floatFactory
+        ));
+        assertEquals(5, registry.size());
+        
+        registry.clear(otherData);
+        assertEquals(4, registry.size());
+        registry.clear();
+        assertEquals(0, registry.size());
+        
+    }
+    
+    @Test
+    public void testSharedAmongMeasures() {
+        
+        CoreHunterData data = createData();
+        DistanceCacheRegistry registry = new DistanceCacheRegistry();
+        
+        // precompute with one measure
+        ModifiedRogersDistance precomputed = new ModifiedRogersDistance();
+        precomputed.setCacheRegistry(registry);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        assertTrue(precomputed.precompute(data, pool));
+        pool.shutdown();
+        assertEquals(1, registry.size());
+        
+        // reuse distances with another measure of the same type
+        ModifiedRogersDistance measure = new ModifiedRogersDistance();
+        measure.setCacheRegistry(registry);
+        for(int i = 0; i < data.getSize(); i++){
+            for(int j = 0; j < data.getSize(); j++){
+                assertEquals(MODIFIED_ROGERS_DISTANCES[i][j], measure.getDistance(i, j, data), PRECISION);
+            }
+        }
+        assertEquals(1, registry.size());
+        
+        // changing the missing values policy switches to another shared cache
+        measure.setMissingValuesPolicy(MissingValuesPolicy.CEIL);
+        for(int i = 0; i < data.getSize(); i++){
+            for(int j = 0; j < data.getSize(); j++){
+                assertEquals(
+                        MODIFIED_ROGERS_DISTANCES_CEIL_MISSING[i][j], measure.getDistance(i, j, data), PRECISION
+                );
+            }
+        }
+        assertEquals(2, registry.size());
+        
+        // measure with a private registry does not affect the shared registry
+        ModifiedRogersDistance unshared = new ModifiedRogersDistance();
+        unshared.getDistance(0, 1, data);
+        assertEquals(2, registry.size());
+        assertEquals(1, unshared.getCacheRegistry().size());
+        
+    }
+    
+    @Test
+    public void testConcurrentCreation() throws Exception {
+        
+        CoreHunterData data = createData();
+        int n = data.getSize();
+        DistanceCacheRegistry registry = new DistanceCacheRegistry();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        Supplier<StringBuilder> slowFactory = () -> {
+            created.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return new StringBuilder();
+        };
+        
+        Supplier<DistanceCache> factory = () -> new PackedDistanceCache(n);
+        Callable<StringBuilder> lookup = () -> registry.getDerivedData(data, StringBuilder.class, slowFactory);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // create derived data in one thread and request the same data in another
+            Future<StringBuilder> first = executor.submit(lookup);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<StringBuilder> second = executor.submit(lookup);
+            
+            // other lookups are not blocked in the meantime
+            DistanceCache cache = registry.getCache(
+                    data, ModifiedRogersDistance.class, MissingValuesPolicy.FLOOR, DistancePrecision.DOUBLE, factory
+            );
+            assertSame(cache, registry.getCaches(data).values().iterator().next());
+            assertEquals(1, registry.size());
+            
+            // derived data is created once and shared
+            release.countDown();
+            assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, created.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        
+    }
+    
+    @Test
+    public void testFailedCreation() {
+        
+        CoreHunterData data = createData();
+        DistanceCacheRegistry registry = new DistanceCacheRegistry();
+        
+        Supplier<StringBuilder> failingFactory = () -> {
+            throw new IllegalStateException("failed");
+        };
+        
+        try {
+            registry.getDerivedData(data, StringBuilder.class, failingFactory);
+            fail("Exception of factory should be rethrown.");
+        } catch (IllegalStateException ex) {
+            assertEquals("failed", ex.getMessage());
+        }
+        // a later lookup tries again
+        StringBuilder value = new StringBuilder();
+        assertSame(value, registry.getDerivedData(data, StringBuilder.class, () -> value));
+        
+    }
+    
+    private CoreHunterData createData(){
+        SimpleGenotypeData geno = new SimpleGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES
+        );
+        return new CoreHunterData(geno);
+    }
+    
+}
@@ -0,0 +1,211 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.objectives.distance.cache;
+
+import static org.corehunter.tests.TestData.MODIFIED_ROGERS_DISTANCES;
+import static org.corehunter.tests.TestData.PRECISION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.corehunter.data.DistancePrecision;
+import org.corehunter.objectives.distance.cache.PackedDistanceCache;
+import org.junit.Test;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class PackedDistanceCacheTest {
+    
+    private static final String TEST_OUTPUT = "target/testoutput";
+
+    @Test
+    public void testStoreAndRetrieve() {
+        
+        int n = MODIFIED_ROGERS_DISTANCES.length;
+        PackedDistanceCache cache = new PackedDistanceCache(n);
+        assertEquals(n, cache.size());
+        
+        // initially empty
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                if(i != j){
+                    assertTrue(Double.isNaN(cache.get(i, j)));
+                }
+            }
+        }
+        
+        // store upper half only
+        for(int i = 0; i < n; i++){
+            for(int j = i+1; j < n; j++){
+                cache.put(i, j, MODIFIED_ROGERS_DISTANCES[i][j]);
+            }
+        }
+        
+        // retrieve both halves
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                if(i != j){
+                    assertEquals(MODIFIED_ROGERS_DISTANCES[i][j], cache.get(i, j), PRECISION);
+                }
+            }
+        }
+        
+    }
+    
+    @Test
+    public void testSinglePrecision() {
+        
+        int n = MODIFIED_ROGERS_DISTANCES.length;
+        PackedDistanceCache cache = new PackedDistanceCache(n, DistancePrecision.FLOAT);
+        assertEquals(DistancePrecision.FLOAT, cache.getPrecision());
+        
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < i; j++){
+                assertTrue(Double.isNaN(cache.get(i, j)));
+                cache.put(i, j, MODIFIED_ROGERS_DISTANCES[i][j]);
+            }
+        }
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                if(i != j){
+                    assertEquals((float) MODIFIED_ROGERS_DISTANCES[i][j], cache.get(i, j), 0.0);
+                }
+            }
+        }
+        
+    }
+    
+    @Test
+    public void testIndex() {
+        
+        int n = 100;
+        boolean[] used = new boolean[(int) PackedDistanceCache.numDistances(n)];
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < i; j++){
+                int k = PackedDistanceCache.index(i, j);
+                assertEquals(k, PackedDistanceCache.index(j, i));
+                assertTrue(!used[k]);
+                used[k] = true;
+            }
+        }
+        
+    }
+    
+    @Test
+    public void testConcurrentStoreAndRetrieve() {
+        
+        int n = 500;
+        PackedDistanceCache cache = new PackedDistanceCache(n);
+        
+        // fill from multiple threads (each pair stored by several threads)
+        IntStream.range(0, 4*n).parallel().forEach(t -> {
+            int i = t % n;
+            for(int j = 0; j < n; j++){
+                if(i != j){
+                    double d = cache.get(i, j);
+                    if(Double.isNaN(d)){
+                        cache.put(i, j, i + j);
+                    } else {
+                        assertEquals(i + j, d, PRECISION);
+                    }
+                }
+            }
+        });
+        
+        // verify
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                if(i != j){
+                    assertEquals(i + j, cache.get(i, j), PRECISION);
+                }
+            }
+        }
+        
+    }
+    
+    @Test
+    public void testWriteAndMap() throws IOException {
+        
+        // bitmap spanning several words, written after a header of odd length
+        int n = 100;
+        int headerSize = 13;
+        Random rg = new Random(42);
+        Path dir = Paths.get(TEST_OUTPUT);
+        Files.createDirectories(dir);
+        for(DistancePrecision precision : DistancePrecision.values()){
+            
+            // store random subset of distances
+            PackedDistanceCache cache = new PackedDistanceCache(n, precision);
+            for(int i = 0; i < n; i++){
+                for(int j = 0; j < i; j++){
+                    if(rg.nextBoolean()){
+                        cache.put(i, j, rg.nextDouble());
+                    }
+                }
+            }
+            
+            // write and map back
+            Path file = Files.createTempFile(dir, "PackedDistanceCache", ".bin");
+            try {
+                try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)){
+                    channel.write(ByteBuffer.allocate(headerSize));
+                    cache.write(channel);
+                }
+                assertEquals(headerSize + PackedDistanceCache.binarySize(n, precision), Files.size(file));
+                PackedDistanceCache read;
+                try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+                    read = PackedDistanceCache.read(channel, headerSize, n, precision);
+                }
+                assertEquals(n, read.size());
+                assertEquals(precision, read.getPrecision());
+                assertEquals(cache.getNumStored(), read.getNumStored());
+                for(int i = 0; i < n; i++){
+                    for(int j = 0; j < i; j++){
+                        double d = cache.get(i, j);
+                        if(Double.isNaN(d)){
+                            assertTrue(Double.isNaN(read.get(i, j)));
+                        } else {
+                            assertEquals(d, read.get(i, j), 0.0);
+                        }
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+            
+        }
+        
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() {
+        new PackedDistanceCache(PackedDistanceCache.MAX_SIZE + 1);
+    }
+    
+}
@@ -0,0 +1,217 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.objectives.distance.measures;
+
+import static org.corehunter.tests.TestData.ALLELE_FREQUENCIES;
+import static org.corehunter.tests.TestData.ALLELE_NAMES;
+import static org.corehunter.tests.TestData.HEADERS_NON_UNIQUE_NAMES;
+import static org.corehunter.tests.TestData.MARKER_NAMES;
+import static org.corehunter.tests.TestData.NAME;
+import static org.corehunter.tests.TestData.PRECISION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import org.corehunter.data.simple.SimpleGenotypeData;
+import org.corehunter.objectives.distance.measures.AlleleFrequencyTable;
+import org.corehunter.objectives.distance.measures.SquareRootFrequencyTable;
+import org.junit.Test;
+import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.pojo.SimpleEntityPojo;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class AlleleFrequencyTableTest {
+
+    @Test
+    public void test() {
+        
+        SimpleGenotypeData geno = new SimpleGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES
+        );
+        AlleleFrequencyTable table = new AlleleFrequencyTable(geno);
+        SquareRootFrequencyTable sqrtTable = new SquareRootFrequencyTable(geno);
+        // square roots derived from the frequencies of the first table
+        SquareRootFrequencyTable sharedSqrtTable = new SquareRootFrequencyTable(table);
+        
+        assertSame(geno, table.getGenotypes());
+        assertSame(geno, sharedSqrtTable.getGenotypes());
+        assertEquals(geno.getNumberOfMarkers(), table.getNumberOfMarkers());
+        assertEquals(geno.getTotalNumberOfAlleles(), table.getTotalNumberOfAlleles());
+        
+        int n = ALLELE_FREQUENCIES.length;
+        for(int x = 0; x < n; x++){
+            for(int y = 0; y < n; y++){
+                int missing = 0;
+                double sum = 0.0;
+                double sumRoot = 0.0;
+                for(int m = 0; m < MARKER_NAMES.length; m++){
+                    if(hasMissingValues(x, m) || hasMissingValues(y, m)){
+                        missing++;
+                    } else {
+                        for(int a = 0; a < ALLELE_FREQUENCIES[x][m].length; a++){
+                            double px = ALLELE_FREQUENCIES[x][m][a];
+                            double py = ALLELE_FREQUENCIES[y][m][a];
+                            sum += (px - py) * (px - py);
+                            sumRoot += (Math.sqrt(px) - Math.sqrt(py)) * (Math.sqrt(px) - Math.sqrt(py));
+                        }
+                    }
+                }
+                assertEquals(missing, table.getNumberOfMissingMarkers(x, y));
+                assertEquals(sum, table.sumOfSquaredDifferences(x, y), PRECISION);
+                assertEquals(missing, sqrtTable.getNumberOfMissingMarkers(x, y));
+                assertEquals(sumRoot, sqrtTable.sumOfSquaredDifferences(x, y), PRECISION);
+                assertEquals(sumRoot, sharedSqrtTable.sumOfSquaredDifferences(x, y), PRECISION);
+            }
+        }
+        
+    }
+    
+    @Test
+    public void testSumsOfSquaredDifferences() {
+        
+        // random data spanning several tiles, with missing values and duplicate entries
+        Random rg = new Random(42);
+        int n = 70;
+        int m = 700;
+        Double[][][] freqs = new Double[n][m][];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        int[] numAlleles = new int[m];
+        for(int j = 0; j < m; j++){
+            numAlleles[j] = 2 + rg.nextInt(3);
+        }
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("item-" + i);
+            for(int j = 0; j < m; j++){
+                freqs[i][j] = new Double[numAlleles[j]];
+                if(i > 0 && i < 5){
+                    freqs[i][j] = freqs[0][j].clone();
+                } else if(rg.nextInt(50) != 0){
+                    // multiples of 1/64 (sum exactly to one)
+                    int remaining = 64;
+                    for(int a = 0; a < numAlleles[j] - 1; a++){
+                        int count = rg.nextInt(remaining + 1);
+                        freqs[i][j][a] = count / 64.0;
+                        remaining -= count;
+                    }
+                    freqs[i][j][numAlleles[j] - 1] = remaining / 64.0;
+                }
+            }
+        }
+        SimpleGenotypeData geno = new SimpleGenotypeData(NAME, headers, new String[m], null, freqs);
+        
+        for(AlleleFrequencyTable table : Arrays.asList(
+                new AlleleFrequencyTable(geno), new SquareRootFrequencyTable(geno)
+        )){
+            int fromX = 3;
+            int fromY = 1;
+            double[][] sums = new double[n - fromX][n - fromY];
+            table.sumsOfSquaredDifferences(fromX, n, fromY, n, sums);
+            for(int x = fromX; x < n; x++){
+                for(int y = fromY; y < n; y++){
+                    assertEquals(table.sumOfSquaredDifferences(x, y), sums[x - fromX][y - fromY], PRECISION);
+                }
+            }
+            // lower triangle only (other positions untouched)
+            for(double[] row : sums){
+                Arrays.fill(row, Double.NaN);
+            }
+            table.sumsOfSquaredDifferences(fromX, n, fromY, n, true, sums);
+            for(int x = fromX; x < n; x++){
+                for(int y = fromY; y < n; y++){
+                    if(y < x){
+                        assertEquals(table.sumOfSquaredDifferences(x, y), sums[x - fromX][y - fromY], PRECISION);
+                    } else {
+                        assertTrue(Double.isNaN(sums[x - fromX][y - fromY]));
+                    }
+                }
+            }
+        }
+        
+    }
+    
+    @Test
+    public void testSparse() {
+        
+        // random data with many alleles per marker, each entry carrying only a few of them
+        Random rg = new Random(42);
+        int n = 40;
+        int m = 50;
+        int numAlleles = 20;
+        Double[][][] freqs = new Double[n][m][numAlleles];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("item-" + i);
+            for(int j = 0; j < m; j++){
+                int r = rg.nextInt(50);
+                if(r > 1){
+                    Arrays.fill(freqs[i][j], 0.0);
+                    freqs[i][j][rg.nextInt(numAlleles)] += 0.75;
+                    freqs[i][j][rg.nextInt(numAlleles)] += 0.25;
+                } else if(r == 1){
+                    // partially missing
+                    freqs[i][j][rg.nextInt(numAlleles)] = 0.5;
+                }
+            }
+        }
+        SimpleGenotypeData geno = new SimpleGenotypeData(NAME, headers, new String[m], null, freqs);
+        
+        AlleleFrequencyTable table = new AlleleFrequencyTable(geno);
+        SquareRootFrequencyTable sqrtTable = new SquareRootFrequencyTable(geno);
+        double[][] sums = new double[n][n];
+        table.sumsOfSquaredDifferences(0, n, 0, n, sums);
+        double[][] sumsRoot = new double[n][n];
+        sqrtTable.sumsOfSquaredDifferences(0, n, 0, n, sumsRoot);
+        for(int x = 0; x < n; x++){
+            for(int y = 0; y < n; y++){
+                int missing = 0;
+                double sum = 0.0;
+                double sumRoot = 0.0;
+                for(int j = 0; j < m; j++){
+                    if(geno.hasMissingValues(x, j) || geno.hasMissingValues(y, j)){
+                        missing++;
+                    } else {
+                        for(int a = 0; a < numAlleles; a++){
+                            double px = freqs[x][j][a];
+                            double py = freqs[y][j][a];
+                            sum += (px - py) * (px - py);
+                            sumRoot += (Math.sqrt(px) - Math.sqrt(py)) * (Math.sqrt(px) - Math.sqrt(py));
+                        }
+                    }
+                }
+                assertEquals(missing, table.getNumberOfMissingMarkers(x, y));
+                assertEquals(sum, table.sumOfSquaredDifferences(x, y), PRECISION);
+                assertEquals(sum, sums[x][y], PRECISION);
+                assertEquals(sumRoot, sqrtTable.sumOfSquaredDifferences(x, y), PRECISION);
+                assertEquals(sumRoot, sumsRoot[x][y], PRECISION);
+            }
+        }
+        
+    }
+    
+    private boolean hasMissingValues(int id, int marker){
+        return Arrays.stream(ALLELE_FREQUENCIES[id][marker]).anyMatch(Objects::isNull);
+    }
+    
+}
@@ -31,13 +31,19 @@ import static org.corehunter.tests.TestData.HEADERS_NON_UNIQUE_NAMES;
 import org.corehunter.data.simple.SimpleGenotypeData;
 import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
 import org.corehunter.data.CoreHunterData;
+import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.pojo.SimpleEntityPojo;
 
 import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.corehunter.objectives.distance.measures.MissingValuesPolicy;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Guy Davenport, Herman De Beukelaer
@@ -99,4 +105,93 @@ public class ModifiedRogersDistanceTest {
         }
     }
     
+    @Test
+    public void testPrecompute() {
+        
+        SimpleGenotypeData geno = new SimpleGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES
+        );
+        CoreHunterData data = new CoreHunterData(geno);
+
+        ModifiedRogersDistance distanceMetric = new ModifiedRogersDistance();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        assertTrue(distanceMetric.precompute(data, pool));
+        pool.shutdown();
+
+        for (int idX : data.getIDs()) {
+            for (int idY : data.getIDs()) {
+                assertEquals(
+                        "Distance[" + idX + "][" + idY + "] not correct!",
+                        MODIFIED_ROGERS_DISTANCES[idX][idY],
+                        distanceMetric.getDistance(idX, idY, data),
+                        PRECISION);
+            }
+        }
+    }
+    
+    @Test
+    public void testPrecomputeBlocks() {
+        
+        // random data spanning several blocks of distances
+        Random rg = new Random(42);
+        int n = 150;
+        int m = 30;
+        Double[][][] freqs = new Double[n][m][];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("item-" + i);
+            for(int j = 0; j < m; j++){
+                double p = rg.nextInt(9) / 8.0;
+                freqs[i][j] = new Double[]{p, 1.0 - p};
+            }
+        }
+        CoreHunterData data = new CoreHunterData(new SimpleGenotypeData(NAME, headers, new String[m], null, freqs));
+        
+        ModifiedRogersDistance precomputed = new ModifiedRogersDistance();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        assertTrue(precomputed.precompute(data, pool));
+        pool.shutdown();
+        ModifiedRogersDistance direct = new ModifiedRogersDistance();
+        direct.setMaxCacheSize(0);
+        
+        for (int idX = 0; idX < n; idX++) {
+            for (int idY = 0; idY < n; idY++) {
+                assertEquals(
+                        "Distance[" + idX + "][" + idY + "] not correct!",
+                        direct.getDistance(idX, idY, data),
+                        precomputed.getDistance(idX, idY, data),
+                        PRECISION);
+            }
+        }
+    }
+    
+    @Test
+    public void testBoundedCache() {
+        
+        SimpleGenotypeData geno = new SimpleGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_NAMES, ALLELE_FREQUENCIES
+        );
+        CoreHunterData data = new CoreHunterData(geno);
+
+        // cache can not hold all distances
+        ModifiedRogersDistance distanceMetric = new ModifiedRogersDistance();
+        distanceMetric.setMaxCacheSize(0);
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        assertFalse(distanceMetric.precompute(data, pool));
+        pool.shutdown();
+
+        for (int r = 0; r < 3; r++) {
+            for (int idX : data.getIDs()) {
+                for (int idY : data.getIDs()) {
+                    assertEquals(
+                            "Distance[" + idX + "][" + idY + "] not correct!",
+                            MODIFIED_ROGERS_DISTANCES[idX][idY],
+                            distanceMetric.getDistance(idX, idY, data),
+                            PRECISION);
+                }
+            }
+        }
+    }
+    
 }
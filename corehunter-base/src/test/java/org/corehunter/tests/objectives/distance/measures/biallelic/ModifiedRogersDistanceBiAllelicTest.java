@@ -0,0 +1,89 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.objectives.distance.measures.biallelic;
+
+import static org.corehunter.tests.TestData.ALLELE_SCORES_BIALLELIC;
+import static org.corehunter.tests.TestData.HEADERS_NON_UNIQUE_NAMES;
+import static org.corehunter.tests.TestData.MARKER_NAMES;
+import static org.corehunter.tests.TestData.NAME;
+import static org.corehunter.tests.TestData.PRECISION;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.corehunter.data.CoreHunterData;
+import org.corehunter.data.simple.SimpleBiAllelicGenotypeData;
+import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
+import org.corehunter.objectives.distance.measures.MissingValuesPolicy;
+import org.corehunter.objectives.distance.measures.biallelic.ModifiedRogersDistanceBiAllelic;
+import org.junit.Test;
+import uno.informatics.data.SimpleEntity;
+import uno.informatics.data.pojo.SimpleEntityPojo;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class ModifiedRogersDistanceBiAllelicTest {
+
+    @Test
+    public void test() {
+        SimpleBiAllelicGenotypeData geno = new SimpleBiAllelicGenotypeData(
+                NAME, HEADERS_NON_UNIQUE_NAMES, MARKER_NAMES, ALLELE_SCORES_BIALLELIC
+        );
+        testSameAsFrequencyBased(new CoreHunterData(geno));
+    }
+    
+    @Test
+    public void testManyMarkers() {
+        // random scores for multiple words of markers, with missing values
+        Random rg = new Random(42);
+        int n = 10;
+        int m = 150;
+        Integer[][] scores = new Integer[n][m];
+        SimpleEntity[] headers = new SimpleEntity[n];
+        for(int i = 0; i < n; i++){
+            headers[i] = new SimpleEntityPojo("item-" + i);
+            for(int j = 0; j < m; j++){
+                scores[i][j] = rg.nextInt(10) == 0 ? null : rg.nextInt(3);
+            }
+        }
+        SimpleBiAllelicGenotypeData geno = new SimpleBiAllelicGenotypeData(NAME, headers, new String[m], scores);
+        testSameAsFrequencyBased(new CoreHunterData(geno));
+    }
+    
+    private void testSameAsFrequencyBased(CoreHunterData data){
+        for(MissingValuesPolicy policy : MissingValuesPolicy.values()){
+            ModifiedRogersDistanceBiAllelic distance = new ModifiedRogersDistanceBiAllelic();
+            distance.setMissingValuesPolicy(policy);
+            ModifiedRogersDistance expected = new ModifiedRogersDistance();
+            expected.setMissingValuesPolicy(policy);
+            for (int idX : data.getIDs()) {
+                for (int idY : data.getIDs()) {
+                    assertEquals(
+                            "Distance[" + idX + "][" + idY + "] not correct!",
+                            expected.getDistance(idX, idY, data),
+                            distance.getDistance(idX, idY, data),
+                            PRECISION
+                    );
+                }
+            }
+        }
+    }
+    
+}
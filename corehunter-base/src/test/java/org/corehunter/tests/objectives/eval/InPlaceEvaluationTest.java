@@ -0,0 +1,196 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.objectives.eval;
+
+import static org.corehunter.tests.TestData.PRECISION;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.corehunter.data.CoreHunterData;
+import org.corehunter.objectives.AverageAccessionToNearestEntry;
+import org.corehunter.objectives.AverageEntryToNearestEntry;
+import org.corehunter.objectives.Coverage;
+import org.corehunter.objectives.HeterozygousLoci;
+import org.corehunter.objectives.Shannon;
+import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
+import org.corehunter.tests.objectives.EvaluationTest;
+import org.jamesframework.core.problems.objectives.Objective;
+import org.jamesframework.core.problems.objectives.evaluations.Evaluation;
+import org.jamesframework.core.search.algo.ParallelTempering;
+import org.jamesframework.core.search.neigh.Move;
+import org.jamesframework.core.search.neigh.Neighbourhood;
+import org.jamesframework.core.search.stopcriteria.MaxSteps;
+import org.jamesframework.core.subset.SubsetProblem;
+import org.jamesframework.core.subset.SubsetSolution;
+import org.jamesframework.core.subset.neigh.SinglePerturbationNeighbourhood;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class InPlaceEvaluationTest extends EvaluationTest {
+    
+    private static final long SEED = 42;
+    
+    @BeforeClass
+    public static void beforeClass(){
+        System.out.println("Test in place evaluation");
+    }
+    
+    @AfterClass
+    public static void afterClass(){
+        System.out.println("Done");
+    }
+    
+    @Test
+    public void testAcceptRejectAndRestore() {
+        System.out.println(" |- Accept, reject and restore evaluations");
+        Random rng = new Random(SEED);
+        CoreHunterData data = new CoreHunterData(createRandomGenotypeData(rng, 40, 20));
+        for(Objective<SubsetSolution, CoreHunterData> objective : createObjectives()){
+            acceptRejectAndRestore(objective, data, rng);
+        }
+    }
+    
+    @Test
+    public void testParallelTempering() {
+        System.out.println(" |- Parallel tempering");
+        Random rng = new Random(SEED);
+        CoreHunterData data = new CoreHunterData(createRandomGenotypeData(rng, 40, 20));
+        for(Objective<SubsetSolution, CoreHunterData> objective : createObjectives()){
+            SubsetProblem<CoreHunterData> problem = new SubsetProblem<>(data, objective, 5);
+            ParallelTempering<SubsetSolution> search = new ParallelTempering<>(
+                    problem, new SinglePerturbationNeighbourhood(5, 5), 4, 1e-8, 1e-3
+            );
+            search.addStopCriterion(new MaxSteps(50));
+            search.setRandom(rng);
+            search.start();
+            assertEquals("Evaluation of best solution is not correct!",
+                         objective.evaluate(search.getBestSolution(), data),
+                         search.getBestSolutionEvaluation(), PRECISION);
+            search.dispose();
+        }
+    }
+    
+    @Test
+    public void testConcurrentDerivation() throws Exception {
+        System.out.println(" |- Concurrent derivation");
+        Random rng = new Random(SEED);
+        CoreHunterData data = new CoreHunterData(createRandomGenotypeData(rng, 40, 20));
+        Neighbourhood<SubsetSolution> neigh = new SinglePerturbationNeighbourhood(1, 30);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for(Objective<SubsetSolution, CoreHunterData> objective : createObjectives()){
+                // chain of accepted solutions sharing the same mutable evaluation
+                List<SubsetSolution> solutions = new ArrayList<>();
+                List<Evaluation> evaluations = new ArrayList<>();
+                SubsetSolution sol = new SubsetSolution(data.getIDs());
+                sol.selectAll(Arrays.asList(0, 1, 2, 3, 4));
+                solutions.add(sol);
+                evaluations.add(objective.evaluate(sol, data));
+                for(int k = 0; k < 10; k++){
+                    Move<? super SubsetSolution> move = neigh.getRandomMove(sol, rng);
+                    evaluations.add(objective.evaluate(move, sol, evaluations.get(k), data));
+                    sol = sol.copy();
+                    move.apply(sol);
+                    solutions.add(sol);
+                }
+                // derive from random solutions in the chain, from several threads
+                List<Future<?>> results = new ArrayList<>();
+                for(int t = 0; t < 4; t++){
+                    Random threadRng = new Random(rng.nextLong());
+                    results.add(pool.submit(() -> {
+                        for(int k = 0; k < 200; k++){
+                            int base = threadRng.nextInt(solutions.size());
+                            SubsetSolution baseSol = solutions.get(base);
+                            Move<? super SubsetSolution> move = neigh.getRandomMove(baseSol, threadRng);
+                            Evaluation deltaEval = objective.evaluate(move, baseSol, evaluations.get(base), data);
+                            SubsetSolution newSol = baseSol.copy();
+                            move.apply(newSol);
+                            assertEquals("Delta evaluation and full neighbour evaluation differ!",
+                                         objective.evaluate(newSol, data), deltaEval, PRECISION);
+                        }
+                    }));
+                }
+                for(Future<?> result : results){
+                    result.get();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private List<Objective<SubsetSolution, CoreHunterData>> createObjectives(){
+        return Arrays.asList(
+                new Coverage(), new Shannon(), new HeterozygousLoci(),
+                new AverageEntryToNearestEntry(new ModifiedRogersDistance()),
+                new AverageAccessionToNearestEntry(new ModifiedRogersDistance())
+        );
+    }
+    
+    /**
+     * Evaluate random moves that are accepted or rejected at random. Moves are mostly evaluated
+     * from the current solution, but sometimes also from the previous or an older solution.
+     */
+    private void acceptRejectAndRestore(Objective<SubsetSolution, CoreHunterData> objective,
+                                        CoreHunterData data, Random rng) {
+        Neighbourhood<SubsetSolution> neigh = new SinglePerturbationNeighbourhood(1, 30);
+        SubsetSolution sol = new SubsetSolution(data.getIDs());
+        sol.selectAll(Arrays.asList(0, 1, 2, 3, 4));
+        List<SubsetSolution> solutions = new ArrayList<>();
+        List<Evaluation> evaluations = new ArrayList<>();
+        solutions.add(sol);
+        evaluations.add(objective.evaluate(sol, data));
+        for(int k = 0; k < 500; k++){
+            // select base solution
+            int base = solutions.size() - 1;
+            double r = rng.nextDouble();
+            if(r < 0.1){
+                base = Math.max(0, base - 1);
+            } else if(r < 0.15){
+                base = rng.nextInt(solutions.size());
+            }
+            SubsetSolution baseSol = solutions.get(base);
+            Evaluation baseEval = evaluations.get(base);
+            // evaluate move
+            Move<? super SubsetSolution> move = neigh.getRandomMove(baseSol, rng);
+            Evaluation deltaEval = objective.evaluate(move, baseSol, baseEval, data);
+            SubsetSolution newSol = baseSol.copy();
+            move.apply(newSol);
+            assertEquals("Delta evaluation and full neighbour evaluation differ!",
+                         objective.evaluate(newSol, data), deltaEval, PRECISION);
+            if(rng.nextBoolean()){
+                // accept move
+                solutions.add(newSol);
+                evaluations.add(deltaEval);
+            }
+        }
+    }
+    
+}
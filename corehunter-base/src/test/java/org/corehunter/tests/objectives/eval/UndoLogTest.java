@@ -0,0 +1,76 @@
+/*--------------------------------------------------------------*/
+/* Licensed to the Apache Software Foundation (ASF) under one   */
+/* or more contributor license agreements.  See the NOTICE file */
+/* distributed with this work for additional information        */
+/* regarding copyright ownership.  The ASF licenses this file   */
+/* to you under the Apache License, Version 2.0 (the            */
+/* "License"); you may not use this file except in compliance   */
+/* with the License.  You may obtain a copy of the License at   */
+/*                                                              */
+/*   http://www.apache.org/licenses/LICENSE-2.0                 */
+/*                                                              */
+/* Unless required by applicable law or agreed to in writing,   */
+/* software distributed under the License is distributed on an  */
+/* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       */
+/* KIND, either express or implied.  See the License for the    */
+/* specific language governing permissions and limitations      */
+/* under the License.                                           */
+/*--------------------------------------------------------------*/
+
+package org.corehunter.tests.objectives.eval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.corehunter.objectives.eval.UndoLog;
+import org.junit.Test;
+
+/**
+ * @author Herman De Beukelaer
+ */
+public class UndoLogTest {
+    
+    private double total;
+    private int count;
+    
+    @Test
+    public void testUndo() {
+        
+        double[] values = {0.5, 1.5, 2.5};
+        int[] counts = {1, 2, 3};
+        total = 4.5;
+        count = 6;
+        UndoLog.DoubleField totalField = t -> total = t;
+        UndoLog.IntField countField = c -> count = c;
+        
+        UndoLog log = new UndoLog();
+        // enough changes to grow the buffers, some entries changed repeatedly
+        for(int i = 0; i < 100; i++){
+            log.record(values, i % 3);
+            values[i % 3] += 1.0;
+            log.record(counts, i % 3);
+            counts[i % 3]++;
+            log.recordDouble(totalField, total);
+            total += 1.0;
+            log.recordInt(countField, count);
+            count++;
+        }
+        assertEquals(400, log.size());
+        
+        log.undo();
+        assertEquals(0, log.size());
+        assertArrayEquals(new double[]{0.5, 1.5, 2.5}, values, 0.0);
+        assertArrayEquals(new int[]{1, 2, 3}, counts);
+        assertEquals(4.5, total, 0.0);
+        assertEquals(6, count);
+        
+        // cleared log does not undo anything
+        log.recordInt(countField, count);
+        count = 10;
+        log.clear();
+        log.undo();
+        assertEquals(10, count);
+        
+    }
+    
+}
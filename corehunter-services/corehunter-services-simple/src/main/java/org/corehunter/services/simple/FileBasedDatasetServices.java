@@ -19,13 +19,23 @@
 
 package org.corehunter.services.simple;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -34,10 +44,18 @@ import java.util.Map;
 import org.corehunter.data.CoreHunterData;
 import org.corehunter.data.GenotypeData;
 import org.corehunter.data.CoreHunterDataType;
+import org.corehunter.data.DistanceMatrixData;
+import org.corehunter.data.DistancePrecision;
 import org.corehunter.data.GenotypeDataFormat;
+import org.corehunter.data.simple.MappedDistanceMatrixData;
 import org.corehunter.data.simple.SimpleBiAllelicGenotypeData;
 import org.corehunter.data.simple.SimpleDistanceMatrixData;
 import org.corehunter.data.simple.SimpleGenotypeData;
+import org.corehunter.objectives.distance.DistanceMeasure;
+import org.corehunter.objectives.distance.cache.DistanceCache;
+import org.corehunter.objectives.distance.cache.DistanceCacheRegistry;
+import org.corehunter.objectives.distance.cache.PackedDistanceCache;
+import org.corehunter.objectives.distance.measures.MissingValuesPolicy;
 import org.corehunter.services.DatasetServices;
 
 import com.thoughtworks.xstream.XStream;
@@ -62,8 +80,25 @@ public class FileBasedDatasetServices implements DatasetServices {
 
     private static final String DISTANCES_PATH = "DISTANCES_PATH";
 
+    private static final String DISTANCE_CACHE_PATH = "DISTANCE_CACHE_PATH";
+    
+    private static final String DISTANCE_CACHE_SUFFIX = ".cache";
+    
+    // binary distance cache format: magic number ("CHDC"), version, alignment of the distances
+    // and size of the fixed part of the header (magic number, version, offset of the distances
+    // and number of stored distances)
+    private static final int DISTANCE_CACHE_MAGIC = 0x43484443;
+    private static final int DISTANCE_CACHE_VERSION = 3;
+    private static final int DISTANCE_CACHE_ALIGNMENT = 8;
+    private static final int DISTANCE_CACHE_PREFIX_SIZE = 24;
+
+    // maximum length of the fingerprint of the stored data of a dataset, used to detect stale distance caches
+    private static final int MAX_FINGERPRINT_LENGTH = 64;
+
     private static final String TXT_SUFFIX = ".txt";
     private static final String SUFFIX = ".corehunter";
+    // internal copy of distance matrices in binary format (mapped into memory when reloaded)
+    private static final String BINARY_SUFFIX = ".corehunter.bin";
 
     private static Map<String, DatasetPojo> datasetMap;
     private static Map<String, CoreHunterData> dataCache;
@@ -337,7 +372,7 @@ public class FileBasedDatasetServices implements DatasetServices {
 
                 copyPath = Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + getSuffix(fileType));
 
-                internalPath = Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + SUFFIX);
+                internalPath = Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + BINARY_SUFFIX);
 
                 if (coreHunterData != null && (coreHunterData.getDistancesData() != null || Files.exists(copyPath))) {
                     throw new DatasetException(
@@ -351,17 +386,17 @@ public class FileBasedDatasetServices implements DatasetServices {
                     throw e;
                 }
 
-                SimpleDistanceMatrixData distanceData;
+                DistanceMatrixData distanceData;
 
                 try {
-                    distanceData = SimpleDistanceMatrixData.readData(copyPath, fileType);
+                    distanceData = readDistanceMatrixData(copyPath, fileType);
                 } catch (IOException e) {
                     Files.deleteIfExists(copyPath);
                     throw e;
                 }
 
                 try {
-                    distanceData.writeData(internalPath, FileType.TXT);
+                    MappedDistanceMatrixData.writeBinaryFile(internalPath, distanceData);
                 } catch (IOException e) {
                     Files.deleteIfExists(copyPath);
                     throw e;
@@ -382,6 +417,9 @@ public class FileBasedDatasetServices implements DatasetServices {
 
         try {
             writeToXml(Paths.get(copyPath.getParent().toString(), DATA), new SimpleEntityPojo(dataId, dataName));
+
+            // previously computed distances are no longer valid
+            removeDistanceCaches(datasetId);
         } catch (IOException e) {
             throw new DatasetException(e);
         }
@@ -460,9 +498,7 @@ public class FileBasedDatasetServices implements DatasetServices {
 
                     originalPath = Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + getSuffix(fileType));
 
-                    SimpleDistanceMatrixData distanceData = SimpleDistanceMatrixData.readData(originalPath, fileType);
-
-                    return distanceData;
+                    return readDistanceMatrixData(originalPath, fileType);
                 default:
                     throw new IllegalArgumentException("Unknown data type : " + dataType);
 
@@ -472,6 +508,206 @@ public class FileBasedDatasetServices implements DatasetServices {
         }
     }
     
+    /**
+     * Load the distances that have been computed for a dataset in previous runs, as stored with
+     * {@link #storeDistanceCaches(String, CoreHunterData, DistanceCacheRegistry)}. Stored distances
+     * are registered for the given data, and can be reused by setting the returned registry in
+     * {@link org.corehunter.CoreHunter#setDistanceCaches(DistanceCacheRegistry)}. Stored distances
+     * are discarded when data is loaded or removed for the dataset, and when the fingerprint of the
+     * stored data or the number of items no longer matches the header of a cache file. The distances
+     * of a valid cache file are mapped into memory and copied in bulk.
+     * 
+     * @param datasetId the identifier of the dataset
+     * @param data the data of the dataset, for which distances are registered
+     * @return registry containing the stored distances for the given data
+     * @throws DatasetException if the dataset is unknown or the stored distances can not be read
+     */
+    public DistanceCacheRegistry loadDistanceCaches(String datasetId, CoreHunterData data) throws DatasetException {
+
+        if (getDataset(datasetId) == null) {
+            throw new DatasetException("Unknown dataset with datasetId : " + datasetId);
+        }
+
+        DistanceCacheRegistry registry = new DistanceCacheRegistry();
+
+        Path cachePath = getDistanceCachePath(datasetId);
+
+        if (!Files.isDirectory(cachePath)) {
+            return registry;
+        }
+
+        try {
+            byte[] fingerprint = getDataFingerprint(datasetId);
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(cachePath, "*" + DISTANCE_CACHE_SUFFIX)) {
+                for (Path file : files) {
+                    DistanceCacheHeader header = null;
+                    PackedDistanceCache cache = null;
+
+                    try {
+                        header = DistanceCacheHeader.read(file);
+
+                        if (header.matches(file, fingerprint, data.getSize())) {
+                            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                                cache = PackedDistanceCache.read(channel, header.offset, header.size, header.precision);
+                            }
+                        }
+                    } catch (IOException | ClassNotFoundException | ClassCastException | IllegalArgumentException e) {
+                        // invalid cache
+                        cache = null;
+                    }
+
+                    if (cache != null) {
+                        registry.register(data, header.measure, header.policy, header.precision, cache);
+                    } else {
+                        // stale or invalid cache: discard (distances are recomputed)
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new DatasetException(e);
+        }
+
+        return registry;
+    }
+
+    /**
+     * Store the distances computed for a dataset, so that they can be reused in subsequent runs, see
+     * {@link #loadDistanceCaches(String, CoreHunterData)}. Distances are stored in a binary file per
+     * distance measure, missing values policy and precision, next to the dataset. Each file starts
+     * with a header that identifies the distance measure and contains a fingerprint of the stored data
+     * of the dataset, followed by the distances in the format of
+     * {@link PackedDistanceCache#write(java.nio.channels.WritableByteChannel)}. A file is only
+     * rewritten if more distances have been computed than already stored for the same data. Only
+     * caches that can hold all distances are stored.
+     * 
+     * @param datasetId the identifier of the dataset
+     * @param data the data of the dataset, for which distances have been computed
+     * @param registry registry containing the computed distances
+     * @throws DatasetException if the dataset is unknown or the distances can not be written
+     */
+    public void storeDistanceCaches(String datasetId, CoreHunterData data, DistanceCacheRegistry registry)
+            throws DatasetException {
+
+        if (getDataset(datasetId) == null) {
+            throw new DatasetException("Unknown dataset with datasetId : " + datasetId);
+        }
+
+        Path cachePath = getDistanceCachePath(datasetId);
+
+        try {
+            byte[] fingerprint = getDataFingerprint(datasetId);
+
+            for (Map.Entry<DistanceCacheRegistry.CacheKey, DistanceCache> entry : registry.getCaches(data).entrySet()) {
+
+                if (!(entry.getValue() instanceof PackedDistanceCache)) {
+                    continue;
+                }
+
+                DistanceCacheRegistry.CacheKey key = entry.getKey();
+                PackedDistanceCache cache = (PackedDistanceCache) entry.getValue();
+                long numStored = cache.getNumStored();
+
+                Path file = Paths.get(cachePath.toString(),
+                        getDistanceCacheFileName(key.getMeasure(), key.getPolicy(), key.getPrecision()));
+
+                if (numStored == 0 || numStored <= getNumStoredDistances(file, fingerprint, cache.size())) {
+                    continue;
+                }
+
+                Files.createDirectories(cachePath);
+
+                // write to temporary file and then move
+                Path tempFile = Files.createTempFile(cachePath, null, null);
+
+                try {
+                    DistanceCacheHeader header = new DistanceCacheHeader(key.getMeasure(), key.getPolicy(),
+                            key.getPrecision(), cache.size(), numStored, fingerprint);
+
+                    try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                        header.write(channel);
+                        cache.write(channel);
+                    }
+
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+            }
+        } catch (IOException e) {
+            throw new DatasetException(e);
+        }
+    }
+
+    // number of distances stored in a cache file for the same data (zero if the file is missing, stale or invalid)
+    private long getNumStoredDistances(Path file, byte[] fingerprint, int size) {
+
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        try {
+            DistanceCacheHeader header = DistanceCacheHeader.read(file);
+
+            return header.matches(file, fingerprint, size) ? header.numStored : 0;
+        } catch (IOException | ClassNotFoundException | ClassCastException | IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private static String getDistanceCacheFileName(Class<? extends DistanceMeasure> measure,
+            MissingValuesPolicy policy, DistancePrecision precision) {
+        return measure.getSimpleName() + "_" + policy + "_" + precision + DISTANCE_CACHE_SUFFIX;
+    }
+
+    // fingerprint of the stored data from which distances are computed: presence, size and modification time of
+    // the internal copies of the genotypic and phenotypic data, and of the format in which genotypic data is read
+    // (the data itself is not read, so that checking the stored distances is cheap even for large datasets)
+    private byte[] getDataFingerprint(String datasetId) throws IOException {
+
+        Path[] files = {
+            Paths.get(getPath().toString(), GENOTYPIC_PATH, datasetId + SUFFIX),
+            Paths.get(getPath().toString(), PHENOTYPIC_PATH, datasetId + SUFFIX),
+            Paths.get(getPath().toString(), ORIGINAL_FORMAT)
+        };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream fingerprint = new DataOutputStream(bytes)) {
+            for (Path file : files) {
+                if (Files.exists(file)) {
+                    fingerprint.writeBoolean(true);
+                    fingerprint.writeLong(Files.size(file));
+                    fingerprint.writeLong(Files.getLastModifiedTime(file).toMillis());
+                } else {
+                    fingerprint.writeBoolean(false);
+                }
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private Path getDistanceCachePath(String datasetId) {
+        return Paths.get(getPath().toString(), DISTANCE_CACHE_PATH, datasetId);
+    }
+
+    private void removeDistanceCaches(String datasetId) throws IOException {
+
+        Path cachePath = getDistanceCachePath(datasetId);
+
+        if (Files.isDirectory(cachePath)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(cachePath)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+
+            Files.deleteIfExists(cachePath);
+        }
+    }
+
     private void writeDatasets() throws DatasetException {
         ArrayList<Dataset> datasets = new ArrayList<Dataset>(datasetMap.values());
 
@@ -526,6 +762,15 @@ public class FileBasedDatasetServices implements DatasetServices {
         }
     }
 
+    private DistanceMatrixData readDistanceMatrixData(Path path, FileType fileType) throws IOException {
+
+        if (SimpleDistanceMatrixData.isBinaryData(path)) {
+            return SimpleDistanceMatrixData.openBinaryData(path);
+        }
+
+        return SimpleDistanceMatrixData.readData(path, fileType);
+    }
+
     private void copyOrMoveFile(Path source, Path target) throws IOException {
 
         Files.createDirectories(target.getParent());
@@ -590,7 +835,7 @@ public class FileBasedDatasetServices implements DatasetServices {
 
         GenotypeData genotypicData = null;
         ArrayFeatureData phenotypicData = null;
-        SimpleDistanceMatrixData distance = null;
+        DistanceMatrixData distance = null;
 
         Path path = Paths.get(getPath().toString(), GENOTYPIC_PATH, datasetId + SUFFIX);
 
@@ -617,12 +862,21 @@ public class FileBasedDatasetServices implements DatasetServices {
             updateData(phenotypicData, Paths.get(path.getParent().toString(), DATA));
         }
 
-        path = Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + SUFFIX);
+        path = Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + BINARY_SUFFIX);
 
         if (Files.exists(path)) {
-            distance = SimpleDistanceMatrixData.readData(path, FileType.TXT);
+            distance = SimpleDistanceMatrixData.openBinaryData(path);
 
             updateData(distance, Paths.get(path.getParent().toString(), DATA));
+        } else {
+            // internal copy stored in text format by previous versions
+            path = Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + SUFFIX);
+
+            if (Files.exists(path)) {
+                distance = SimpleDistanceMatrixData.readData(path, FileType.TXT);
+
+                updateData(distance, Paths.get(path.getParent().toString(), DATA));
+            }
         }
 
         if (genotypicData != null || phenotypicData != null || distance != null) {
@@ -682,6 +936,10 @@ public class FileBasedDatasetServices implements DatasetServices {
             Files.deleteIfExists(getDataPath(datasetId, CoreHunterDataType.PHENOTYPIC));
 
             Files.deleteIfExists(getDataPath(datasetId, CoreHunterDataType.DISTANCES));
+
+            Files.deleteIfExists(Paths.get(getPath().toString(), DISTANCES_PATH, datasetId + BINARY_SUFFIX));
+
+            removeDistanceCaches(datasetId);
         } catch (IOException e) {
             throw new DatasetException(e);
         }
@@ -699,4 +957,130 @@ public class FileBasedDatasetServices implements DatasetServices {
                 throw new IllegalArgumentException("Unknown dataset type : " + dataType);
         }
     }
+
+    /**
+     * Header of a stored distance cache. Identifies the distance measure (class, missing values policy and
+     * precision) and the data (number of items and fingerprint of the stored data) for which the distances
+     * have been computed.
+     */
+    private static final class DistanceCacheHeader {
+
+        private final Class<? extends DistanceMeasure> measure;
+        private final MissingValuesPolicy policy;
+        private final DistancePrecision precision;
+        private final int size;
+        private final long numStored;
+        private final byte[] fingerprint;
+        // position of the distances in the file
+        private final long offset;
+
+        private DistanceCacheHeader(Class<? extends DistanceMeasure> measure, MissingValuesPolicy policy,
+                DistancePrecision precision, int size, long numStored, byte[] fingerprint) {
+            this(measure, policy, precision, size, numStored, fingerprint, -1);
+        }
+
+        private DistanceCacheHeader(Class<? extends DistanceMeasure> measure, MissingValuesPolicy policy,
+                DistancePrecision precision, int size, long numStored, byte[] fingerprint, long offset) {
+            this.measure = measure;
+            this.policy = policy;
+            this.precision = precision;
+            this.size = size;
+            this.numStored = numStored;
+            this.fingerprint = fingerprint;
+            this.offset = offset;
+        }
+
+        // check whether the cache stored in the given file can be used for the given data
+        private boolean matches(Path file, byte[] dataFingerprint, int dataSize) {
+            return size == dataSize
+                    && Arrays.equals(fingerprint, dataFingerprint)
+                    && file.getFileName().toString().equals(getDistanceCacheFileName(measure, policy, precision));
+        }
+
+        // write header, padded up to the aligned position of the distances
+        private void write(FileChannel channel) throws IOException {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            try (DataOutputStream header = new DataOutputStream(bytes)) {
+                header.writeUTF(measure.getName());
+                header.writeUTF(policy.name());
+                header.writeUTF(precision.name());
+                header.writeInt(size);
+                header.writeInt(fingerprint.length);
+                header.write(fingerprint);
+            }
+
+            int headerSize = DISTANCE_CACHE_PREFIX_SIZE + bytes.size();
+            int distancesOffset = (headerSize + DISTANCE_CACHE_ALIGNMENT - 1)
+                    / DISTANCE_CACHE_ALIGNMENT * DISTANCE_CACHE_ALIGNMENT;
+
+            ByteBuffer buffer = ByteBuffer.allocate(distancesOffset);
+            buffer.putInt(DISTANCE_CACHE_MAGIC)
+                  .putInt(DISTANCE_CACHE_VERSION)
+                  .putLong(distancesOffset)
+                  .putLong(numStored)
+                  .put(bytes.toByteArray());
+            buffer.rewind();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private static DistanceCacheHeader read(Path file) throws IOException, ClassNotFoundException {
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+                if (in.readInt() != DISTANCE_CACHE_MAGIC) {
+                    throw new IOException("Not a distance cache : " + file);
+                }
+
+                int version = in.readInt();
+
+                if (version != DISTANCE_CACHE_VERSION) {
+                    throw new IOException("Unsupported distance cache version : " + version);
+                }
+
+                long offset = in.readLong();
+                long numStored = in.readLong();
+
+                Class<? extends DistanceMeasure> measure = loadMeasureClass(in.readUTF(), file);
+                MissingValuesPolicy policy = MissingValuesPolicy.valueOf(in.readUTF());
+                DistancePrecision precision = DistancePrecision.valueOf(in.readUTF());
+                int size = in.readInt();
+                int fingerprintLength = in.readInt();
+
+                if (fingerprintLength < 0 || fingerprintLength > MAX_FINGERPRINT_LENGTH) {
+                    throw new IOException("Invalid fingerprint in distance cache : " + file);
+                }
+
+                byte[] fingerprint = new byte[fingerprintLength];
+                in.readFully(fingerprint);
+
+                return new DistanceCacheHeader(measure, policy, precision, size, numStored, fingerprint, offset);
+            }
+        }
+
+        // load the distance measure class with the given name without initializing it, and only if the file
+        // name refers to the same measure and the class is a distance measure
+        private static Class<? extends DistanceMeasure> loadMeasureClass(String name, Path file)
+                throws IOException, ClassNotFoundException {
+
+            String simpleName = name.substring(Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')) + 1);
+
+            if (!file.getFileName().toString().startsWith(simpleName + "_")) {
+                throw new IOException("Distance measure does not match distance cache : " + file);
+            }
+
+            Class<?> measure = Class.forName(name, false, DistanceMeasure.class.getClassLoader());
+
+            if (!DistanceMeasure.class.isAssignableFrom(measure)) {
+                throw new IOException("Not a distance measure : " + name);
+            }
+
+            return measure.asSubclass(DistanceMeasure.class);
+        }
+
+    }
 }
@@ -33,6 +33,7 @@ import java.util.concurrent.Executors;
 
 import org.corehunter.CoreHunter;
 import org.corehunter.CoreHunterArguments;
+import org.corehunter.data.CoreHunterData;
 import org.corehunter.listener.SimpleCoreHunterListener;
 import org.corehunter.services.CoreHunterRun;
 import org.corehunter.services.CoreHunterRunArguments;
@@ -247,10 +248,14 @@ public class SimpleCoreHunterRunServices implements CoreHunterRunServices {
             try {
                 startDate = new DateTime();
 
-                CoreHunterArguments arguments = new CoreHunterArguments(
-                        datasetServices.getCoreHunterData(corehunterRunArguments.getDatasetId()),
+                String datasetId = corehunterRunArguments.getDatasetId();
+                CoreHunterData data = datasetServices.getCoreHunterData(datasetId);
+
+                CoreHunterArguments arguments = new CoreHunterArguments(data,
                         corehunterRunArguments.getSubsetSize(), corehunterRunArguments.getObjectives());
 
+                outputStream = new ByteArrayOutputStream();
+
                 PrintStream printStream = new PrintStream(outputStream);
 
                 status = CoreHunterRunStatus.RUNNING;
@@ -258,12 +263,29 @@ public class SimpleCoreHunterRunServices implements CoreHunterRunServices {
                 corehunter = new CoreHunter();
                 corehunter.setListener(new SimpleCoreHunterListener(printStream));
 
-                outputStream = new ByteArrayOutputStream();
+                // reuse distances computed in previous runs (if stored)
+                FileBasedDatasetServices fileBasedDatasetServices = null;
+
+                if (datasetServices instanceof FileBasedDatasetServices) {
+                    fileBasedDatasetServices = (FileBasedDatasetServices) datasetServices;
+                    corehunter.setDistanceCaches(fileBasedDatasetServices.loadDistanceCaches(datasetId, data));
+                }
 
                 subsetSolution = corehunter.execute(arguments);
-                printStream.close();
 
                 status = CoreHunterRunStatus.FINISHED;
+
+                // store computed distances for subsequent runs (failure does not affect the result of this run)
+                if (fileBasedDatasetServices != null) {
+                    try {
+                        fileBasedDatasetServices.storeDistanceCaches(datasetId, data, corehunter.getDistanceCaches());
+                    } catch (Exception e) {
+                        printStream.println("Warning: could not store distances for subsequent runs: "
+                                + e.getMessage());
+                    }
+                }
+
+                printStream.close();
             } catch (Exception e) {
                 status = CoreHunterRunStatus.FAILED;
                 errorMessage = e.getMessage();
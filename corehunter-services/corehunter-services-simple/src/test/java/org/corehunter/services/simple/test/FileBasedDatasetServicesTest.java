@@ -29,8 +29,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.corehunter.data.CoreHunterData;
 import org.corehunter.data.CoreHunterDataType;
@@ -41,6 +43,9 @@ import org.corehunter.data.simple.SimpleBiAllelicGenotypeData;
 import org.corehunter.data.simple.SimpleDistanceMatrixData;
 import org.corehunter.data.simple.SimpleGenotypeData;
 import org.corehunter.data.CoreHunterDataType;
+import org.corehunter.objectives.distance.cache.DistanceCache;
+import org.corehunter.objectives.distance.cache.DistanceCacheRegistry;
+import org.corehunter.objectives.distance.measures.ModifiedRogersDistance;
 import org.corehunter.services.simple.FileBasedDatasetServices;
 import org.junit.Test;
 
@@ -366,6 +371,123 @@ public class FileBasedDatasetServicesTest {
         }
     }
 
+    @Test
+    public void testStoreAndLoadDistanceCaches() {
+        try {
+            FileBasedDatasetServices fileBasedDatasetServices = new FileBasedDatasetServices(createTempDirectory());
+
+            Dataset dataset = new DatasetPojo(DATA_UID, DATASET_NAME);
+
+            fileBasedDatasetServices.addDataset(dataset);
+
+            Path dataPath = Paths.get(ClassLoader.getSystemResource(DEFAULT_GENOTYPIC_FILE).toURI());
+
+            fileBasedDatasetServices.loadData(dataset, dataPath, FileType.CSV, CoreHunterDataType.GENOTYPIC);
+
+            CoreHunterData data = fileBasedDatasetServices.getCoreHunterData(DATA_UID);
+
+            // initially no stored distances
+            DistanceCacheRegistry registry = fileBasedDatasetServices.loadDistanceCaches(DATA_UID, data);
+
+            assertEquals("Distances should not be stored", 0, registry.size());
+
+            // compute some distances and store
+            ModifiedRogersDistance measure = new ModifiedRogersDistance();
+            measure.setCacheRegistry(registry);
+
+            double[] expected = new double[10];
+
+            for (int i = 0; i < expected.length; ++i) {
+                expected[i] = measure.getDistance(i, i + 1, data);
+            }
+
+            fileBasedDatasetServices.storeDistanceCaches(DATA_UID, data, registry);
+
+            // load in restored services
+            fileBasedDatasetServices = new FileBasedDatasetServices(fileBasedDatasetServices.getPath());
+
+            data = fileBasedDatasetServices.getCoreHunterData(DATA_UID);
+
+            registry = fileBasedDatasetServices.loadDistanceCaches(DATA_UID, data);
+
+            assertEquals("Distances should be stored", 1, registry.size());
+
+            DistanceCache cache = registry.getCaches(data).values().iterator().next();
+
+            for (int i = 0; i < expected.length; ++i) {
+                assertEquals("Stored distance is not correct", expected[i], cache.get(i, i + 1), PRECISION);
+            }
+
+            assertTrue("Distance should not be stored", Double.isNaN(cache.get(0, 2)));
+
+            // loading other data invalidates stored distances
+            dataPath = Paths.get(ClassLoader.getSystemResource(PHENOTYPIC_FILE).toURI());
+
+            fileBasedDatasetServices.loadData(dataset, dataPath, FileType.CSV, CoreHunterDataType.PHENOTYPIC);
+
+            data = fileBasedDatasetServices.getCoreHunterData(DATA_UID);
+
+            registry = fileBasedDatasetServices.loadDistanceCaches(DATA_UID, data);
+
+            assertEquals("Distances should have been removed", 0, registry.size());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testStaleDistanceCachesRejected() {
+        try {
+            FileBasedDatasetServices fileBasedDatasetServices = new FileBasedDatasetServices(createTempDirectory());
+
+            Dataset dataset = new DatasetPojo(DATA_UID, DATASET_NAME);
+
+            fileBasedDatasetServices.addDataset(dataset);
+
+            Path dataPath = Paths.get(ClassLoader.getSystemResource(DEFAULT_GENOTYPIC_FILE).toURI());
+
+            fileBasedDatasetServices.loadData(dataset, dataPath, FileType.CSV, CoreHunterDataType.GENOTYPIC);
+
+            CoreHunterData data = fileBasedDatasetServices.getCoreHunterData(DATA_UID);
+
+            // compute some distances and store
+            DistanceCacheRegistry registry = fileBasedDatasetServices.loadDistanceCaches(DATA_UID, data);
+
+            ModifiedRogersDistance measure = new ModifiedRogersDistance();
+            measure.setCacheRegistry(registry);
+            measure.getDistance(0, 1, data);
+
+            fileBasedDatasetServices.storeDistanceCaches(DATA_UID, data, registry);
+
+            assertEquals("Distances should be stored", 1,
+                    fileBasedDatasetServices.loadDistanceCaches(DATA_UID, data).size());
+
+            // modify stored data outside of the services (same number of items)
+            Path storedPath = Paths.get(fileBasedDatasetServices.getPath().toString(), "GENOTYPIC_PATH",
+                    DATA_UID + ".corehunter");
+
+            Files.write(storedPath, System.lineSeparator().getBytes(), StandardOpenOption.APPEND);
+
+            registry = fileBasedDatasetServices.loadDistanceCaches(DATA_UID, data);
+
+            assertEquals("Stale distances should have been rejected", 0, registry.size());
+
+            Path cachePath = Paths.get(fileBasedDatasetServices.getPath().toString(), "DISTANCE_CACHE_PATH", DATA_UID);
+
+            try (Stream<Path> files = Files.list(cachePath)) {
+                assertEquals("Stale distances should have been removed", 0, files.count());
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            fail(e.getMessage());
+        }
+    }
+
     @Test
     public void testAddDatasetWithDiploidGenotypicData() {
         try {